@@ -0,0 +1,56 @@
+package com.iwellness.messaging.benchmarks;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.iwellness.messaging.MessagingApiApplication;
+
+/**
+ * Arranca el microservicio completo sobre una base H2 en memoria aislada,
+ * con el servicio de usuarios apuntando al stub local y sin logs de depuración. RabbitMQ queda
+ * fuera: sin autoconfiguración AMQP ni relay del outbox, los eventos se acumulan en outbox_events
+ * y no hay reintentos de conexión a un broker inexistente durante la medición.
+ * Las propiedades se pasan como argumentos de línea de comandos: como propiedades por defecto
+ * perderían frente a application.yml (p. ej. server.port o app.messaging.tail-cache.enabled).
+ * Una propiedad extra sustituye a la base del mismo nombre (p. ej. spring.datasource.url).
+ */
+final class BenchmarkApplication {
+
+    private BenchmarkApplication() {
+    }
+
+    static ConfigurableApplicationContext start(UsersServiceStub usersService, String... extraProperties) {
+        String[] properties = {
+                "server.port=0",
+                "spring.datasource.url=jdbc:h2:mem:bench-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1",
+                "spring.jpa.show-sql=false",
+                "spring.jpa.properties.hibernate.format_sql=false",
+                "spring.h2.console.enabled=false",
+                "spring.autoconfigure.exclude=org.springframework.boot.autoconfigure.amqp.RabbitAutoConfiguration",
+                "app.rabbitmq.outbox.enabled=false",
+                "app.websocket.cluster.enabled=false",
+                "feign.client.turista.url=" + usersService.baseUrl(),
+                "logging.level.root=WARN",
+                "logging.level.com.iwellness.messaging=WARN",
+                "logging.level.org.springframework=WARN",
+                "logging.level.org.springframework.web=WARN",
+                "logging.level.org.springframework.messaging=WARN",
+                "logging.level.org.springframework.amqp=WARN"
+        };
+        // Un argumento repetido se leería como la lista de todos sus valores: se deja el último
+        Map<String, String> merged = new LinkedHashMap<>();
+        Stream.concat(Stream.of(properties), Stream.of(extraProperties))
+                .forEach(property -> merged.put(property.substring(0, property.indexOf('=')), property));
+        String[] args = merged.values().stream()
+                .map(property -> "--" + property)
+                .toArray(String[]::new);
+        return new SpringApplicationBuilder(MessagingApiApplication.class)
+                .logStartupInfo(false)
+                .run(args);
+    }
+}
@@ -0,0 +1,63 @@
+package com.iwellness.messaging.benchmarks;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.iwellness.messaging.dto.ChatMessageDTO;
+
+/**
+ * Serialización JSON de {@link ChatMessageDTO}, tal como viaja por STOMP y REST.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChatMessageSerializationBenchmark {
+
+    @Param({"40", "1000", "5000"})
+    private int contentLength;
+
+    private ObjectMapper objectMapper;
+    private ChatMessageDTO message;
+    private byte[] json;
+
+    @Setup
+    public void setUp() throws Exception {
+        objectMapper = new ObjectMapper().findAndRegisterModules();
+        message = ChatMessageDTO.builder()
+                .id(123456L)
+                .conversationId(42L)
+                .senderId(7L)
+                .receiverId(8L)
+                .content("a".repeat(contentLength))
+                .isRead(false)
+                .sentAt(LocalDateTime.now())
+                .build();
+        json = objectMapper.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws Exception {
+        return objectMapper.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public ChatMessageDTO deserialize() throws Exception {
+        return objectMapper.readValue(json, ChatMessageDTO.class);
+    }
+}
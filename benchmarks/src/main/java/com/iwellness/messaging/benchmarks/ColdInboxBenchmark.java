@@ -0,0 +1,85 @@
+package com.iwellness.messaging.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.iwellness.messaging.clientes.UserProfileCache;
+import com.iwellness.messaging.dto.ConversationSummaryDTO;
+import com.iwellness.messaging.service.MessagingService;
+
+/**
+ * Bandeja en frío: antes de cada invocación se vacía la caché de perfiles, así que cada
+ * llamada resuelve todos los participantes contra {@link UsersServiceStub}. El contador
+ * auxiliar usersServiceRequests da los viajes de red por bandeja (uno por lote de
+ * app.user-cache.batch-size participantes, frente a uno por participante sin lotes).
+ *
+ * mvn -f benchmarks/pom.xml compile exec:exec -Djmh.args="ColdInboxBenchmark -p conversations=10,100,1000"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ColdInboxBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int conversations;
+
+    private UsersServiceStub usersService;
+    private ConfigurableApplicationContext context;
+    private MessagingService messagingService;
+    private UserProfileCache userProfileCache;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class RoundTrips {
+        public long usersServiceRequests;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        usersService = new UsersServiceStub();
+        context = BenchmarkApplication.start(usersService);
+        messagingService = context.getBean(MessagingService.class);
+        userProfileCache = context.getBean(UserProfileCache.class);
+        DatasetSeeder.seed(context, conversations, 1);
+    }
+
+    @Setup(Level.Invocation)
+    public void evictProfiles() {
+        for (int i = 0; i < conversations; i++) {
+            userProfileCache.evict(DatasetSeeder.otherUser(i));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+        usersService.close();
+    }
+
+    @Benchmark
+    public List<ConversationSummaryDTO> getConversationSummaries(RoundTrips roundTrips) {
+        int before = usersService.requestCount();
+        List<ConversationSummaryDTO> inbox = messagingService.getConversationSummaries(DatasetSeeder.OWNER_ID);
+        roundTrips.usersServiceRequests += usersService.requestCount() - before;
+        return inbox;
+    }
+}
@@ -0,0 +1,75 @@
+package com.iwellness.messaging.benchmarks;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.iwellness.messaging.service.InboxReadModelReconciler;
+
+/**
+ * Genera un conjunto de datos reproducible: el usuario {@link #OWNER_ID} conversa con
+ * `conversations` usuarios distintos, con `messagesPerConversation` mensajes alternados en cada chat.
+ * Se inserta con JDBC en batch y luego se reconstruye el modelo de lectura de la bandeja.
+ */
+final class DatasetSeeder {
+
+    static final long OWNER_ID = 1L;
+
+    private DatasetSeeder() {
+    }
+
+    /**
+     * @return Los IDs de las conversaciones creadas, en orden.
+     */
+    static List<Long> seed(ConfigurableApplicationContext context, int conversations, int messagesPerConversation) {
+        JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+        LocalDateTime start = LocalDateTime.now().minusDays(30);
+
+        List<Object[]> conversationRows = new ArrayList<>(conversations);
+        for (int i = 0; i < conversations; i++) {
+            conversationRows.add(new Object[] {OWNER_ID, otherUser(i), Timestamp.valueOf(start), Timestamp.valueOf(start)});
+        }
+        jdbc.batchUpdate("INSERT INTO conversations (user1_id, user2_id, created_at, updated_at) VALUES (?, ?, ?, ?)",
+                conversationRows);
+        List<Long> conversationIds = jdbc.queryForList(
+                "SELECT id FROM conversations WHERE user1_id = ? ORDER BY user2_id", Long.class, OWNER_ID);
+
+        List<Object[]> messageRows = new ArrayList<>();
+        for (int i = 0; i < conversations; i++) {
+            long other = otherUser(i);
+            for (int m = 0; m < messagesPerConversation; m++) {
+                boolean fromOwner = m % 2 == 0;
+                messageRows.add(new Object[] {
+                        conversationIds.get(i),
+                        fromOwner ? OWNER_ID : other,
+                        fromOwner ? other : OWNER_ID,
+                        "Mensaje de prueba número " + m + " de la conversación " + i,
+                        // La segunda mitad de cada chat queda sin leer
+                        m < messagesPerConversation / 2,
+                        Timestamp.valueOf(start.plusMinutes((long) i * messagesPerConversation + m))
+                });
+                if (messageRows.size() == 5000) {
+                    insertMessages(jdbc, messageRows);
+                }
+            }
+        }
+        insertMessages(jdbc, messageRows);
+
+        context.getBean(InboxReadModelReconciler.class).reconcile();
+        return conversationIds;
+    }
+
+    static long otherUser(int conversationIndex) {
+        return OWNER_ID + 1 + conversationIndex;
+    }
+
+    private static void insertMessages(JdbcTemplate jdbc, List<Object[]> rows) {
+        jdbc.batchUpdate("INSERT INTO messages (conversation_id, sender_id, receiver_id, content, is_read, sent_at) "
+                + "VALUES (?, ?, ?, ?, ?, ?)", rows);
+        rows.clear();
+    }
+}
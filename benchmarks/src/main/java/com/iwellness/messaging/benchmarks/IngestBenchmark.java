@@ -0,0 +1,142 @@
+package com.iwellness.messaging.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.iwellness.messaging.dto.ChatMessageDTO;
+import com.iwellness.messaging.service.MessageWriteBehindService;
+import com.iwellness.messaging.service.MessagingService;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Ingesta de /app/chat.send en PostgreSQL: síncrona (una transacción por mensaje) frente a la
+ * escritura diferida de {@link MessageWriteBehindService}, que solo existe en PostgreSQL. Necesita
+ * una base de datos dedicada (jdbcUrl), que Flyway migra al arrancar; cada ejecución usa usuarios
+ * nuevos, así que no se borra nada.
+ * - syncSend: MessagingService.sendMessage, lo que hace el modo sync en el hilo STOMP.
+ * - asyncAccept: solo la aceptación, lo que espera el hilo STOMP en modo async. El contador
+ *   rejected da los mensajes rechazados por cola llena; cada iteración espera a que la cola se vacíe.
+ * - asyncPersisted: aceptación más espera a la persistencia (la confirmación PERSISTED). Con varios
+ *   hilos (-t) los lotes se llenan como con muchos remitentes a la vez.
+ *
+ * mvn -f benchmarks/pom.xml compile exec:exec \
+ *   -Djmh.args="IngestBenchmark -t 16 -p jdbcUrl=jdbc:postgresql://localhost:5432/messaging_bench"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class IngestBenchmark {
+
+    @Param({"jdbc:postgresql://localhost:5432/messaging_bench"})
+    private String jdbcUrl;
+
+    @Param({"postgres"})
+    private String username;
+
+    @Param({"postgres"})
+    private String password;
+
+    // Conversaciones entre las que se reparten los envíos
+    @Param({"100"})
+    private int pairs;
+
+    private UsersServiceStub usersService;
+    private ConfigurableApplicationContext context;
+    private MessagingService messagingService;
+    private MessageWriteBehindService writeBehindService;
+    private Gauge queueSize;
+    private long senderId;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Rejections {
+        public long rejected;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        usersService = new UsersServiceStub();
+        context = BenchmarkApplication.start(usersService,
+                "spring.profiles.active=postgres",
+                "spring.datasource.url=" + jdbcUrl,
+                "spring.datasource.username=" + username,
+                "spring.datasource.password=" + password,
+                "app.messaging.ingest.mode=async");
+        messagingService = context.getBean(MessagingService.class);
+        writeBehindService = context.getBean(MessageWriteBehindService.class);
+        if (!writeBehindService.isEnabled()) {
+            throw new IllegalStateException("La ingesta asíncrona no se habilitó: jdbcUrl debe ser PostgreSQL");
+        }
+        queueSize = context.getBean(MeterRegistry.class).get("messaging.ingest.queue.size").gauge();
+        // Usuarios que no existen en ejecuciones anteriores: las parejas se crean durante el calentamiento
+        senderId = System.currentTimeMillis() * 1000;
+    }
+
+    @TearDown(Level.Iteration)
+    public void awaitDrained() throws InterruptedException {
+        while (queueSize.value() > 0) {
+            Thread.sleep(10);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+        usersService.close();
+    }
+
+    private ChatMessageDTO nextMessage(Cursor cursor) {
+        cursor.next = (cursor.next + 1) % pairs;
+        return ChatMessageDTO.builder()
+                .senderId(senderId)
+                .receiverId(senderId + 1 + cursor.next)
+                .content("Mensaje enviado durante el benchmark de ingesta")
+                .build();
+    }
+
+    @Benchmark
+    public ChatMessageDTO syncSend(Cursor cursor) {
+        return messagingService.sendMessage(nextMessage(cursor));
+    }
+
+    @Benchmark
+    public MessageWriteBehindService.IngestedMessage asyncAccept(Cursor cursor, Rejections rejections) {
+        MessageWriteBehindService.IngestedMessage ingested = writeBehindService.ingest(nextMessage(cursor));
+        if (!ingested.accepted()) {
+            rejections.rejected++;
+        }
+        return ingested;
+    }
+
+    @Benchmark
+    public ChatMessageDTO asyncPersisted(Cursor cursor) {
+        MessageWriteBehindService.IngestedMessage ingested = writeBehindService.ingest(nextMessage(cursor));
+        ingested.persisted().join();
+        return ingested.message();
+    }
+}
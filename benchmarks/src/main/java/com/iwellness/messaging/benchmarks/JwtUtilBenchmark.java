@@ -0,0 +1,77 @@
+package com.iwellness.messaging.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.iwellness.messaging.config.AppProperties;
+import com.iwellness.messaging.util.JwtUtil;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Validación de tokens en {@link JwtUtil}, la ruta del handshake WebSocket.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtUtilBenchmark {
+
+    private static final String SECRET = "estaEsUnaClaveSecretaMuySeguraParaFirmarLosTokensJWT";
+
+    private JwtUtil jwtUtil;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        AppProperties properties = new AppProperties();
+        properties.getJwt().setSecret(SECRET);
+        properties.getJwt().setExpiration(TimeUnit.DAYS.toMillis(1));
+        jwtUtil = new JwtUtil(properties, new SimpleMeterRegistry());
+
+        token = Jwts.builder()
+                .subject("usuario@example.com")
+                .claim("idProveedor", 15L)
+                .issuedAt(new Date())
+                .expiration(new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1)))
+                .signWith(Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8)))
+                .compact();
+    }
+
+    @Benchmark
+    public Boolean validateToken() {
+        return jwtUtil.validateToken(token);
+    }
+
+    /**
+     * Lo que hace JwtHandshakeInterceptor en cada conexión: validar y extraer los claims.
+     */
+    @Benchmark
+    public Object handshakeClaims() {
+        return jwtUtil.parseToken(token).orElse(null);
+    }
+
+    /**
+     * Verificación completa de la firma, sin pasar por la caché de tokens.
+     */
+    @Benchmark
+    public Object verifySignature() {
+        return jwtUtil.extractClaim(token, claims -> claims.getSubject());
+    }
+}
@@ -0,0 +1,119 @@
+package com.iwellness.messaging.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.iwellness.messaging.config.AppProperties;
+import com.iwellness.messaging.entity.MessageContentConverter;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Codificación del contenido de los mensajes con {@link MessageContentConverter} sobre un corpus
+ * de texto con la distribución de longitudes habitual de un chat (70 % por debajo de 150 caracteres,
+ * 2 % entre 2000 y 5000). Cada operación procesa el corpus completo; el tamaño almacenado frente
+ * al original se registra en el log durante el setup.
+ */
+@Slf4j
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageContentCompressionBenchmark {
+
+    private static final String[] WORDS = (
+            "hola buenos días quería confirmar la reserva del tour para el sábado por la mañana "
+            + "somos cuatro personas dos adultos y dos niños necesitamos transporte desde el hotel "
+            + "el alojamiento incluye desayuno y la actividad dura aproximadamente tres horas "
+            + "por favor indícanos si hay que llevar ropa cómoda protector solar o algún documento "
+            + "gracias por la información te escribo de nuevo cuando tengamos el horario del vuelo "
+            + "el precio por persona es de cincuenta dólares con guía bilingüe y seguro incluido "
+            + "la cancelación es gratuita hasta cuarenta y ocho horas antes de la fecha reservada")
+            .split(" ");
+
+    private static final int CORPUS_SIZE = 1000;
+
+    @Param({"true", "false"})
+    private boolean enabled;
+
+    @Param({"512"})
+    private int minLength;
+
+    private AppProperties.Compression compression;
+    private List<String> corpus;
+    private List<String> stored;
+
+    @Setup
+    public void setUp() {
+        compression = new AppProperties.Compression();
+        compression.setEnabled(enabled);
+        compression.setMinLength(minLength);
+
+        Random random = new Random(11);
+        corpus = new ArrayList<>(CORPUS_SIZE);
+        for (int i = 0; i < CORPUS_SIZE; i++) {
+            corpus.add(prose(random, length(random)));
+        }
+        stored = corpus.stream().map(content -> MessageContentConverter.encode(content, compression)).toList();
+
+        long originalChars = corpus.stream().mapToLong(String::length).sum();
+        long storedChars = stored.stream().mapToLong(String::length).sum();
+        long encoded = stored.stream().filter(MessageContentConverter::isEncoded).count();
+        log.info("enabled={} minLength={}: corpus de {} mensajes y {} caracteres; almacenado {} caracteres ({} %), {} comprimidos",
+                enabled, minLength, CORPUS_SIZE, originalChars, storedChars,
+                String.format("%.1f", 100.0 * storedChars / originalChars), encoded);
+    }
+
+    @Benchmark
+    public void encode(Blackhole blackhole) {
+        for (String content : corpus) {
+            blackhole.consume(MessageContentConverter.encode(content, compression));
+        }
+    }
+
+    @Benchmark
+    public void decode(Blackhole blackhole) {
+        for (String value : stored) {
+            blackhole.consume(MessageContentConverter.decode(value));
+        }
+    }
+
+    private static int length(Random random) {
+        double p = random.nextDouble();
+        if (p < 0.70) {
+            return 20 + random.nextInt(130);
+        }
+        if (p < 0.90) {
+            return 150 + random.nextInt(450);
+        }
+        if (p < 0.98) {
+            return 600 + random.nextInt(1400);
+        }
+        return 2000 + random.nextInt(3000);
+    }
+
+    private static String prose(Random random, int length) {
+        StringBuilder text = new StringBuilder(length + 16);
+        while (text.length() < length) {
+            text.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+        }
+        return text.substring(0, length).trim();
+    }
+}
@@ -0,0 +1,123 @@
+package com.iwellness.messaging.benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.aop.framework.Advised;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.iwellness.messaging.clientes.UserProfileCache;
+import com.iwellness.messaging.dto.ChatMessageDTO;
+import com.iwellness.messaging.dto.ConversationDetailDTO;
+import com.iwellness.messaging.dto.ConversationSummaryDTO;
+import com.iwellness.messaging.entity.Message;
+import com.iwellness.messaging.repository.MessageRepository;
+import com.iwellness.messaging.service.MessagingService;
+
+/**
+ * Rutas críticas de {@link MessagingService} sobre H2, con el contexto Spring completo
+ * y un conjunto de datos de tamaño configurable. tailCache compara getConversationDetails con y
+ * sin la caché de la cola de cada conversación ({@code ConversationTailCache}).
+ *
+ * mvn -f benchmarks/pom.xml compile exec:exec -Djmh.args="MessagingServiceBenchmark -p conversations=10,100,1000"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessagingServiceBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int conversations;
+
+    @Param({"50"})
+    private int messagesPerConversation;
+
+    @Param({"true", "false"})
+    private boolean tailCache;
+
+    private UsersServiceStub usersService;
+    private ConfigurableApplicationContext context;
+    private MessagingService messagingService;
+    private List<Long> conversationIds;
+    private Message sampleMessage;
+    private MethodHandle mapToChatMessageDTO;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        usersService = new UsersServiceStub();
+        context = BenchmarkApplication.start(usersService, "app.messaging.tail-cache.enabled=" + tailCache);
+        messagingService = context.getBean(MessagingService.class);
+        conversationIds = DatasetSeeder.seed(context, conversations, messagesPerConversation);
+
+        // Se mide el estado estable: los perfiles ya están en caché, como tras unos minutos en producción
+        context.getBean(UserProfileCache.class).findAllById(LongStream
+                .rangeClosed(DatasetSeeder.OWNER_ID, DatasetSeeder.otherUser(conversations - 1))
+                .boxed().toList());
+
+        sampleMessage = context.getBean(MessageRepository.class)
+                .findByConversationIdOrderBySentAtAsc(conversationIds.get(0)).get(0);
+
+        // mapToChatMessageDTO es privado: se invoca sobre el bean real, no sobre el proxy transaccional
+        Object target = ((Advised) messagingService).getTargetSource().getTarget();
+        mapToChatMessageDTO = MethodHandles.privateLookupIn(MessagingService.class, MethodHandles.lookup())
+                .findVirtual(MessagingService.class, "mapToChatMessageDTO",
+                        MethodType.methodType(ChatMessageDTO.class, Message.class))
+                .bindTo(target);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+        usersService.close();
+    }
+
+    private int nextConversation() {
+        cursor = (cursor + 1) % conversations;
+        return cursor;
+    }
+
+    @Benchmark
+    public ChatMessageDTO sendMessage() {
+        return messagingService.sendMessage(ChatMessageDTO.builder()
+                .senderId(DatasetSeeder.OWNER_ID)
+                .receiverId(DatasetSeeder.otherUser(nextConversation()))
+                .content("Mensaje enviado durante el benchmark")
+                .build());
+    }
+
+    @Benchmark
+    public List<ConversationSummaryDTO> getConversationSummaries() {
+        return messagingService.getConversationSummaries(DatasetSeeder.OWNER_ID);
+    }
+
+    @Benchmark
+    public ConversationDetailDTO getConversationDetails() {
+        return messagingService.getConversationDetails(conversationIds.get(nextConversation()), DatasetSeeder.OWNER_ID);
+    }
+
+    @Benchmark
+    public ChatMessageDTO mapToChatMessageDTO() throws Throwable {
+        return (ChatMessageDTO) mapToChatMessageDTO.invokeExact(sampleMessage);
+    }
+}
@@ -0,0 +1,74 @@
+package com.iwellness.messaging.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Stub local de admin-users-service para los benchmarks.
+ * Responde /usuarios/perfil-publico/{id} y /usuarios/perfil-publico?ids=... con perfiles
+ * sintéticos y cuenta las peticiones recibidas, para medir los viajes de red ahorrados.
+ */
+public class UsersServiceStub implements AutoCloseable {
+
+    private static final String BASE_PATH = "/usuarios/perfil-publico";
+
+    private final HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+
+    public UsersServiceStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext(BASE_PATH, this::handle);
+        server.start();
+    }
+
+    public String baseUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    public int requestCount() {
+        return requests.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        String path = exchange.getRequestURI().getPath();
+        String query = exchange.getRequestURI().getQuery();
+        String body;
+        if (path.length() > BASE_PATH.length()) {
+            body = profile(Long.parseLong(path.substring(BASE_PATH.length() + 1)));
+        } else {
+            // Acepta tanto ids=1,2,3 como ids=1&ids=2&ids=3 (formato de Feign)
+            body = Arrays.stream(query != null ? query.split("&") : new String[0])
+                    .filter(param -> param.startsWith("ids="))
+                    .flatMap(param -> Arrays.stream(param.substring(4).split(",")))
+                    .filter(id -> !id.isBlank())
+                    .map(id -> profile(Long.parseLong(id)))
+                    .collect(Collectors.joining(",", "[", "]"));
+        }
+
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String profile(long id) {
+        return "{\"id\":" + id + ",\"nombre\":\"Usuario\",\"apellido\":\"" + id
+                + "\",\"correo\":\"usuario" + id + "@example.com\",\"foto\":null}";
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
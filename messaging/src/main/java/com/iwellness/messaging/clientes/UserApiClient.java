@@ -5,6 +5,7 @@ import java.util.List;
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
 
 import com.iwellness.messaging.config.FeignClientInterceptor;
 import com.iwellness.messaging.dto.UsuarioDTO;
@@ -22,6 +23,11 @@ public interface UserApiClient {
     @GetMapping("/perfil-publico/{id}")
     UsuarioDTO findById(@PathVariable("id") Long id);
 
+    // Llama a GET http://localhost:8082/usuarios/perfil-publico?ids=1,2,3
+    // Los IDs inexistentes simplemente no aparecen en la respuesta.
+    @GetMapping("/perfil-publico")
+    List<UsuarioDTO> findAllByIds(@RequestParam("ids") List<Long> ids);
+
     // --- NUEVO MÉTODO ---
     // Llama a GET http://localhost:8082/api/usuarios/{userId}/contacts
     @GetMapping("/{userId}/contacts")
@@ -0,0 +1,138 @@
+package com.iwellness.messaging.clientes;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.iwellness.messaging.config.AppProperties;
+import com.iwellness.messaging.dto.UsuarioDTO;
+
+import feign.FeignException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Caché en memoria de perfiles públicos delante de {@link UserApiClient}.
+ * Acotada por tamaño y con expiración por tiempo; los 404 se cachean con un TTL
+ * más corto y las consultas concurrentes por el mismo ID se resuelven con una
+ * sola llamada remota. Las estadísticas se publican en /actuator/metrics (cache.*).
+ */
+@Slf4j
+@Component
+public class UserProfileCache {
+
+    private static final String CACHE_NAME = "usuarios";
+
+    private final UserApiClient userApiClient;
+    private final Cache<Long, Optional<UsuarioDTO>> cache;
+    private final int batchSize;
+
+    public UserProfileCache(UserApiClient userApiClient, AppProperties appProperties, MeterRegistry meterRegistry) {
+        this.userApiClient = userApiClient;
+        AppProperties.UserCache props = appProperties.getUserCache();
+        long ttlNanos = props.getTtl().toNanos();
+        long negativeTtlNanos = props.getNegativeTtl().toNanos();
+        this.batchSize = Math.max(1, props.getBatchSize());
+
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(props.getMaxSize())
+                .expireAfter(new Expiry<Long, Optional<UsuarioDTO>>() {
+                    @Override
+                    public long expireAfterCreate(Long id, Optional<UsuarioDTO> usuario, long currentTime) {
+                        return usuario.isPresent() ? ttlNanos : negativeTtlNanos;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(Long id, Optional<UsuarioDTO> usuario, long currentTime,
+                                                  long currentDuration) {
+                        return expireAfterCreate(id, usuario, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(Long id, Optional<UsuarioDTO> usuario, long currentTime,
+                                                long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    /**
+     * Obtiene el perfil público de un usuario, consultando al servicio de usuarios solo si no está en caché.
+     *
+     * @param id El ID del usuario.
+     * @return El perfil, o null si el usuario no existe.
+     */
+    public UsuarioDTO findById(Long id) {
+        return cache.get(id, this::load).orElse(null);
+    }
+
+    /**
+     * Obtiene los perfiles de varios usuarios. Los IDs que no están en caché se
+     * resuelven con llamadas por lotes de hasta app.user-cache.batch-size IDs.
+     *
+     * @param ids Los IDs de los usuarios.
+     * @return Un mapa ID → perfil; los usuarios inexistentes no aparecen.
+     */
+    public Map<Long, UsuarioDTO> findAllById(Collection<Long> ids) {
+        Map<Long, UsuarioDTO> result = new HashMap<>();
+        cache.getAll(ids, this::loadAll)
+                .forEach((id, usuario) -> usuario.ifPresent(u -> result.put(id, u)));
+        return result;
+    }
+
+    /**
+     * Descarta el perfil cacheado de un usuario.
+     *
+     * @param id El ID del usuario.
+     */
+    public void evict(Long id) {
+        cache.invalidate(id);
+    }
+
+    private Map<Long, Optional<UsuarioDTO>> loadAll(Set<? extends Long> ids) {
+        List<Long> pending = new ArrayList<>(ids);
+        Map<Long, Optional<UsuarioDTO>> loaded = new HashMap<>();
+        for (int from = 0; from < pending.size(); from += batchSize) {
+            List<Long> chunk = pending.subList(from, Math.min(from + batchSize, pending.size()));
+            if (chunk.size() == 1) {
+                loaded.put(chunk.get(0), load(chunk.get(0)));
+                continue;
+            }
+            try {
+                for (UsuarioDTO usuario : userApiClient.findAllByIds(chunk)) {
+                    loaded.put(usuario.getId(), Optional.of(usuario));
+                }
+            } catch (FeignException.NotFound e) {
+                // El servicio de usuarios no expone la consulta por lotes: se resuelve uno a uno
+                log.warn("Consulta por lotes de usuarios no disponible, usando consultas individuales");
+                chunk.forEach(id -> loaded.put(id, load(id)));
+            }
+            // Los IDs que no vinieron en la respuesta no existen: se cachean como ausentes
+            chunk.forEach(id -> loaded.putIfAbsent(id, Optional.empty()));
+        }
+        return loaded;
+    }
+
+    private Optional<UsuarioDTO> load(Long id) {
+        try {
+            return Optional.ofNullable(userApiClient.findById(id));
+        } catch (FeignException.NotFound e) {
+            log.debug("Usuario {} no encontrado en admin-users-service", id);
+            return Optional.empty();
+        }
+    }
+}
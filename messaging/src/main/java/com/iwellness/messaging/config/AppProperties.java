@@ -1,10 +1,12 @@
 package com.iwellness.messaging.config;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
 
 @Configuration
 @ConfigurationProperties(prefix = "app")
@@ -14,6 +16,7 @@ public class AppProperties {
     private Websocket websocket = new Websocket();
     private Rabbitmq rabbitmq = new Rabbitmq();
     private Messaging messaging = new Messaging();
+    private UserCache userCache = new UserCache();
 
     // Getters y Setters para todos los campos
 
@@ -25,17 +28,31 @@ public class AppProperties {
     public void setRabbitmq(Rabbitmq rabbitmq) { this.rabbitmq = rabbitmq; }
     public Messaging getMessaging() { return messaging; }
     public void setMessaging(Messaging messaging) { this.messaging = messaging; }
+    public UserCache getUserCache() { return userCache; }
+    public void setUserCache(UserCache userCache) { this.userCache = userCache; }
 
     // Clases anidadas para representar la estructura del YML
 
     public static class Jwt {
         private String secret;
         private long expiration;
+        private long cacheMaxSize = 10000;
+        // Claim con el ID de usuario de mensajería
+        private String userIdClaim = "userId";
+        // Rechazar el handshake si el token no trae ID de usuario; false admite los tokens antiguos
+        // (username como subject), cuyas sesiones reciben REJECTED al enviar
+        private boolean requireUserId = true;
         // Getters y Setters
         public String getSecret() { return secret; }
         public void setSecret(String secret) { this.secret = secret; }
         public long getExpiration() { return expiration; }
         public void setExpiration(long expiration) { this.expiration = expiration; }
+        public long getCacheMaxSize() { return cacheMaxSize; }
+        public void setCacheMaxSize(long cacheMaxSize) { this.cacheMaxSize = cacheMaxSize; }
+        public String getUserIdClaim() { return userIdClaim; }
+        public void setUserIdClaim(String userIdClaim) { this.userIdClaim = userIdClaim; }
+        public boolean isRequireUserId() { return requireUserId; }
+        public void setRequireUserId(boolean requireUserId) { this.requireUserId = requireUserId; }
     }
 
     public static class Websocket {
@@ -43,6 +60,12 @@ public class AppProperties {
         private String endpoint;
         private String topicPrefix;
         private String appPrefix;
+        private Broker broker = new Broker();
+        private Cluster cluster = new Cluster();
+        private ChannelExecutor inbound = new ChannelExecutor(16, 64);
+        private ChannelExecutor outbound = new ChannelExecutor(8, 32);
+        private Transport transport = new Transport();
+        private Signals signals = new Signals();
         // Getters y Setters
         public List<String> getAllowedOrigins() { return allowedOrigins; }
         public void setAllowedOrigins(List<String> allowedOrigins) { this.allowedOrigins = allowedOrigins; }
@@ -52,16 +75,205 @@ public class AppProperties {
         public void setTopicPrefix(String topicPrefix) { this.topicPrefix = topicPrefix; }
         public String getAppPrefix() { return appPrefix; }
         public void setAppPrefix(String appPrefix) { this.appPrefix = appPrefix; }
+        public Broker getBroker() { return broker; }
+        public void setBroker(Broker broker) { this.broker = broker; }
+        public Cluster getCluster() { return cluster; }
+        public void setCluster(Cluster cluster) { this.cluster = cluster; }
+        public ChannelExecutor getInbound() { return inbound; }
+        public void setInbound(ChannelExecutor inbound) { this.inbound = inbound; }
+        public ChannelExecutor getOutbound() { return outbound; }
+        public void setOutbound(ChannelExecutor outbound) { this.outbound = outbound; }
+        public Transport getTransport() { return transport; }
+        public void setTransport(Transport transport) { this.transport = transport; }
+        public Signals getSignals() { return signals; }
+        public void setSignals(Signals signals) { this.signals = signals; }
+    }
+
+    public static class Signals {
+        // Como máximo un aviso de "escribiendo" por pareja emisor/receptor en este intervalo
+        private Duration typingThrottle = Duration.ofSeconds(3);
+        // Sin avisos durante este tiempo, se notifica que el usuario dejó de escribir
+        private Duration typingTimeout = Duration.ofSeconds(5);
+        // Las confirmaciones de lectura se agrupan y se envían en este intervalo
+        private Duration readReceiptFlushInterval = Duration.ofMillis(250);
+        // Getters y Setters
+        public Duration getTypingThrottle() { return typingThrottle; }
+        public void setTypingThrottle(Duration typingThrottle) { this.typingThrottle = typingThrottle; }
+        public Duration getTypingTimeout() { return typingTimeout; }
+        public void setTypingTimeout(Duration typingTimeout) { this.typingTimeout = typingTimeout; }
+        public Duration getReadReceiptFlushInterval() { return readReceiptFlushInterval; }
+        public void setReadReceiptFlushInterval(Duration readReceiptFlushInterval) { this.readReceiptFlushInterval = readReceiptFlushInterval; }
+    }
+
+    public static class ChannelExecutor {
+        // PLATFORM: pool de hilos clásico; VIRTUAL: hilos virtuales (requiere Java 21 en tiempo de ejecución)
+        private ThreadMode threadMode = ThreadMode.PLATFORM;
+        private int corePoolSize;
+        private int maxPoolSize;
+        private int queueCapacity = 10000;
+        private Duration keepAlive = Duration.ofSeconds(60);
+        // Conserva el orden de los mensajes de cada sesión aunque el pool tenga varios hilos
+        private boolean preserveOrder = true;
+
+        public ChannelExecutor() {
+        }
+
+        public ChannelExecutor(int corePoolSize, int maxPoolSize) {
+            this.corePoolSize = corePoolSize;
+            this.maxPoolSize = maxPoolSize;
+        }
+        // Getters y Setters
+        public ThreadMode getThreadMode() { return threadMode; }
+        public void setThreadMode(ThreadMode threadMode) { this.threadMode = threadMode; }
+        public int getCorePoolSize() { return corePoolSize; }
+        public void setCorePoolSize(int corePoolSize) { this.corePoolSize = corePoolSize; }
+        public int getMaxPoolSize() { return maxPoolSize; }
+        public void setMaxPoolSize(int maxPoolSize) { this.maxPoolSize = maxPoolSize; }
+        public int getQueueCapacity() { return queueCapacity; }
+        public void setQueueCapacity(int queueCapacity) { this.queueCapacity = queueCapacity; }
+        public Duration getKeepAlive() { return keepAlive; }
+        public void setKeepAlive(Duration keepAlive) { this.keepAlive = keepAlive; }
+        public boolean isPreserveOrder() { return preserveOrder; }
+        public void setPreserveOrder(boolean preserveOrder) { this.preserveOrder = preserveOrder; }
+    }
+
+    public enum ThreadMode {
+        PLATFORM, VIRTUAL
+    }
+
+    public static class Transport {
+        // Límites por sesión para clientes lentos: se cierra la sesión si se superan
+        private Duration sendTimeLimit = Duration.ofSeconds(10);
+        private DataSize sendBufferSizeLimit = DataSize.ofKilobytes(512);
+        private DataSize messageSizeLimit = DataSize.ofKilobytes(64);
+        private Duration timeToFirstMessage = Duration.ofSeconds(60);
+        // Getters y Setters
+        public Duration getSendTimeLimit() { return sendTimeLimit; }
+        public void setSendTimeLimit(Duration sendTimeLimit) { this.sendTimeLimit = sendTimeLimit; }
+        public DataSize getSendBufferSizeLimit() { return sendBufferSizeLimit; }
+        public void setSendBufferSizeLimit(DataSize sendBufferSizeLimit) { this.sendBufferSizeLimit = sendBufferSizeLimit; }
+        public DataSize getMessageSizeLimit() { return messageSizeLimit; }
+        public void setMessageSizeLimit(DataSize messageSizeLimit) { this.messageSizeLimit = messageSizeLimit; }
+        public Duration getTimeToFirstMessage() { return timeToFirstMessage; }
+        public void setTimeToFirstMessage(Duration timeToFirstMessage) { this.timeToFirstMessage = timeToFirstMessage; }
+    }
+
+    public static class Cluster {
+        // Reparto entre nodos por AMQP manteniendo el broker simple en cada nodo
+        private boolean enabled = false;
+        private String nodeId;
+        private String routingKeyPrefix = "messaging.cluster";
+        // Exchange propio del clúster, separado del exchange de eventos compartido con otros servicios
+        private String exchange = "messaging.cluster";
+        private Duration presenceInterval = Duration.ofSeconds(30);
+        private Duration presenceTtl = Duration.ofSeconds(90);
+        private Duration deliveryTtl = Duration.ofSeconds(30);
+        // Publicación asíncrona de entregas: hilos y entregas en espera antes de descartar
+        private int forwardThreads = 2;
+        private int forwardQueueCapacity = 1000;
+        // Getters y Setters
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        public String getNodeId() { return nodeId; }
+        public void setNodeId(String nodeId) { this.nodeId = nodeId; }
+        public String getRoutingKeyPrefix() { return routingKeyPrefix; }
+        public void setRoutingKeyPrefix(String routingKeyPrefix) { this.routingKeyPrefix = routingKeyPrefix; }
+        public String getExchange() { return exchange; }
+        public void setExchange(String exchange) { this.exchange = exchange; }
+        public Duration getPresenceInterval() { return presenceInterval; }
+        public void setPresenceInterval(Duration presenceInterval) { this.presenceInterval = presenceInterval; }
+        public Duration getPresenceTtl() { return presenceTtl; }
+        public void setPresenceTtl(Duration presenceTtl) { this.presenceTtl = presenceTtl; }
+        public Duration getDeliveryTtl() { return deliveryTtl; }
+        public void setDeliveryTtl(Duration deliveryTtl) { this.deliveryTtl = deliveryTtl; }
+        public int getForwardThreads() { return forwardThreads; }
+        public void setForwardThreads(int forwardThreads) { this.forwardThreads = forwardThreads; }
+        public int getForwardQueueCapacity() { return forwardQueueCapacity; }
+        public void setForwardQueueCapacity(int forwardQueueCapacity) { this.forwardQueueCapacity = forwardQueueCapacity; }
+    }
+
+    public static class Broker {
+        // SIMPLE: broker en memoria (un solo nodo); RELAY: broker STOMP externo (RabbitMQ)
+        private BrokerMode mode = BrokerMode.SIMPLE;
+        private String relayHost = "localhost";
+        private int relayPort = 61613;
+        private String virtualHost = "/";
+        private String clientLogin = "guest";
+        private String clientPasscode = "guest";
+        private String systemLogin = "guest";
+        private String systemPasscode = "guest";
+        private Duration systemHeartbeatSendInterval = Duration.ofSeconds(10);
+        private Duration systemHeartbeatReceiveInterval = Duration.ofSeconds(10);
+        private Duration connectTimeout = Duration.ofSeconds(5);
+        // Getters y Setters
+        public BrokerMode getMode() { return mode; }
+        public void setMode(BrokerMode mode) { this.mode = mode; }
+        public String getRelayHost() { return relayHost; }
+        public void setRelayHost(String relayHost) { this.relayHost = relayHost; }
+        public int getRelayPort() { return relayPort; }
+        public void setRelayPort(int relayPort) { this.relayPort = relayPort; }
+        public String getVirtualHost() { return virtualHost; }
+        public void setVirtualHost(String virtualHost) { this.virtualHost = virtualHost; }
+        public String getClientLogin() { return clientLogin; }
+        public void setClientLogin(String clientLogin) { this.clientLogin = clientLogin; }
+        public String getClientPasscode() { return clientPasscode; }
+        public void setClientPasscode(String clientPasscode) { this.clientPasscode = clientPasscode; }
+        public String getSystemLogin() { return systemLogin; }
+        public void setSystemLogin(String systemLogin) { this.systemLogin = systemLogin; }
+        public String getSystemPasscode() { return systemPasscode; }
+        public void setSystemPasscode(String systemPasscode) { this.systemPasscode = systemPasscode; }
+        public Duration getSystemHeartbeatSendInterval() { return systemHeartbeatSendInterval; }
+        public void setSystemHeartbeatSendInterval(Duration systemHeartbeatSendInterval) { this.systemHeartbeatSendInterval = systemHeartbeatSendInterval; }
+        public Duration getSystemHeartbeatReceiveInterval() { return systemHeartbeatReceiveInterval; }
+        public void setSystemHeartbeatReceiveInterval(Duration systemHeartbeatReceiveInterval) { this.systemHeartbeatReceiveInterval = systemHeartbeatReceiveInterval; }
+        public Duration getConnectTimeout() { return connectTimeout; }
+        public void setConnectTimeout(Duration connectTimeout) { this.connectTimeout = connectTimeout; }
+    }
+
+    public enum BrokerMode {
+        SIMPLE, RELAY
     }
 
     public static class Rabbitmq {
         private Exchange exchange;
         private Map<String, String> routingKeys;
+        private Outbox outbox = new Outbox();
         // Getters y Setters
         public Exchange getExchange() { return exchange; }
         public void setExchange(Exchange exchange) { this.exchange = exchange; }
         public Map<String, String> getRoutingKeys() { return routingKeys; }
         public void setRoutingKeys(Map<String, String> routingKeys) { this.routingKeys = routingKeys; }
+        public Outbox getOutbox() { return outbox; }
+        public void setOutbox(Outbox outbox) { this.outbox = outbox; }
+    }
+
+    public static class Outbox {
+        // Si es false los eventos se siguen registrando, pero no se publican
+        private boolean enabled = true;
+        private Duration pollInterval = Duration.ofMillis(500);
+        private int batchSize = 100;
+        private Duration confirmTimeout = Duration.ofSeconds(5);
+        // Fallos propios del evento (sin routing key, payload inválido, nack) antes de aparcarlo
+        private int maxAttempts = 10;
+        // Formato del cuerpo publicado; el outbox siempre guarda JSON
+        private OutboxFormat format = OutboxFormat.JSON;
+        // Getters y Setters
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        public Duration getPollInterval() { return pollInterval; }
+        public void setPollInterval(Duration pollInterval) { this.pollInterval = pollInterval; }
+        public int getBatchSize() { return batchSize; }
+        public void setBatchSize(int batchSize) { this.batchSize = batchSize; }
+        public Duration getConfirmTimeout() { return confirmTimeout; }
+        public void setConfirmTimeout(Duration confirmTimeout) { this.confirmTimeout = confirmTimeout; }
+        public int getMaxAttempts() { return maxAttempts; }
+        public void setMaxAttempts(int maxAttempts) { this.maxAttempts = maxAttempts; }
+        public OutboxFormat getFormat() { return format; }
+        public void setFormat(OutboxFormat format) { this.format = format; }
+    }
+
+    public enum OutboxFormat {
+        JSON, SMILE
     }
 
     public static class Exchange {
@@ -74,11 +286,153 @@ public class AppProperties {
     public static class Messaging {
         private int maxMessageLength;
         private Pagination pagination;
+        private Ingest ingest = new Ingest();
+        private TailCache tailCache = new TailCache();
+        private Search search = new Search();
+        private Partitions partitions = new Partitions();
+        private Archive archive = new Archive();
+        private Compression compression = new Compression();
+        private Sync sync = new Sync();
         // Getters y Setters
         public int getMaxMessageLength() { return maxMessageLength; }
         public void setMaxMessageLength(int maxMessageLength) { this.maxMessageLength = maxMessageLength; }
         public Pagination getPagination() { return pagination; }
         public void setPagination(Pagination pagination) { this.pagination = pagination; }
+        public Ingest getIngest() { return ingest; }
+        public void setIngest(Ingest ingest) { this.ingest = ingest; }
+        public TailCache getTailCache() { return tailCache; }
+        public void setTailCache(TailCache tailCache) { this.tailCache = tailCache; }
+        public Search getSearch() { return search; }
+        public void setSearch(Search search) { this.search = search; }
+        public Partitions getPartitions() { return partitions; }
+        public void setPartitions(Partitions partitions) { this.partitions = partitions; }
+        public Archive getArchive() { return archive; }
+        public void setArchive(Archive archive) { this.archive = archive; }
+        public Compression getCompression() { return compression; }
+        public void setCompression(Compression compression) { this.compression = compression; }
+        public Sync getSync() { return sync; }
+        public void setSync(Sync sync) { this.sync = sync; }
+    }
+
+    public static class Sync {
+        // Cambios procesados como máximo por sincronización
+        private int maxChanges = 500;
+        // Cada cuánto avanza la marca de agua de los cambios confirmados
+        private Duration pollInterval = Duration.ofMillis(200);
+        // Solo H2: tiempo tras el cual un hueco en los IDs se da por transacción revertida
+        private Duration settle = Duration.ofSeconds(5);
+        private Duration retention = Duration.ofDays(30);
+        // Getters y Setters
+        public int getMaxChanges() { return maxChanges; }
+        public void setMaxChanges(int maxChanges) { this.maxChanges = maxChanges; }
+        public Duration getPollInterval() { return pollInterval; }
+        public void setPollInterval(Duration pollInterval) { this.pollInterval = pollInterval; }
+        public Duration getSettle() { return settle; }
+        public void setSettle(Duration settle) { this.settle = settle; }
+        public Duration getRetention() { return retention; }
+        public void setRetention(Duration retention) { this.retention = retention; }
+    }
+
+    public static class Compression {
+        private boolean enabled = false;
+        // Longitud mínima (en caracteres) a partir de la cual se comprime el contenido
+        private int minLength = 512;
+        // Getters y Setters
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        public int getMinLength() { return minLength; }
+        public void setMinLength(int minLength) { this.minLength = minLength; }
+    }
+
+    public static class Partitions {
+        // Particiones mensuales de messages creadas por adelantado (solo PostgreSQL)
+        private int monthsAhead = 2;
+        // Getters y Setters
+        public int getMonthsAhead() { return monthsAhead; }
+        public void setMonthsAhead(int monthsAhead) { this.monthsAhead = monthsAhead; }
+    }
+
+    public static class Archive {
+        // Directorio de los segmentos; con varias réplicas debe ser un volumen compartido
+        private String directory = "./data/message-archive";
+        // Meses completos que permanecen en PostgreSQL además del actual
+        private int hotMonths = 6;
+        private DataSize blockSize = DataSize.ofKilobytes(64);
+        private Duration lockTimeout = Duration.ofSeconds(5);
+        private Duration rescanInterval = Duration.ofSeconds(30);
+        // Getters y Setters
+        public String getDirectory() { return directory; }
+        public void setDirectory(String directory) { this.directory = directory; }
+        public int getHotMonths() { return hotMonths; }
+        public void setHotMonths(int hotMonths) { this.hotMonths = hotMonths; }
+        public DataSize getBlockSize() { return blockSize; }
+        public void setBlockSize(DataSize blockSize) { this.blockSize = blockSize; }
+        public Duration getLockTimeout() { return lockTimeout; }
+        public void setLockTimeout(Duration lockTimeout) { this.lockTimeout = lockTimeout; }
+        public Duration getRescanInterval() { return rescanInterval; }
+        public void setRescanInterval(Duration rescanInterval) { this.rescanInterval = rescanInterval; }
+    }
+
+    public static class Search {
+        private int maxQueryLength = 200;
+        // Tiempo máximo por consulta en PostgreSQL (statement_timeout)
+        private Duration timeout = Duration.ofSeconds(3);
+        // Getters y Setters
+        public int getMaxQueryLength() { return maxQueryLength; }
+        public void setMaxQueryLength(int maxQueryLength) { this.maxQueryLength = maxQueryLength; }
+        public Duration getTimeout() { return timeout; }
+        public void setTimeout(Duration timeout) { this.timeout = timeout; }
+    }
+
+    public static class TailCache {
+        private boolean enabled = true;
+        // Mensajes recientes en memoria por conversación; debe superar el tamaño de página
+        private int size = 100;
+        private DataSize maxMemory = DataSize.ofMegabytes(32);
+        private Duration maxAge = Duration.ofSeconds(60);
+        // Getters y Setters
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        public int getSize() { return size; }
+        public void setSize(int size) { this.size = size; }
+        public DataSize getMaxMemory() { return maxMemory; }
+        public void setMaxMemory(DataSize maxMemory) { this.maxMemory = maxMemory; }
+        public Duration getMaxAge() { return maxAge; }
+        public void setMaxAge(Duration maxAge) { this.maxAge = maxAge; }
+    }
+
+    public static class Ingest {
+        // SYNC: se persiste en el hilo del canal STOMP; ASYNC: escritura diferida por lotes
+        private IngestMode mode = IngestMode.SYNC;
+        private int batchSize = 200;
+        private Duration linger = Duration.ofMillis(20);
+        private int queueCapacity = 10000;
+        private Duration offerTimeout = Duration.ofMillis(500);
+        private int maxRetries = 3;
+        // IDs reservados por viaje a la secuencia y vida máxima de un bloque sin agotar
+        private int idBlockSize = 100;
+        private Duration idBlockTtl = Duration.ofSeconds(1);
+        // Getters y Setters
+        public IngestMode getMode() { return mode; }
+        public void setMode(IngestMode mode) { this.mode = mode; }
+        public int getBatchSize() { return batchSize; }
+        public void setBatchSize(int batchSize) { this.batchSize = batchSize; }
+        public Duration getLinger() { return linger; }
+        public void setLinger(Duration linger) { this.linger = linger; }
+        public int getQueueCapacity() { return queueCapacity; }
+        public void setQueueCapacity(int queueCapacity) { this.queueCapacity = queueCapacity; }
+        public Duration getOfferTimeout() { return offerTimeout; }
+        public void setOfferTimeout(Duration offerTimeout) { this.offerTimeout = offerTimeout; }
+        public int getMaxRetries() { return maxRetries; }
+        public void setMaxRetries(int maxRetries) { this.maxRetries = maxRetries; }
+        public int getIdBlockSize() { return idBlockSize; }
+        public void setIdBlockSize(int idBlockSize) { this.idBlockSize = idBlockSize; }
+        public Duration getIdBlockTtl() { return idBlockTtl; }
+        public void setIdBlockTtl(Duration idBlockTtl) { this.idBlockTtl = idBlockTtl; }
+    }
+
+    public enum IngestMode {
+        SYNC, ASYNC
     }
 
     public static class Pagination {
@@ -90,4 +444,20 @@ public class AppProperties {
         public int getMaxSize() { return maxSize; }
         public void setMaxSize(int maxSize) { this.maxSize = maxSize; }
     }
+
+    public static class UserCache {
+        private long maxSize = 10000;
+        private Duration ttl = Duration.ofMinutes(10);
+        private Duration negativeTtl = Duration.ofMinutes(1);
+        private int batchSize = 100;
+        // Getters y Setters
+        public long getMaxSize() { return maxSize; }
+        public void setMaxSize(long maxSize) { this.maxSize = maxSize; }
+        public Duration getTtl() { return ttl; }
+        public void setTtl(Duration ttl) { this.ttl = ttl; }
+        public Duration getNegativeTtl() { return negativeTtl; }
+        public void setNegativeTtl(Duration negativeTtl) { this.negativeTtl = negativeTtl; }
+        public int getBatchSize() { return batchSize; }
+        public void setBatchSize(int batchSize) { this.batchSize = batchSize; }
+    }
 }
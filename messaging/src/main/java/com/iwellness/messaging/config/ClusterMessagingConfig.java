@@ -0,0 +1,52 @@
+package com.iwellness.messaging.config;
+
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.QueueBuilder;
+import org.springframework.amqp.core.TopicExchange;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.iwellness.messaging.service.ClusterMessageBridge;
+import com.iwellness.messaging.service.PresenceRegistry;
+
+/**
+ * Topología AMQP del modo clúster: una cola exclusiva por nodo enlazada al exchange propio
+ * del clúster (app.websocket.cluster.exchange) con la clave del nodo (entregas dirigidas) y con la clave común de presencia
+ * (que así llega a todos los nodos). La cola desaparece con el nodo; los mensajes
+ * llevan su propia expiración (delivery-ttl / presence-ttl).
+ */
+@Configuration
+@ConditionalOnExpression(ClusterMessageBridge.ENABLED)
+public class ClusterMessagingConfig {
+
+    @Bean
+    public TopicExchange clusterExchange(AppProperties appProperties) {
+        return new TopicExchange(appProperties.getWebsocket().getCluster().getExchange(), true, false);
+    }
+
+    @Bean
+    public Queue clusterNodeQueue(AppProperties appProperties, PresenceRegistry presenceRegistry) {
+        AppProperties.Cluster cluster = appProperties.getWebsocket().getCluster();
+        return QueueBuilder.nonDurable(cluster.getRoutingKeyPrefix() + ".node." + presenceRegistry.getNodeId())
+                .exclusive()
+                .autoDelete()
+                .build();
+    }
+
+    @Bean
+    public Binding clusterNodeBinding(Queue clusterNodeQueue, TopicExchange clusterExchange,
+                                      AppProperties appProperties, PresenceRegistry presenceRegistry) {
+        return BindingBuilder.bind(clusterNodeQueue).to(clusterExchange).with(ClusterMessageBridge.nodeRoutingKey(
+                appProperties.getWebsocket().getCluster().getRoutingKeyPrefix(), presenceRegistry.getNodeId()));
+    }
+
+    @Bean
+    public Binding clusterPresenceBinding(Queue clusterNodeQueue, TopicExchange clusterExchange,
+                                          AppProperties appProperties) {
+        return BindingBuilder.bind(clusterNodeQueue).to(clusterExchange).with(ClusterMessageBridge.presenceRoutingKey(
+                appProperties.getWebsocket().getCluster().getRoutingKeyPrefix()));
+    }
+}
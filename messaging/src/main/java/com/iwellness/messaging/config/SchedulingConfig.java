@@ -0,0 +1,45 @@
+package com.iwellness.messaging.config;
+
+import org.springframework.boot.task.ThreadPoolTaskSchedulerBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * Planificadores de las tareas @Scheduled. taskScheduler es el compartido y toma
+ * spring.task.scheduling.* (se declara explícitamente porque el broker STOMP registra su propio
+ * TaskScheduler y, sin él, Spring Boot no crearía el de por defecto). El relay del outbox y el
+ * archivado tienen un hilo propio cada uno (@Scheduled(scheduler = ...)): un ciclo largo de
+ * cualquiera de los dos no retrasa el resto de tareas periódicas.
+ */
+@Configuration
+public class SchedulingConfig {
+
+    public static final String OUTBOX_RELAY_SCHEDULER = "outboxRelayScheduler";
+    public static final String MESSAGE_ARCHIVE_SCHEDULER = "messageArchiveScheduler";
+
+    @Bean
+    public ThreadPoolTaskScheduler taskScheduler(ThreadPoolTaskSchedulerBuilder builder) {
+        return builder.build();
+    }
+
+    @Bean(OUTBOX_RELAY_SCHEDULER)
+    public ThreadPoolTaskScheduler outboxRelayScheduler() {
+        return dedicatedScheduler("outbox-relay-");
+    }
+
+    @Bean(MESSAGE_ARCHIVE_SCHEDULER)
+    public ThreadPoolTaskScheduler messageArchiveScheduler() {
+        return dedicatedScheduler("message-archive-");
+    }
+
+    private static ThreadPoolTaskScheduler dedicatedScheduler(String threadNamePrefix) {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(1);
+        scheduler.setThreadNamePrefix(threadNamePrefix);
+        // Al parar, el ciclo en curso termina; no se lanzan los pendientes
+        scheduler.setWaitForTasksToCompleteOnShutdown(true);
+        scheduler.setAwaitTerminationSeconds(30);
+        return scheduler;
+    }
+}
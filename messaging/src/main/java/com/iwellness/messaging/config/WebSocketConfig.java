@@ -1,23 +1,37 @@
 package com.iwellness.messaging.config;
 
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.messaging.simp.stomp.StompReactorNettyCodec;
+import org.springframework.messaging.tcp.reactor.ReactorNettyTcpClient;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 
 import com.iwellness.messaging.interceptor.JwtHandshakeInterceptor;
+import com.iwellness.messaging.interceptor.UserIdHandshakeHandler;
 
+import io.netty.channel.ChannelOption;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
     private final JwtHandshakeInterceptor jwtHandshakeInterceptor;
+    private final UserIdHandshakeHandler userIdHandshakeHandler;
     private final AppProperties appProperties;
 
     // Inyecta el bean de propiedades a través del constructor
-    public WebSocketConfig(JwtHandshakeInterceptor jwtHandshakeInterceptor, AppProperties appProperties) {
+    public WebSocketConfig(JwtHandshakeInterceptor jwtHandshakeInterceptor, UserIdHandshakeHandler userIdHandshakeHandler,
+                           AppProperties appProperties) {
         this.jwtHandshakeInterceptor = jwtHandshakeInterceptor;
+        this.userIdHandshakeHandler = userIdHandshakeHandler;
         this.appProperties = appProperties;
     }
 
@@ -25,11 +39,49 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     public void configureMessageBroker(@org.springframework.lang.NonNull MessageBrokerRegistry config) {
         AppProperties.Websocket websocketProps = appProperties.getWebsocket();
         
-        config.enableSimpleBroker(websocketProps.getTopicPrefix(), "/queue");
+        if (websocketProps.getBroker().getMode() == AppProperties.BrokerMode.RELAY) {
+            configureBrokerRelay(config, websocketProps);
+        } else {
+            config.enableSimpleBroker(websocketProps.getTopicPrefix(), "/queue");
+        }
         config.setApplicationDestinationPrefixes(websocketProps.getAppPrefix());
+        config.setPreservePublishOrder(websocketProps.getOutbound().isPreserveOrder());
         config.setUserDestinationPrefix("/user");
     }
 
+    /**
+     * Reenvía los destinos de broker a RabbitMQ (plugin STOMP) para que todas las réplicas
+     * compartan las suscripciones. Los destinos /user se resuelven entre nodos difundiendo
+     * el registro de usuarios y los mensajes sin sesión local por topics del propio broker.
+     */
+    private void configureBrokerRelay(MessageBrokerRegistry config, AppProperties.Websocket websocketProps) {
+        AppProperties.Broker broker = websocketProps.getBroker();
+        log.info("Usando broker STOMP externo en {}:{}", broker.getRelayHost(), broker.getRelayPort());
+
+        int connectTimeoutMillis = (int) broker.getConnectTimeout().toMillis();
+        ReactorNettyTcpClient<byte[]> tcpClient = new ReactorNettyTcpClient<>(client -> client
+                .host(broker.getRelayHost())
+                .port(broker.getRelayPort())
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMillis)
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .option(ChannelOption.TCP_NODELAY, true),
+                new StompReactorNettyCodec());
+
+        config.enableStompBrokerRelay(websocketProps.getTopicPrefix(), "/queue")
+                .setTcpClient(tcpClient)
+                .setRelayHost(broker.getRelayHost())
+                .setRelayPort(broker.getRelayPort())
+                .setVirtualHost(broker.getVirtualHost())
+                .setClientLogin(broker.getClientLogin())
+                .setClientPasscode(broker.getClientPasscode())
+                .setSystemLogin(broker.getSystemLogin())
+                .setSystemPasscode(broker.getSystemPasscode())
+                .setSystemHeartbeatSendInterval(broker.getSystemHeartbeatSendInterval().toMillis())
+                .setSystemHeartbeatReceiveInterval(broker.getSystemHeartbeatReceiveInterval().toMillis())
+                .setUserDestinationBroadcast(websocketProps.getTopicPrefix() + "/unresolved-user-destination")
+                .setUserRegistryBroadcast(websocketProps.getTopicPrefix() + "/simp-user-registry");
+    }
+
     @Override
     public void registerStompEndpoints(@org.springframework.lang.NonNull StompEndpointRegistry registry) {
         AppProperties.Websocket websocketProps = appProperties.getWebsocket();
@@ -37,13 +89,66 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         // Convierte la lista a un array para el método setAllowedOrigins
         String[] allowedOrigins = websocketProps.getAllowedOrigins().toArray(new String[0]);
 
+        // Los mensajes de una misma sesión se procesan en orden aunque el pool tenga varios hilos
+        registry.setPreserveReceiveOrder(websocketProps.getInbound().isPreserveOrder());
+
+        // El Principal de cada sesión es el ID de usuario del token (destinos /user/... y presencia)
         registry.addEndpoint(websocketProps.getEndpoint())
                 .setAllowedOrigins(allowedOrigins)
+                .setHandshakeHandler(userIdHandshakeHandler)
                 .addInterceptors(jwtHandshakeInterceptor)
                 .withSockJS();
         
         registry.addEndpoint(websocketProps.getEndpoint())
                 .setAllowedOrigins(allowedOrigins)
+                .setHandshakeHandler(userIdHandshakeHandler)
                 .addInterceptors(jwtHandshakeInterceptor);
     }
+
+    @Override
+    public void configureClientInboundChannel(@org.springframework.lang.NonNull ChannelRegistration registration) {
+        registration.taskExecutor(channelExecutor(appProperties.getWebsocket().getInbound(), "ws-inbound-"));
+    }
+
+    @Override
+    public void configureClientOutboundChannel(@org.springframework.lang.NonNull ChannelRegistration registration) {
+        registration.taskExecutor(channelExecutor(appProperties.getWebsocket().getOutbound(), "ws-outbound-"));
+    }
+
+    @Override
+    public void configureWebSocketTransport(@org.springframework.lang.NonNull WebSocketTransportRegistration registration) {
+        AppProperties.Transport transport = appProperties.getWebsocket().getTransport();
+        registration.setSendTimeLimit((int) transport.getSendTimeLimit().toMillis())
+                .setSendBufferSizeLimit((int) transport.getSendBufferSizeLimit().toBytes())
+                .setMessageSizeLimit((int) transport.getMessageSizeLimit().toBytes())
+                .setTimeToFirstMessage((int) transport.getTimeToFirstMessage().toMillis());
+    }
+
+    /**
+     * Pool acotado para un canal STOMP. En modo VIRTUAL cada hilo del pool es virtual, de modo que
+     * los handlers bloqueantes (JPA, Feign) no retienen hilos de plataforma; si el runtime no
+     * soporta hilos virtuales se usa el pool clásico. Las métricas executor.* (queued, active...)
+     * se publican con el nombre del bean (clientInboundChannelExecutor / clientOutboundChannelExecutor).
+     */
+    private ThreadPoolTaskExecutor channelExecutor(AppProperties.ChannelExecutor props, String threadNamePrefix) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix(threadNamePrefix);
+        executor.setCorePoolSize(props.getCorePoolSize());
+        executor.setMaxPoolSize(Math.max(props.getCorePoolSize(), props.getMaxPoolSize()));
+        executor.setQueueCapacity(props.getQueueCapacity());
+        executor.setKeepAliveSeconds((int) props.getKeepAlive().toSeconds());
+        executor.setAllowCoreThreadTimeOut(true);
+
+        if (props.getThreadMode() == AppProperties.ThreadMode.VIRTUAL) {
+            try {
+                executor.setThreadFactory(new VirtualThreadTaskExecutor(threadNamePrefix).getVirtualThreadFactory());
+                // Los hilos virtuales son baratos: se usa todo el máximo antes de encolar
+                executor.setCorePoolSize(Math.max(props.getCorePoolSize(), props.getMaxPoolSize()));
+            } catch (UnsupportedOperationException e) {
+                log.warn("Hilos virtuales no disponibles en Java {}; {} usará hilos de plataforma",
+                        Runtime.version().feature(), threadNamePrefix);
+            }
+        }
+        return executor;
+    }
 }
@@ -1,16 +1,25 @@
 package com.iwellness.messaging.controller;
 
 import java.security.Principal;
+import java.util.List;
 
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
 
+import com.iwellness.messaging.config.AppProperties;
 import com.iwellness.messaging.dto.ChatMessageDTO;
+import com.iwellness.messaging.dto.DeliveryReceiptDTO;
+import com.iwellness.messaging.dto.MessageAckDTO;
+import com.iwellness.messaging.dto.ReadReceiptDTO;
+import com.iwellness.messaging.service.MessageWriteBehindService;
 import com.iwellness.messaging.service.MessagingService;
+import com.iwellness.messaging.service.ReadReceiptAggregator;
+import com.iwellness.messaging.service.TypingIndicatorService;
+import com.iwellness.messaging.service.UserMessageRouter;
 
+import jakarta.validation.ConstraintViolationException;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
@@ -18,51 +27,140 @@ import lombok.extern.slf4j.Slf4j;
 public class ChatController {
 
     private final MessagingService messagingService;
-    private final SimpMessagingTemplate messagingTemplate;
+    private final MessageWriteBehindService writeBehindService;
+    private final UserMessageRouter userMessageRouter;
+    private final TypingIndicatorService typingIndicatorService;
+    private final ReadReceiptAggregator readReceiptAggregator;
+    private final AppProperties appProperties;
 
-    public ChatController(MessagingService messagingService, SimpMessagingTemplate messagingTemplate) {
+    public ChatController(MessagingService messagingService, MessageWriteBehindService writeBehindService,
+                          UserMessageRouter userMessageRouter, TypingIndicatorService typingIndicatorService,
+                          ReadReceiptAggregator readReceiptAggregator, AppProperties appProperties) {
         this.messagingService = messagingService;
-        this.messagingTemplate = messagingTemplate;
+        this.writeBehindService = writeBehindService;
+        this.userMessageRouter = userMessageRouter;
+        this.typingIndicatorService = typingIndicatorService;
+        this.readReceiptAggregator = readReceiptAggregator;
+        this.appProperties = appProperties;
     }
 
     /**
      * Maneja el envío de mensajes a través de WebSocket
      * Endpoint: /app/chat.send
+     * El remitente recibe en /user/queue/acks el resultado del envío (MessageAckDTO) con el
+     * correlationId que haya puesto en el mensaje.
      */ 
     @MessageMapping("/chat.send")
     public void sendMessage(@Payload ChatMessageDTO messageDTO, 
                            SimpMessageHeaderAccessor headerAccessor,
                            Principal principal) {
+        // Obtener userId de los atributos de sesión WebSocket
+        Long senderId = (Long) headerAccessor.getSessionAttributes().get("userId");
+        if (senderId == null) {
+            // Solo con app.jwt.require-user-id=false: la sesión no tiene destino /user/{id}
+            log.warn("Mensaje rechazado: la sesión no tiene ID de usuario verificado");
+            userMessageRouter.sendToSession(headerAccessor.getSessionId(), "/queue/acks",
+                    MessageAckDTO.builder()
+                            .status("REJECTED")
+                            .correlationId(messageDTO.getCorrelationId())
+                            .build());
+            return;
+        }
         try {
-            // Obtener userId de los atributos de sesión WebSocket
-            Long senderId = (Long) headerAccessor.getSessionAttributes().get("userId");
+            // El remitente es siempre el de la sesión, nunca el que declara el cliente
+            messageDTO.setSenderId(senderId);
+            validate(messageDTO);
             
             log.info("Mensaje recibido de usuario {} para usuario {}", senderId, messageDTO.getReceiverId());
 
+            // El mensaje sustituye al indicador de escritura pendiente
+            typingIndicatorService.clear(senderId, messageDTO.getReceiverId());
+
+            // Ingesta asíncrona: se entrega ya y se confirma al remitente cuando quede persistido
+            if (writeBehindService.isEnabled()) {
+                sendWriteBehind(messageDTO, senderId);
+                return;
+            }
+
             // Guardar mensaje en la base de datos
             ChatMessageDTO savedMessage = messagingService.sendMessage(messageDTO);
 
             // Enviar mensaje al destinatario en tiempo real
-            messagingTemplate.convertAndSendToUser(
+            userMessageRouter.sendToUser(
                 messageDTO.getReceiverId().toString(),
                 "/queue/messages",
                 savedMessage
             );
 
             // Confirmar al remitente
-            messagingTemplate.convertAndSendToUser(
+            userMessageRouter.sendToUser(
                 senderId.toString(),
                 "/queue/messages",
                 savedMessage
             );
+            sendAck(senderId, messageDTO, savedMessage, "PERSISTED");
 
             log.info("Mensaje {} enviado exitosamente", savedMessage.getId());
 
+        } catch (IllegalArgumentException | ConstraintViolationException e) {
+            // Datos no válidos: reintentar el mismo mensaje no sirve de nada
+            log.warn("Mensaje de usuario {} rechazado: {}", senderId, e.getMessage());
+            sendAck(senderId, messageDTO, null, "REJECTED");
         } catch (Exception e) {
             log.error("Error al procesar mensaje: {}", e.getMessage(), e);
+            sendAck(senderId, messageDTO, null, "FAILED");
         }
     } 
 
+    private void sendWriteBehind(ChatMessageDTO messageDTO, Long senderId) {
+        MessageWriteBehindService.IngestedMessage ingested = writeBehindService.ingest(messageDTO);
+        ChatMessageDTO message = ingested.message();
+        if (!ingested.accepted()) {
+            // Cola llena: el remitente debe saber que el mensaje se descartó
+            log.warn("Mensaje {} de usuario {} rechazado: cola de ingesta llena", message.getId(), senderId);
+            sendAck(senderId, messageDTO, message, "REJECTED");
+            return;
+        }
+
+        // El remitente lo ve ya; el destinatario solo cuando el mensaje existe en la base de datos
+        userMessageRouter.sendToUser(senderId.toString(), "/queue/messages", message);
+
+        ingested.persisted().whenComplete((ignored, error) -> {
+            if (error != null) {
+                log.error("Mensaje {} no pudo persistirse: {}", message.getId(), error.getMessage());
+            } else {
+                userMessageRouter.sendToUser(message.getReceiverId().toString(), "/queue/messages", message);
+            }
+            sendAck(senderId, messageDTO, message, error == null ? "PERSISTED" : "FAILED");
+        });
+        log.info("Mensaje {} aceptado para persistencia diferida", message.getId());
+    }
+
+    private static void validate(ChatMessageDTO messageDTO) {
+        if (messageDTO.getReceiverId() == null) {
+            throw new IllegalArgumentException("El ID del destinatario es obligatorio");
+        }
+        if (messageDTO.getContent() == null || messageDTO.getContent().isBlank()) {
+            throw new IllegalArgumentException("El contenido del mensaje es obligatorio");
+        }
+    }
+
+    /**
+     * Envía al remitente el resultado de un envío. message es nulo si el mensaje no llegó a tener ID.
+     */
+    private void sendAck(Long senderId, ChatMessageDTO request, ChatMessageDTO message, String status) {
+        userMessageRouter.sendToUser(
+            senderId.toString(),
+            "/queue/acks",
+            MessageAckDTO.builder()
+                    .messageId(message != null ? message.getId() : null)
+                    .conversationId(message != null ? message.getConversationId() : null)
+                    .status(status)
+                    .correlationId(request.getCorrelationId())
+                    .build()
+        );
+    }
+
     /**
      * Marca un mensaje como leído
      * Endpoint: /app/chat.read
@@ -74,21 +172,76 @@ public class ChatController {
             
             log.info("Usuario {} marcando mensaje {} como leído", userId, messageId);
             
-            messagingService.markMessageAsRead(messageId, userId);
-            
-            // Notificar al remitente que su mensaje fue leído
-            ChatMessageDTO message = messagingService.getMessageById(messageId);
-            messagingTemplate.convertAndSendToUser(
-                message.getSenderId().toString(),
-                "/queue/read-receipts",
-                messageId
-            );
+            // La confirmación ya trae el remitente: no hace falta volver a leer el mensaje
+            ReadReceiptDTO receipt = messagingService.markMessageAsRead(messageId, userId);
+
+            // Solo si esta llamada cambió el mensaje; se agrupa con las demás lecturas del intervalo
+            if (receipt.getCount() > 0) {
+                readReceiptAggregator.add(receipt);
+            }
 
         } catch (Exception e) {
             log.error("Error al marcar mensaje como leído: {}", e.getMessage(), e);
         }
     } 
 
+    /**
+     * Marca como leída una conversación hasta un mensaje (marca de agua)
+     * y envía al remitente una única confirmación agregada.
+     * Endpoint: /app/chat.read-up-to
+     */
+    @MessageMapping("/chat.read-up-to")
+    public void markAsReadUpTo(@Payload ReadUpToRequest request, SimpMessageHeaderAccessor headerAccessor) {
+        try {
+            Long userId = (Long) headerAccessor.getSessionAttributes().get("userId");
+
+            log.info("Usuario {} marcando conversación {} como leída hasta el mensaje {}",
+                    userId, request.getConversationId(), request.getUpToMessageId());
+
+            ReadReceiptDTO receipt = messagingService.markConversationReadUpTo(
+                    request.getConversationId(), userId, request.getUpToMessageId());
+
+            if (receipt.getCount() > 0) {
+                readReceiptAggregator.add(receipt);
+            }
+
+        } catch (Exception e) {
+            log.error("Error al marcar conversación como leída: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Confirma la entrega en el dispositivo del destinatario de exactamente los mensajes recibidos
+     * y notifica a cada remitente con la lista de IDs entregados.
+     * Endpoint: /app/chat.delivered
+     */
+    @MessageMapping("/chat.delivered")
+    public void markAsDelivered(@Payload DeliveredRequest request, SimpMessageHeaderAccessor headerAccessor) {
+        try {
+            Long userId = (Long) headerAccessor.getSessionAttributes().get("userId");
+
+            List<Long> messageIds = request.getMessageIds();
+            if (messageIds == null || messageIds.isEmpty()) {
+                return;
+            }
+            if (messageIds.size() > appProperties.getMessaging().getPagination().getMaxSize()) {
+                log.warn("Usuario {} confirmó {} mensajes en una sola entrega; se ignora", userId, messageIds.size());
+                return;
+            }
+
+            for (DeliveryReceiptDTO receipt : messagingService.acknowledgeDelivered(userId, messageIds)) {
+                userMessageRouter.sendToUser(
+                    receipt.getSenderId().toString(),
+                    "/queue/delivery-receipts",
+                    receipt
+                );
+            }
+
+        } catch (Exception e) {
+            log.error("Error al confirmar entrega: {}", e.getMessage(), e);
+        }
+    }
+
     /**
      * Notifica que un usuario está escribiendo
      * Endpoint: /app/chat.typing
@@ -100,16 +253,47 @@ public class ChatController {
             String username = (String) headerAccessor.getSessionAttributes().get("username");
             
             log.debug("Usuario {} está escribiendo para {}", username, receiverId);
-            
-            // Notificar al destinatario
-            messagingTemplate.convertAndSendToUser(
-                receiverId.toString(),
-                "/queue/typing",
-                username
-            );
+
+            // Se reenvía como máximo un aviso por intervalo; el fin de escritura se notifica por timeout
+            typingIndicatorService.onTyping(senderId, username, receiverId);
 
         } catch (Exception e) {
             log.error("Error al notificar typing: {}", e.getMessage());
         }
     }
+
+    // Clase interna para el payload de /app/chat.delivered
+    public static class DeliveredRequest {
+        private List<Long> messageIds;
+
+        public List<Long> getMessageIds() {
+            return messageIds;
+        }
+
+        public void setMessageIds(List<Long> messageIds) {
+            this.messageIds = messageIds;
+        }
+    }
+
+    // Clase interna para el payload de /app/chat.read-up-to
+    public static class ReadUpToRequest {
+        private Long conversationId;
+        private Long upToMessageId;
+
+        public Long getConversationId() {
+            return conversationId;
+        }
+
+        public void setConversationId(Long conversationId) {
+            this.conversationId = conversationId;
+        }
+
+        public Long getUpToMessageId() {
+            return upToMessageId;
+        }
+
+        public void setUpToMessageId(Long upToMessageId) {
+            this.upToMessageId = upToMessageId;
+        }
+    }
 }  
@@ -2,24 +2,40 @@ package com.iwellness.messaging.controller;
 
 import java.util.List;
 
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import com.iwellness.messaging.clientes.UserApiClient;
+import com.iwellness.messaging.config.AppProperties;
 import com.iwellness.messaging.dto.ChatMessageDTO;
 import com.iwellness.messaging.dto.ConversationDetailDTO;
 import com.iwellness.messaging.dto.ConversationSummaryDTO;
+import com.iwellness.messaging.dto.DeliveryReceiptDTO;
+import com.iwellness.messaging.dto.MessageSearchResultDTO;
+import com.iwellness.messaging.dto.PendingDeliveriesDTO;
+import com.iwellness.messaging.dto.ReadReceiptDTO;
+import com.iwellness.messaging.dto.SyncDTO;
 import com.iwellness.messaging.dto.UsuarioDTO;
+import com.iwellness.messaging.service.ConversationExportService;
+import com.iwellness.messaging.service.DeltaSyncService;
+import com.iwellness.messaging.service.MessageSearchService;
 import com.iwellness.messaging.service.MessagingService;
+import com.iwellness.messaging.service.ReadReceiptAggregator;
+import com.iwellness.messaging.service.UserMessageRouter;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -29,14 +45,27 @@ import lombok.extern.slf4j.Slf4j;
 public class ConversationController {
 
     private final MessagingService messagingService;
-    private final SimpMessagingTemplate messagingTemplate;
+    private final UserMessageRouter userMessageRouter;
     private final UserApiClient userApiClient;
+    private final ReadReceiptAggregator readReceiptAggregator;
+    private final MessageSearchService messageSearchService;
+    private final ConversationExportService conversationExportService;
+    private final DeltaSyncService deltaSyncService;
+    private final AppProperties appProperties;
 
-    public ConversationController(MessagingService messagingService, SimpMessagingTemplate messagingTemplate, UserApiClient userApiClient) {
+    public ConversationController(MessagingService messagingService, UserMessageRouter userMessageRouter, UserApiClient userApiClient,
+                                  ReadReceiptAggregator readReceiptAggregator, MessageSearchService messageSearchService,
+                                  ConversationExportService conversationExportService, DeltaSyncService deltaSyncService,
+                                  AppProperties appProperties) {
 
         this.messagingService = messagingService;
-        this.messagingTemplate = messagingTemplate;
+        this.userMessageRouter = userMessageRouter;
         this.userApiClient = userApiClient;
+        this.readReceiptAggregator = readReceiptAggregator;
+        this.messageSearchService = messageSearchService;
+        this.conversationExportService = conversationExportService;
+        this.deltaSyncService = deltaSyncService;
+        this.appProperties = appProperties;
     }
 
     /**
@@ -65,7 +94,7 @@ public class ConversationController {
         // Envía el mensaje guardado a la cola privada del destinatario.
         // El cliente (frontend) debe estar suscrito a /user/queue/messages.
         log.debug("Broadcasting message {} to user {}", savedMessage.getId(), savedMessage.getReceiverId());
-        messagingTemplate.convertAndSendToUser(
+        userMessageRouter.sendToUser(
                             String.valueOf(savedMessage.getReceiverId()), // El ID del usuario destinatario
                 "/queue/messages",                             // El destino privado
                 savedMessage                                   // El objeto a enviar
@@ -97,22 +126,207 @@ public class ConversationController {
     }
 
     /**
-     * Obtiene el detalle completo de una conversación específica.
+     * Obtiene el detalle de una conversación con una página de su historial,
+     * del mensaje más reciente al más antiguo.
      *
      * @param conversationId El ID de la conversación a obtener.
+     * @param before Cursor opcional: ID del mensaje a partir del cual traer mensajes anteriores.
+     * @param after Cursor opcional: ID del mensaje a partir del cual traer mensajes nuevos.
+     * @param size Tamaño de página opcional (por defecto app.messaging.pagination.default-size).
      * @param authenticatedUserId El ID del usuario autenticado, para validar permisos.
-     * @return El detalle completo de la conversación.
+     * @return El detalle de la conversación con la página solicitada.
      */
     @GetMapping("/conversations/{conversationId}")
     public ResponseEntity<ConversationDetailDTO> getConversationDetails(
             @PathVariable Long conversationId,
+            @RequestParam(required = false) Long before,
+            @RequestParam(required = false) Long after,
+            @RequestParam(required = false) Integer size,
             @RequestHeader("X-User-Id") Long authenticatedUserId) {
         log.info("Request received for conversation details for ID: {}", conversationId);
+
+        if (before != null && after != null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Use either 'before' or 'after', not both.");
+        }
+
         // La validación de seguridad ya está dentro del service, pero se podría duplicar aquí por claridad.
-        ConversationDetailDTO details = messagingService.getConversationDetails(conversationId, authenticatedUserId);
+        ConversationDetailDTO details = messagingService.getConversationDetails(
+                conversationId, authenticatedUserId, before, after, size);
         return ResponseEntity.ok(details);
     }
 
+    /**
+     * Exporta el historial completo de una conversación, del mensaje más antiguo al más reciente.
+     * La respuesta se escribe a medida que se leen los mensajes, sin cargar el historial en memoria.
+     *
+     * @param conversationId El ID de la conversación a exportar.
+     * @param format Formato de salida: ndjson (por defecto) o csv.
+     * @param authenticatedUserId El ID del usuario autenticado, que debe ser participante.
+     * @return El fichero de exportación como adjunto.
+     */
+    @GetMapping("/conversations/{conversationId}/export")
+    public ResponseEntity<StreamingResponseBody> exportConversation(
+            @PathVariable Long conversationId,
+            @RequestParam(defaultValue = "ndjson") String format,
+            @RequestHeader("X-User-Id") Long authenticatedUserId) {
+
+        ConversationExportService.Format exportFormat = ConversationExportService.Format.from(format);
+        if (exportFormat == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unsupported export format: " + format);
+        }
+
+        StreamingResponseBody body;
+        try {
+            body = conversationExportService.export(conversationId, authenticatedUserId, exportFormat);
+        } catch (SecurityException e) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, e.getMessage());
+        }
+        String filename = "conversation-" + conversationId + "." + exportFormat.getExtension();
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(exportFormat.getMediaType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(filename).build().toString())
+                .body(body);
+    }
+
+    /**
+     * Marca como leídos todos los mensajes de la conversación dirigidos al usuario
+     * hasta un mensaje dado, y notifica al remitente con una única confirmación agregada.
+     *
+     * @param conversationId El ID de la conversación.
+     * @param upTo ID del último mensaje leído (inclusive); si se omite, se marcan todos.
+     * @param authenticatedUserId El ID del usuario autenticado (el lector).
+     * @return La confirmación con el rango de mensajes afectados.
+     */
+    @PostMapping("/conversations/{conversationId}/read")
+    public ResponseEntity<ReadReceiptDTO> markConversationRead(
+            @PathVariable Long conversationId,
+            @RequestParam(required = false) Long upTo,
+            @RequestHeader("X-User-Id") Long authenticatedUserId) {
+        log.info("Request to mark conversation {} as read up to {} by user {}", conversationId, upTo, authenticatedUserId);
+
+        ReadReceiptDTO receipt;
+        try {
+            receipt = messagingService.markConversationReadUpTo(conversationId, authenticatedUserId, upTo);
+        } catch (SecurityException e) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, e.getMessage());
+        }
+
+        // La confirmación al remitente se agrupa con las demás del intervalo
+        if (receipt.getCount() > 0) {
+            readReceiptAggregator.add(receipt);
+        }
+        return ResponseEntity.ok(receipt);
+    }
+
+    /**
+     * Sincronización tras una reconexión: confirma como entregados los mensajes que el cliente
+     * recibió en la página anterior (ack) y devuelve la siguiente página de mensajes pendientes
+     * de entrega, en lugar de volver a descargar el detalle completo de cada conversación.
+     * Al confirmar cada página, el cliente puede omitir since: lo confirmado deja de estar pendiente.
+     *
+     * @param userId El ID del usuario que sincroniza.
+     * @param ack IDs de los mensajes recibidos en la página anterior (como máximo app.messaging.pagination.max-size).
+     * @param since Cursor de paginación opcional (nextCursor de la página anterior); ya no confirma nada.
+     * @param size Tamaño de página opcional (por defecto app.messaging.pagination.default-size).
+     * @param authenticatedUserId El ID del usuario autenticado.
+     * @return La página de mensajes pendientes de entrega.
+     * @deprecated Usar GET /users/{userId}/sync para recuperar los cambios y /app/chat.delivered
+     * para confirmar la entrega por conversación. Se mantiene para clientes antiguos.
+     */
+    @Deprecated
+    @PostMapping("/users/{userId}/messages/sync")
+    public ResponseEntity<PendingDeliveriesDTO> syncPendingDeliveries(
+            @PathVariable Long userId,
+            @RequestParam(required = false) List<Long> ack,
+            @RequestParam(required = false) Long since,
+            @RequestParam(required = false) Integer size,
+            @RequestHeader("X-User-Id") Long authenticatedUserId) {
+
+        // --- CAPA DE SEGURIDAD ---
+        if (!userId.equals(authenticatedUserId)) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "You are not authorized to access these resources.");
+        }
+
+        if (ack != null && !ack.isEmpty()) {
+            if (ack.size() > appProperties.getMessaging().getPagination().getMaxSize()) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Too many message ids to acknowledge.");
+            }
+            for (DeliveryReceiptDTO receipt : messagingService.acknowledgeDelivered(userId, ack)) {
+                userMessageRouter.sendToUser(
+                        String.valueOf(receipt.getSenderId()),
+                        "/queue/delivery-receipts",
+                        receipt
+                );
+            }
+        }
+        return ResponseEntity.ok()
+                .header("Deprecation", "true")
+                .header(HttpHeaders.LINK, "</api/users/" + userId + "/sync>; rel=\"successor-version\"")
+                .body(messagingService.getPendingDeliveries(userId, since, size));
+    }
+
+    /**
+     * Sincronización incremental tras una reconexión: devuelve solo los mensajes nuevos, las
+     * lecturas, las entregas y las conversaciones que cambiaron desde el cursor, en lugar de
+     * volver a descargar la bandeja y cada conversación abierta.
+     *
+     * @param userId El ID del usuario que sincroniza.
+     * @param since Cursor devuelto por la sincronización anterior; si se omite, se pide una recarga completa.
+     * @param size Número máximo de cambios opcional (por defecto app.messaging.sync.max-changes).
+     * @param authenticatedUserId El ID del usuario autenticado.
+     * @return Los cambios y el nuevo cursor.
+     */
+    @GetMapping("/users/{userId}/sync")
+    public ResponseEntity<SyncDTO> sync(
+            @PathVariable Long userId,
+            @RequestParam(required = false) Long since,
+            @RequestParam(required = false) Integer size,
+            @RequestHeader("X-User-Id") Long authenticatedUserId) {
+
+        // --- CAPA DE SEGURIDAD ---
+        if (!userId.equals(authenticatedUserId)) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "You are not authorized to access these resources.");
+        }
+
+        return ResponseEntity.ok(deltaSyncService.sync(userId, since, size));
+    }
+
+    /**
+     * Endpoint REST para buscar texto en los mensajes enviados o recibidos por el usuario.
+     * Devuelve los resultados del más reciente al más antiguo, con un fragmento resaltado.
+     *
+     * @param userId El ID del usuario cuyos mensajes se buscan.
+     * @param q El texto a buscar.
+     * @param before Cursor opcional: ID del último resultado de la página anterior.
+     * @param size Tamaño de página (por defecto y máximo según la configuración de paginación).
+     * @param authenticatedUserId El ID del usuario autenticado.
+     * @return La página de resultados.
+     */
+    @GetMapping("/users/{userId}/messages/search")
+    public ResponseEntity<MessageSearchResultDTO> searchMessages(
+            @PathVariable Long userId,
+            @RequestParam String q,
+            @RequestParam(required = false) Long before,
+            @RequestParam(required = false) Integer size,
+            @RequestHeader("X-User-Id") Long authenticatedUserId) {
+
+        // --- CAPA DE SEGURIDAD ---
+        if (!userId.equals(authenticatedUserId)) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "You are not authorized to access these resources.");
+        }
+
+        String query = q.strip();
+        if (query.isEmpty() || query.length() > appProperties.getMessaging().getSearch().getMaxQueryLength()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The search query is empty or too long.");
+        }
+        try {
+            return ResponseEntity.ok(messageSearchService.search(userId, query, before, size));
+        } catch (QueryTimeoutException e) {
+            log.warn("Search by user {} timed out", userId);
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "The search took too long; try a more specific query.");
+        }
+    }
+
         /**
      * Obtiene la lista de contactos con los que un usuario puede hablar.
      * Delega la llamada al microservicio de usuarios a través de Feign.
@@ -0,0 +1,65 @@
+package com.iwellness.messaging.controller;
+
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.iwellness.messaging.config.AppProperties;
+import com.iwellness.messaging.dto.PresenceDTO;
+import com.iwellness.messaging.service.MessagingService;
+import com.iwellness.messaging.service.PresenceRegistry;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+@RestController
+@RequestMapping("/api/presence")
+public class PresenceController {
+
+    private final PresenceRegistry presenceRegistry;
+    private final MessagingService messagingService;
+    private final AppProperties appProperties;
+
+    public PresenceController(PresenceRegistry presenceRegistry, MessagingService messagingService,
+                              AppProperties appProperties) {
+        this.presenceRegistry = presenceRegistry;
+        this.messagingService = messagingService;
+        this.appProperties = appProperties;
+    }
+
+    /**
+     * Endpoint REST para consultar el estado de conexión de varios usuarios.
+     * Solo se informa de los interlocutores del usuario (usuarios con los que tiene una
+     * conversación) y de él mismo; el estado sale del registro en memoria del nodo.
+     *
+     * @param userIds Los IDs de usuario (como máximo app.messaging.pagination.max-size).
+     * @param authenticatedUserId El ID del usuario que consulta.
+     * @return Un estado por ID visible, en el orden pedido; los demás IDs se omiten.
+     */
+    @GetMapping
+    public ResponseEntity<List<PresenceDTO>> getPresence(
+            @RequestParam List<Long> userIds,
+            @RequestHeader("X-User-Id") Long authenticatedUserId) {
+
+        int maxSize = appProperties.getMessaging().getPagination().getMaxSize();
+        if (userIds.size() > maxSize) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "At most " + maxSize + " user ids per request.");
+        }
+        log.debug("REST request from user {} for presence of {} users", authenticatedUserId, userIds.size());
+
+        // --- CAPA DE SEGURIDAD ---
+        Set<Long> partners = messagingService.findConversationPartners(authenticatedUserId, userIds);
+        List<Long> visible = userIds.stream()
+                .filter(userId -> userId.equals(authenticatedUserId) || partners.contains(userId))
+                .toList();
+        return ResponseEntity.ok(presenceRegistry.getPresence(visible));
+    }
+}
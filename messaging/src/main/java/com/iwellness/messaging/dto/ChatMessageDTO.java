@@ -1,5 +1,7 @@
 package com.iwellness.messaging.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -19,5 +21,10 @@ public class ChatMessageDTO {
     private String content;
     private Boolean isRead;
     private LocalDateTime readAt;
+    private LocalDateTime deliveredAt;
     private LocalDateTime sentAt;
+    // Identificador opcional que el cliente asigna al enviar por /app/chat.send; se devuelve en
+    // cada MessageAckDTO. No se guarda ni se reenvía al destinatario.
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String correlationId;
 }
@@ -0,0 +1,24 @@
+package com.iwellness.messaging.dto;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Entrega a un destino de usuario reenviada por AMQP al nodo que tiene su sesión.
+ * payload es el cuerpo ya serializado a JSON; sentAt (epoch ms) se usa para medir la latencia.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ClusterDeliveryDTO {
+    private String originNodeId;
+    private String user;
+    private String destination;
+    private JsonNode payload;
+    private long sentAt;
+}
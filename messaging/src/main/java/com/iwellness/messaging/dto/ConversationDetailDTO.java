@@ -18,5 +18,11 @@ public class ConversationDetailDTO {
     private LocalDateTime updatedAt;
     private UsuarioDTO participant1;
     private UsuarioDTO participant2;
+    // Página del historial, del mensaje más reciente al más antiguo
     private List<ChatMessageDTO> messages;
+    // Cursores para pedir la página siguiente (before) o mensajes nuevos (after)
+    private Long olderCursor;
+    private Long newerCursor;
+    // Indica si existen más mensajes en la dirección solicitada
+    private boolean hasMore;
 }
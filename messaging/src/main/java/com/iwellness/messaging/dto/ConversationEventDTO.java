@@ -0,0 +1,24 @@
+package com.iwellness.messaging.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Evento ConversationCreated: se publica una sola vez, cuando se crea la conversación
+ * entre la pareja (por el primer mensaje o desde la lista de contactos).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ConversationEventDTO {
+    private Long conversationId;
+    private Long user1Id;
+    private Long user2Id;
+    private Long createdBy;
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,33 @@
+package com.iwellness.messaging.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Confirmación de entrega de una conversación: messageIds son exactamente los mensajes que el
+ * destinatario confirmó y que pasaron a entregados (en orden ascendente), y count su número.
+ * No es una marca de agua: los mensajes entre dos IDs de la lista no quedan confirmados.
+ * upToMessageId ya no se rellena (siempre nulo); se conserva por compatibilidad con los clientes.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class DeliveryReceiptDTO {
+    private Long conversationId;
+    private Long recipientId;
+    private Long senderId;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long upToMessageId;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<Long> messageIds;
+    private int count;
+    private LocalDateTime deliveredAt;
+}
@@ -0,0 +1,25 @@
+package com.iwellness.messaging.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Resultado de un envío por /app/chat.send, enviado al remitente en /user/queue/acks.
+ * status: PERSISTED cuando el mensaje ya está en la base de datos (y se entregó al destinatario),
+ * FAILED si no pudo guardarse por un error del servidor (el destinatario nunca lo recibió) y
+ * REJECTED si se descartó sin intentar guardarlo: datos no válidos o cola de ingesta llena.
+ * correlationId repite el del mensaje enviado, así que identifica el envío aunque no haya
+ * messageId (un REJECTED por validación no llega a tener ID ni conversación).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class MessageAckDTO {
+    private Long messageId;
+    private Long conversationId;
+    private String status;
+    private String correlationId;
+}
@@ -0,0 +1,19 @@
+package com.iwellness.messaging.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Mensaje encontrado por la búsqueda. highlight es un fragmento del contenido en HTML escapado,
+ * con los términos encontrados entre &lt;mark&gt; y &lt;/mark&gt;.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class MessageSearchHitDTO {
+    private ChatMessageDTO message;
+    private String highlight;
+}
@@ -0,0 +1,22 @@
+package com.iwellness.messaging.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Página de resultados de búsqueda, del mensaje más reciente al más antiguo. nextCursor es
+ * el ID del último resultado: se envía como before para obtener la página siguiente.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class MessageSearchResultDTO {
+    private List<MessageSearchHitDTO> hits;
+    private Long nextCursor;
+    private boolean hasMore;
+}
@@ -0,0 +1,23 @@
+package com.iwellness.messaging.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Página de mensajes pendientes de entrega para un usuario, en todas sus conversaciones,
+ * del más antiguo al más reciente. nextCursor es el ID del último mensaje de la página:
+ * se envía como since en la siguiente sincronización, que además lo confirma como entregado.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PendingDeliveriesDTO {
+    private List<ChatMessageDTO> messages;
+    private Long nextCursor;
+    private boolean hasMore;
+}
@@ -0,0 +1,23 @@
+package com.iwellness.messaging.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Estado de conexión de un usuario. sessions cuenta las sesiones en el nodo que responde;
+ * lastSeen es la última desconexión conocida (nulo si está conectado o no hay registro).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PresenceDTO {
+    private Long userId;
+    private boolean online;
+    private int sessions;
+    private LocalDateTime lastSeen;
+}
@@ -0,0 +1,24 @@
+package com.iwellness.messaging.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Anuncio de presencia de un nodo del clúster.
+ * type: HELLO (nodo nuevo, pide instantáneas), SNAPSHOT (lista completa de usuarios locales),
+ * ONLINE/OFFLINE (cambio de un usuario) o LEAVE (el nodo se detiene).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PresenceUpdateDTO {
+    private String nodeId;
+    private String type;
+    private List<String> users;
+    private long timestamp;
+}
@@ -0,0 +1,43 @@
+package com.iwellness.messaging.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Confirmación de lectura agregada: los mensajes de la conversación dirigidos al lector
+ * entre firstMessageId y lastMessageId quedaron leídos. Las que se envían al remitente por
+ * /queue/read-receipts agrupan todas las lecturas del intervalo de envío: ranges lista los
+ * rangos leídos, disjuntos y ordenados, y firstMessageId/lastMessageId son solo sus extremos
+ * (con más de un rango, los mensajes entre dos rangos no están confirmados). count es el
+ * total de mensajes.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ReadReceiptDTO {
+    private Long conversationId;
+    private Long readerId;
+    private Long senderId;
+    private Long firstMessageId;
+    private Long lastMessageId;
+    private int count;
+    private LocalDateTime readAt;
+    private List<Range> ranges;
+
+    /**
+     * Rango de IDs leídos, ambos extremos incluidos.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Range {
+        private Long first;
+        private Long last;
+    }
+}
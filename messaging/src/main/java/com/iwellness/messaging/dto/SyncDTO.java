@@ -0,0 +1,30 @@
+package com.iwellness.messaging.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Cambios de un usuario desde un cursor de sincronización. cursor se envía como since en la
+ * siguiente llamada; si hasMore, quedan más cambios por pedir de inmediato. Las confirmaciones
+ * de lectura son marcas de agua (lastMessageId es el último mensaje leído); las de entrega
+ * listan en messageIds los mensajes entregados.
+ * Con resetRequired el cursor no es válido (nulo o purgado): el cliente debe recargar la bandeja
+ * y las conversaciones abiertas y continuar desde el cursor devuelto.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SyncDTO {
+    private Long cursor;
+    private boolean hasMore;
+    private boolean resetRequired;
+    private List<ConversationSummaryDTO> conversations;
+    private List<ChatMessageDTO> messages;
+    private List<ReadReceiptDTO> readReceipts;
+    private List<DeliveryReceiptDTO> deliveryReceipts;
+}
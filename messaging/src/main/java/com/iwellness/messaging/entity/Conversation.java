@@ -4,6 +4,8 @@ import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.hibernate.annotations.ColumnDefault;
+
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -11,13 +13,25 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Entity
-@Table(name = "conversations")
+@Table(name = "conversations",
+        // La pareja se guarda ordenada (user1_id <= user2_id): una sola conversación por pareja
+        uniqueConstraints = @UniqueConstraint(name = "uk_conversations_user_pair", columnNames = {"user1_id", "user2_id"}),
+        indexes = {
+                // Bandeja de entrada por participante, ordenada por última actividad
+                @Index(name = "idx_conversations_user1_updated", columnList = "user1_id, updated_at"),
+                @Index(name = "idx_conversations_user2_updated", columnList = "user2_id, updated_at")
+        })
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
 public class Conversation {
 
+    /**
+     * Longitud máxima del avance del último mensaje guardado en la conversación
+     */
+    public static final int PREVIEW_LENGTH = 255;
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -34,6 +48,31 @@ public class Conversation {
     @Column(name = "updated_at")
     private LocalDateTime updatedAt;
 
+    // --- Modelo de lectura desnormalizado para la bandeja de entrada ---
+    // Se actualiza en la misma transacción que el envío/lectura de mensajes.
+
+    @Column(name = "last_message_id")
+    private Long lastMessageId;
+
+    @Column(name = "last_message_sender_id")
+    private Long lastMessageSenderId;
+
+    @Column(name = "last_message_preview", length = PREVIEW_LENGTH)
+    private String lastMessagePreview;
+
+    @Column(name = "last_message_at")
+    private LocalDateTime lastMessageAt;
+
+    @Column(name = "user1_unread_count", nullable = false)
+    @ColumnDefault("0")
+    @Builder.Default
+    private Integer user1UnreadCount = 0;
+
+    @Column(name = "user2_unread_count", nullable = false)
+    @ColumnDefault("0")
+    @Builder.Default
+    private Integer user2UnreadCount = 0;
+
     @OneToMany(mappedBy = "conversation", cascade = CascadeType.ALL, orphanRemoval = true)
     @Builder.Default
     private List<Message> messages = new ArrayList<>();
@@ -42,6 +81,15 @@ public class Conversation {
     protected void onCreate() {
         createdAt = LocalDateTime.now();
         updatedAt = LocalDateTime.now();
+        // Forma canónica de la pareja, requerida por la restricción única
+        if (user1Id != null && user2Id != null && user1Id > user2Id) {
+            Long firstId = user2Id;
+            user2Id = user1Id;
+            user1Id = firstId;
+            Integer firstUnread = user2UnreadCount;
+            user2UnreadCount = user1UnreadCount;
+            user1UnreadCount = firstUnread;
+        }
     }
 
     @PreUpdate
@@ -56,6 +104,23 @@ public class Conversation {
         return user1Id.equals(userId) || user2Id.equals(userId);
     }
 
+    /**
+     * Recorta el contenido de un mensaje al largo del avance guardado en la conversación
+     */
+    public static String toPreview(String content) {
+        if (content == null || content.length() <= PREVIEW_LENGTH) {
+            return content;
+        }
+        return content.substring(0, PREVIEW_LENGTH);
+    }
+
+    /**
+     * Obtiene el número de mensajes no leídos por un participante
+     */
+    public int getUnreadCountFor(Long userId) {
+        return user1Id.equals(userId) ? user1UnreadCount : user2UnreadCount;
+    }
+
     /**
      * Obtiene el ID del otro participante
      */
@@ -11,13 +11,23 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Entity
-@Table(name = "messages")
+@Table(name = "messages", indexes = {
+        // Historial por conversación (orden cronológico y paginación por keyset)
+        @Index(name = "idx_messages_conversation_sent_at", columnList = "conversation_id, sent_at"),
+        @Index(name = "idx_messages_conversation_id", columnList = "conversation_id, id"),
+        // Conteo de no leídos; en PostgreSQL (V3/V7) además es parcial: WHERE is_read = false
+        @Index(name = "idx_messages_unread", columnList = "conversation_id, receiver_id"),
+        // Entregas pendientes por destinatario; en PostgreSQL es parcial (WHERE delivered_at IS NULL)
+        @Index(name = "idx_messages_undelivered", columnList = "receiver_id, delivered_at, id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
 public class Message {
 
+    // En PostgreSQL la clave primaria es (id, sent_at) (V7): una búsqueda solo por ID (findById,
+    // markAsReadIfUnread, findAllById) no puede descartar particiones y consulta el índice de cada una
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -34,9 +44,11 @@ public class Message {
     @Column(name = "receiver_id", nullable = false)
     private Long receiverId;
 
+    // Los contenidos largos pueden guardarse comprimidos (app.messaging.compression)
     @NotNull(message = "El contenido del mensaje es obligatorio")
     @Size(max = 5000, message = "El mensaje no puede exceder 5000 caracteres")
     @Column(columnDefinition = "TEXT", nullable = false)
+    @Convert(converter = MessageContentConverter.class)
     private String content;
 
     @Column(name = "is_read", nullable = false)
@@ -46,6 +58,10 @@ public class Message {
     @Column(name = "read_at")
     private LocalDateTime readAt;
 
+    // Nulo mientras el dispositivo del destinatario no confirme la entrega
+    @Column(name = "delivered_at")
+    private LocalDateTime deliveredAt;
+
     @Column(name = "sent_at", nullable = false, updatable = false)
     private LocalDateTime sentAt;
 
@@ -0,0 +1,126 @@
+package com.iwellness.messaging.entity;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.iwellness.messaging.config.AppProperties;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+/**
+ * Compresión transparente del contenido de los mensajes largos.
+ * Con app.messaging.compression.enabled, los contenidos de al menos min-length caracteres se
+ * guardan comprimidos con Deflate y codificados en Base64 en la misma columna de texto, solo si
+ * el resultado ocupa menos que el original. El valor guardado empieza entonces por el carácter
+ * de control U+0001; los contenidos que ya empiecen por él se guardan escapados, así que la
+ * lectura nunca depende de la configuración y los mensajes antiguos se leen sin migrar.
+ * <p>
+ * Las consultas JDBC sobre la columna deben pasar por {@link #encode} y {@link #decode}.
+ */
+@Converter
+public class MessageContentConverter implements AttributeConverter<String, String> {
+
+    public static final char MARKER = '\u0001';
+    private static final char DEFLATED = 'D';
+    private static final char ESCAPED = 'R';
+
+    private final AppProperties.Compression compression;
+
+    public MessageContentConverter(AppProperties appProperties) {
+        this.compression = appProperties.getMessaging().getCompression();
+    }
+
+    @Override
+    public String convertToDatabaseColumn(String content) {
+        return encode(content, compression);
+    }
+
+    @Override
+    public String convertToEntityAttribute(String stored) {
+        return decode(stored);
+    }
+
+    /**
+     * @return true si el contenido se guarda codificado (comprimido o escapado) y, por tanto,
+     *         PostgreSQL no puede indexar la columna directamente.
+     */
+    public static boolean isEncoded(String stored) {
+        return stored != null && !stored.isEmpty() && stored.charAt(0) == MARKER;
+    }
+
+    /**
+     * Convierte el contenido a su forma almacenada.
+     */
+    public static String encode(String content, AppProperties.Compression compression) {
+        if (content == null) {
+            return null;
+        }
+        if (compression.isEnabled() && content.length() >= compression.getMinLength()) {
+            byte[] raw = content.getBytes(StandardCharsets.UTF_8);
+            String deflated = MARKER + String.valueOf(DEFLATED) + Base64.getEncoder().encodeToString(deflate(raw));
+            // Base64 es ASCII: su longitud es también su tamaño en bytes
+            if (deflated.length() < raw.length) {
+                return deflated;
+            }
+        }
+        return isEncoded(content) ? MARKER + String.valueOf(ESCAPED) + content : content;
+    }
+
+    /**
+     * Convierte un valor almacenado (codificado o no) al contenido original.
+     */
+    public static String decode(String stored) {
+        if (!isEncoded(stored)) {
+            return stored;
+        }
+        if (stored.length() > 1 && stored.charAt(1) == ESCAPED) {
+            return stored.substring(2);
+        }
+        if (stored.length() > 1 && stored.charAt(1) == DEFLATED) {
+            return new String(inflate(Base64.getDecoder().decode(stored.substring(2))), StandardCharsets.UTF_8);
+        }
+        throw new IllegalStateException("Formato de contenido desconocido");
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2 + 16);
+            byte[] buffer = new byte[1024];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] compressed) {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(compressed.length * 3);
+            byte[] buffer = new byte[1024];
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("Contenido comprimido truncado");
+                }
+                out.write(buffer, 0, length);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Contenido comprimido corrupto", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.iwellness.messaging.entity;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Cambio visible para un usuario, registrado en la misma transacción que lo origina.
+ * Cada cambio genera una fila por participante afectado. En H2 el ID es el cursor de
+ * sincronización; en PostgreSQL lo es el xid de la transacción (columna de V9 sin mapear).
+ */
+@Entity
+@Table(name = "sync_changes", indexes = {
+        // Cambios de un usuario a partir de un cursor (en PostgreSQL, V9 indexa (user_id, xid, id))
+        @Index(name = "idx_sync_changes_user_id", columnList = "user_id, id"),
+        // Purga por antigüedad
+        @Index(name = "idx_sync_changes_created_at", columnList = "created_at")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SyncChange {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Usuario que debe recibir el cambio
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "conversation_id", nullable = false)
+    private Long conversationId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "change_type", nullable = false, length = 16)
+    private Type type;
+
+    // MESSAGE: el mensaje nuevo; READ: la marca de agua (último mensaje leído); DELIVERED: el mensaje entregado
+    @Column(name = "message_id")
+    private Long messageId;
+
+    // Quien originó el cambio: emisor, lector, destinatario que confirma la entrega o creador
+    @Column(name = "actor_id", nullable = false)
+    private Long actorId;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    public enum Type {
+        MESSAGE, READ, DELIVERED, CONVERSATION
+    }
+
+    @PrePersist
+    protected void onCreate() {
+        if (createdAt == null) {
+            createdAt = LocalDateTime.now();
+        }
+    }
+}
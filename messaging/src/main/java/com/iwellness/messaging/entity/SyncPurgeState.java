@@ -0,0 +1,34 @@
+package com.iwellness.messaging.entity;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Marca de la última purga de sync_changes (una sola fila). purgedBefore es el menor cursor
+ * todavía válido: un cursor anterior pudo perder cambios purgados y exige una recarga completa.
+ * En PostgreSQL es un xid (el mayor purgado más uno); en H2, el mayor ID purgado.
+ */
+@Entity
+@Table(name = "sync_purge_state")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SyncPurgeState {
+
+    public static final int SINGLETON_ID = 1;
+
+    @Id
+    private Integer id;
+
+    @Column(name = "purged_before", nullable = false)
+    private Long purgedBefore;
+
+    @Column(name = "purged_at")
+    private LocalDateTime purgedAt;
+}
@@ -1,6 +1,7 @@
 package com.iwellness.messaging.interceptor;
 
 import java.util.Map;
+import java.util.Optional;
 
 import org.springframework.http.server.ServerHttpRequest;
 import org.springframework.http.server.ServerHttpResponse;
@@ -9,6 +10,7 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.socket.WebSocketHandler;
 import org.springframework.web.socket.server.HandshakeInterceptor;
 
+import com.iwellness.messaging.config.AppProperties;
 import com.iwellness.messaging.util.JwtUtil;
 
 import lombok.extern.slf4j.Slf4j;
@@ -17,10 +19,14 @@ import lombok.extern.slf4j.Slf4j;
 @Component
 public class JwtHandshakeInterceptor implements HandshakeInterceptor {
 
+    public static final String USER_ID_ATTRIBUTE = "userId";
+
     private final JwtUtil jwtUtil;
+    private final boolean requireUserId;
 
-    public JwtHandshakeInterceptor(JwtUtil jwtUtil) {
+    public JwtHandshakeInterceptor(JwtUtil jwtUtil, AppProperties appProperties) {
         this.jwtUtil = jwtUtil;
+        this.requireUserId = appProperties.getJwt().isRequireUserId();
     }
 
     @Override
@@ -30,17 +36,31 @@ public class JwtHandshakeInterceptor implements HandshakeInterceptor {
         if (request instanceof ServletServerHttpRequest servletRequest) {
             String token = servletRequest.getServletRequest().getParameter("token");
             
-            if (token != null && jwtUtil.validateToken(token)) {
-                Long idProveedor = jwtUtil.extractProviderId(token);
-                String username = jwtUtil.extractUsername(token);
+            Optional<JwtUtil.TokenClaims> claims = token != null ? jwtUtil.parseToken(token) : Optional.empty();
+            if (claims.isPresent() && claims.get().userId() == null) {
+                if (requireUserId) {
+                    log.warn("WebSocket handshake fallido: el token de {} no trae ID de usuario", claims.get().username());
+                    return false;
+                }
+                log.warn("El token de {} no trae ID de usuario: la sesión no podrá enviar mensajes", claims.get().username());
+            }
+            if (claims.isPresent()) {
+                Long userId = claims.get().userId();
+                Long idProveedor = claims.get().providerId();
+                String username = claims.get().username();
                 
                 // Only add idProveedor if it's not null (to avoid NullPointerException in ConcurrentHashMap)
                 if (idProveedor != null) {
                     attributes.put("idProveedor", idProveedor);
                 }
+                // Lo leen los controladores STOMP y UserIdHandshakeHandler (Principal de la sesión)
+                if (userId != null) {
+                    attributes.put(USER_ID_ATTRIBUTE, userId);
+                }
                 attributes.put("username", username);
                 
-                log.info("WebSocket handshake exitoso para usuario: {} (idProveedor: {})", username, idProveedor);
+                log.info("WebSocket handshake exitoso para usuario: {} (userId: {}, idProveedor: {})",
+                        username, userId, idProveedor);
                 return true;
             }
         }
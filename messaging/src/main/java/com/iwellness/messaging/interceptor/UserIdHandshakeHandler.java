@@ -0,0 +1,33 @@
+package com.iwellness.messaging.interceptor;
+
+import java.security.Principal;
+import java.util.Map;
+
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
+
+/**
+ * Asigna a cada sesión WebSocket un Principal cuyo nombre es el ID de usuario validado en
+ * {@link JwtHandshakeInterceptor}. Es la clave con la que se resuelven los destinos /user/...
+ * (convertAndSendToUser) y con la que {@code PresenceRegistry} registra las sesiones.
+ */
+@Component
+public class UserIdHandshakeHandler extends DefaultHandshakeHandler {
+
+    public record UserPrincipal(String name) implements Principal {
+
+        @Override
+        public String getName() {
+            return name;
+        }
+    }
+
+    @Override
+    protected Principal determineUser(ServerHttpRequest request, WebSocketHandler wsHandler,
+                                      Map<String, Object> attributes) {
+        Object userId = attributes.get(JwtHandshakeInterceptor.USER_ID_ATTRIBUTE);
+        return userId != null ? new UserPrincipal(userId.toString()) : super.determineUser(request, wsHandler, attributes);
+    }
+}
@@ -1,46 +1,110 @@
 package com.iwellness.messaging.publisher;
 
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import java.time.LocalDateTime;
+import java.util.List;
+
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 
-import com.iwellness.messaging.config.AppProperties;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.iwellness.messaging.dto.ChatMessageDTO;
+import com.iwellness.messaging.dto.ConversationEventDTO;
+import com.iwellness.messaging.dto.DeliveryReceiptDTO;
+import com.iwellness.messaging.dto.ReadReceiptDTO;
+import com.iwellness.messaging.entity.OutboxEvent;
+import com.iwellness.messaging.repository.OutboxEventRepository;
 
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * Registra los eventos de dominio en el outbox, dentro de la transacción del cambio que
+ * los origina: si la transacción se revierte, el evento tampoco existe. La publicación en
+ * RabbitMQ la hace {@link OutboxRelay} en segundo plano, fuera de la ruta de envío.
+ */
 @Slf4j
 @Component
 public class MessageEventPublisher {
 
-    private final RabbitTemplate rabbitTemplate;
-    private final AppProperties appProperties;
+    public static final String MESSAGE_SENT = "message-sent";
+    public static final String MESSAGE_DELIVERED = "message-delivered";
+    public static final String MESSAGE_READ = "message-read";
+    public static final String MESSAGE_READ_V2 = "message-read-v2";
+    public static final String CONVERSATION_CREATED = "conversation-created";
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final ObjectMapper objectMapper;
 
-    public MessageEventPublisher(RabbitTemplate rabbitTemplate, AppProperties appProperties) {
-        this.rabbitTemplate = rabbitTemplate;
-        this.appProperties = appProperties;
+    public MessageEventPublisher(OutboxEventRepository outboxEventRepository, ObjectMapper objectMapper) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.objectMapper = objectMapper;
     }
 
+    @Transactional(propagation = Propagation.MANDATORY)
     public void publishMessageSent(ChatMessageDTO message) {
-        try {
-            String exchangeName = appProperties.getRabbitmq().getExchange().getName();
-            String routingKey = appProperties.getRabbitmq().getRoutingKeys().get("message-sent");
-            
-            rabbitTemplate.convertAndSend(exchangeName, routingKey, message);
-            log.info("Evento publicado: MessageSent - Message ID: {}", message.getId());
-        } catch (Exception e) {
-            log.error("Error al publicar evento MessageSent: {}", e.getMessage(), e);
-        }
+        outboxEventRepository.save(messageSentEvent(message));
+        log.debug("Evento registrado en el outbox: MessageSent - Message ID: {}", message.getId());
     }
 
-    public void publishMessageRead(Long messageId, Long userId) {
-        try {
-            String exchangeName = appProperties.getRabbitmq().getExchange().getName();
-            String routingKey = appProperties.getRabbitmq().getRoutingKeys().get("message-read");
+    /**
+     * Registra la lectura de uno o varios mensajes. message.read conserva el contrato original
+     * (el ID del mensaje, un Long; con un rango, el último leído) y message.read.v2 lleva la
+     * confirmación completa (ReadReceiptDTO).
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void publishMessageRead(ReadReceiptDTO receipt) {
+        outboxEventRepository.save(toEvent(MESSAGE_READ, receipt.getLastMessageId(), receipt.getLastMessageId()));
+        outboxEventRepository.save(toEvent(MESSAGE_READ_V2, receipt.getLastMessageId(), receipt));
+        log.debug("Evento registrado en el outbox: MessageRead - Messages {}..{}",
+                receipt.getFirstMessageId(), receipt.getLastMessageId());
+    }
 
-            rabbitTemplate.convertAndSend(exchangeName, routingKey, messageId);
-            log.info("Evento publicado: MessageRead - Message ID: {}", messageId);
-        } catch (Exception e) {
-            log.error("Error al publicar evento MessageRead: {}", e.getMessage(), e);
+    /**
+     * Registra la entrega de los mensajes confirmados de una conversación (messageIds).
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void publishMessageDelivered(DeliveryReceiptDTO receipt) {
+        List<Long> messageIds = receipt.getMessageIds();
+        outboxEventRepository.save(toEvent(MESSAGE_DELIVERED, messageIds.get(messageIds.size() - 1), receipt));
+        log.debug("Evento registrado en el outbox: MessageDelivered - Conversation {}, {} messages",
+                receipt.getConversationId(), messageIds.size());
+    }
+
+    /**
+     * Registra la creación de una conversación; la pareja se publica en forma canónica.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void publishConversationCreated(Long conversationId, Long createdBy, Long otherUserId,
+                                           LocalDateTime createdAt) {
+        ConversationEventDTO conversation = ConversationEventDTO.builder()
+                .conversationId(conversationId)
+                .user1Id(Math.min(createdBy, otherUserId))
+                .user2Id(Math.max(createdBy, otherUserId))
+                .createdBy(createdBy)
+                .createdAt(createdAt)
+                .build();
+        outboxEventRepository.save(toEvent(CONVERSATION_CREATED, conversationId, conversation));
+        log.debug("Evento registrado en el outbox: ConversationCreated - Conversation ID: {}", conversationId);
+    }
+
+    /**
+     * Construye, sin guardarlo, el evento MessageSent de un mensaje. Lo usa también la
+     * ingesta por lotes, que inserta los eventos con JDBC en su propia transacción.
+     */
+    public OutboxEvent messageSentEvent(ChatMessageDTO message) {
+        return toEvent(MESSAGE_SENT, message.getId(), message);
+    }
+
+    private OutboxEvent toEvent(String eventType, Long aggregateId, Object payload) {
+        try {
+            return OutboxEvent.builder()
+                    .eventType(eventType)
+                    .aggregateId(aggregateId)
+                    .payload(objectMapper.writeValueAsString(payload))
+                    .build();
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("No se pudo serializar el evento " + eventType, e);
         }
     }
 }
@@ -0,0 +1,260 @@
+package com.iwellness.messaging.publisher;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.iwellness.messaging.config.AppProperties;
+import com.iwellness.messaging.config.SchedulingConfig;
+import com.iwellness.messaging.entity.OutboxEvent;
+import com.iwellness.messaging.repository.OutboxEventRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Drena el outbox hacia RabbitMQ. Cada ciclo toma un lote de eventos pendientes (bloqueados
+ * para que otra réplica no los tome), los publica todos, espera las confirmaciones del broker
+ * (publisher confirms) y elimina solo los confirmados, en la misma transacción. Los rechazados
+ * o sin confirmar se quedan con el error registrado y se reintentan en el siguiente ciclo:
+ * la entrega es al menos una vez, con el ID del evento como messageId para deduplicar.
+ * Los fallos propios del evento (sin routing key, payload inválido, nack) cuentan en attempts y,
+ * al llegar a app.rabbitmq.outbox.max-attempts, el evento queda aparcado (PARKED) para que no
+ * bloquee el lote indefinidamente; la caída del broker o la falta de confirmación solo anotan el error.
+ * Con app.rabbitmq.outbox.format=smile el cuerpo se publica en Smile (JSON binario) en lugar de JSON.
+ * Con app.rabbitmq.outbox.enabled=false el relay no se crea (y no necesita conexión a RabbitMQ).
+ * Se ejecuta en su propio planificador (outboxRelayScheduler), fuera del pool compartido.
+ */
+@Slf4j
+@Component
+@ConditionalOnExpression(OutboxRelay.ENABLED)
+public class OutboxRelay {
+
+    public static final String ENABLED = "${app.rabbitmq.outbox.enabled:true}";
+
+    public static final String SMILE_CONTENT_TYPE = "application/x-jackson-smile";
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final RabbitTemplate rabbitTemplate;
+    private final AppProperties appProperties;
+    private final SmileFactory smileFactory = new SmileFactory();
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Counter confirmed;
+    private final Counter nacked;
+    private final Counter failed;
+    private final Counter parked;
+
+    private volatile boolean brokerAvailable = true;
+
+    public OutboxRelay(OutboxEventRepository outboxEventRepository, TransactionTemplate transactionTemplate,
+                       ConnectionFactory connectionFactory, AppProperties appProperties, MeterRegistry meterRegistry) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.appProperties = appProperties;
+        // Plantilla propia sin reintentos bloqueantes: un fallo se reintenta en el siguiente ciclo
+        this.rabbitTemplate = new RabbitTemplate(connectionFactory);
+
+        this.confirmed = Counter.builder("messaging.outbox.confirmed")
+                .description("Eventos publicados y confirmados por el broker")
+                .register(meterRegistry);
+        this.nacked = Counter.builder("messaging.outbox.nacked")
+                .description("Eventos rechazados por el broker (nack)")
+                .register(meterRegistry);
+        this.failed = Counter.builder("messaging.outbox.failed")
+                .description("Eventos sin publicar por error de envío o sin confirmación a tiempo")
+                .register(meterRegistry);
+        Gauge.builder("messaging.outbox.inflight", inFlight, AtomicInteger::get)
+                .description("Eventos publicados a la espera de confirmación")
+                .register(meterRegistry);
+        this.parked = Counter.builder("messaging.outbox.parked")
+                .description("Eventos aparcados tras agotar los intentos")
+                .register(meterRegistry);
+        Gauge.builder("messaging.outbox.pending", outboxEventRepository,
+                        repository -> repository.countByStatus(OutboxEvent.Status.PENDING))
+                .description("Eventos pendientes de publicar")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "#{@appProperties.rabbitmq.outbox.pollInterval.toMillis()}",
+            scheduler = SchedulingConfig.OUTBOX_RELAY_SCHEDULER)
+    public void relayPending() {
+        int batchSize = appProperties.getRabbitmq().getOutbox().getBatchSize();
+        int confirmed;
+        do {
+            confirmed = transactionTemplate.execute(status -> relayBatch(batchSize));
+        } while (confirmed == batchSize);
+    }
+
+    /**
+     * Publica un lote de eventos pendientes.
+     *
+     * @return El número de eventos confirmados y eliminados del outbox.
+     */
+    int relayBatch(int batchSize) {
+        List<OutboxEvent> batch = outboxEventRepository.findAllByStatusOrderByIdAsc(
+                OutboxEvent.Status.PENDING, Limit.of(batchSize));
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        String exchange = appProperties.getRabbitmq().getExchange().getName();
+        Map<OutboxEvent, CorrelationData> sent = new LinkedHashMap<>();
+        // Todo el lote sale por el mismo canal para conservar el orden de los eventos
+        try {
+            rabbitTemplate.invoke(operations -> {
+                for (OutboxEvent event : batch) {
+                    String routingKey = appProperties.getRabbitmq().getRoutingKeys().get(event.getEventType());
+                    if (routingKey == null) {
+                        failed.increment();
+                        markFailed(event, "Sin routing key configurada para " + event.getEventType());
+                        continue;
+                    }
+                    Message message;
+                    try {
+                        message = toAmqpMessage(event);
+                    } catch (UncheckedIOException e) {
+                        // Un payload corrupto no debe bloquear el lote: se anota y se sigue con el resto
+                        failed.increment();
+                        markFailed(event, e.getMessage());
+                        continue;
+                    }
+                    CorrelationData correlation = new CorrelationData(String.valueOf(event.getId()));
+                    operations.send(exchange, routingKey, message, correlation);
+                    sent.put(event, correlation);
+                    inFlight.incrementAndGet();
+                }
+                return null;
+            });
+        } catch (AmqpException e) {
+            // Se anota en el primer evento no enviado; el resto del lote espera al siguiente ciclo
+            failed.increment();
+            batch.stream().filter(event -> !sent.containsKey(event)).findFirst()
+                    .ifPresent(event -> recordError(event, e.getMessage()));
+            if (brokerAvailable) {
+                log.warn("Broker no disponible, los eventos pendientes quedan en el outbox: {}", e.getMessage());
+                brokerAvailable = false;
+            }
+        }
+
+        long deadline = System.nanoTime() + appProperties.getRabbitmq().getOutbox().getConfirmTimeout().toNanos();
+        List<OutboxEvent> acked = new ArrayList<>(sent.size());
+        try {
+            for (Map.Entry<OutboxEvent, CorrelationData> entry : sent.entrySet()) {
+                try {
+                    CorrelationData.Confirm confirm = entry.getValue().getFuture()
+                            .get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    if (confirm.isAck()) {
+                        acked.add(entry.getKey());
+                    } else {
+                        nacked.increment();
+                        markFailed(entry.getKey(), "nack: " + confirm.getReason());
+                    }
+                } catch (TimeoutException e) {
+                    failed.increment();
+                    recordError(entry.getKey(), "Sin confirmación del broker");
+                } catch (ExecutionException e) {
+                    failed.increment();
+                    markFailed(entry.getKey(), e.getCause().getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            inFlight.addAndGet(-sent.size());
+        }
+
+        outboxEventRepository.deleteAllInBatch(acked);
+        confirmed.increment(acked.size());
+        if (!acked.isEmpty() && !brokerAvailable) {
+            log.info("Broker disponible de nuevo, publicación del outbox reanudada");
+            brokerAvailable = true;
+        }
+        return acked.size();
+    }
+
+    /**
+     * Fallo propio del evento: cuenta para el límite de intentos y, al alcanzarlo, lo aparca.
+     */
+    private void markFailed(OutboxEvent event, String error) {
+        event.setAttempts(event.getAttempts() + 1);
+        recordError(event, error);
+        if (event.getAttempts() >= appProperties.getRabbitmq().getOutbox().getMaxAttempts()) {
+            event.setStatus(OutboxEvent.Status.PARKED);
+            parked.increment();
+            log.error("Evento {} del outbox ({}) aparcado tras {} intentos: {}",
+                    event.getId(), event.getEventType(), event.getAttempts(), event.getLastError());
+        }
+    }
+
+    /**
+     * Fallo transitorio (broker caído o sin confirmación): se anota sin consumir intentos.
+     */
+    private void recordError(OutboxEvent event, String error) {
+        if (error != null && error.length() > OutboxEvent.MAX_ERROR_LENGTH) {
+            error = error.substring(0, OutboxEvent.MAX_ERROR_LENGTH);
+        }
+        event.setLastError(error);
+    }
+
+    private Message toAmqpMessage(OutboxEvent event) {
+        MessageProperties properties = new MessageProperties();
+        properties.setMessageId("outbox-" + event.getId());
+        properties.setType(event.getEventType());
+        properties.setTimestamp(Timestamp.valueOf(event.getCreatedAt()));
+        byte[] body;
+        if (appProperties.getRabbitmq().getOutbox().getFormat() == AppProperties.OutboxFormat.SMILE) {
+            properties.setContentType(SMILE_CONTENT_TYPE);
+            body = toSmile(event.getPayload());
+        } else {
+            properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+            properties.setContentEncoding(StandardCharsets.UTF_8.name());
+            body = event.getPayload().getBytes(StandardCharsets.UTF_8);
+        }
+        return new Message(body, properties);
+    }
+
+    /**
+     * Transcodifica el JSON guardado en el outbox a Smile token a token, sin construir el árbol.
+     */
+    private byte[] toSmile(String json) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length());
+        try (JsonParser parser = jsonFactory.createParser(json);
+             JsonGenerator generator = smileFactory.createGenerator(out)) {
+            parser.nextToken();
+            generator.copyCurrentStructure(parser);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Payload del outbox no es JSON válido", e);
+        }
+        return out.toByteArray();
+    }
+}
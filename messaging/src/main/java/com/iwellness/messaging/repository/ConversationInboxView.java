@@ -0,0 +1,35 @@
+package com.iwellness.messaging.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * Proyección de una fila de la bandeja de entrada: la conversación, su último
+ * mensaje (columnas nulas si aún no tiene mensajes) y el conteo de no leídos
+ * para el usuario que consulta.
+ */
+public interface ConversationInboxView {
+
+    Long getConversationId();
+
+    Long getUser1Id();
+
+    Long getUser2Id();
+
+    LocalDateTime getUpdatedAt();
+
+    Long getLastMessageId();
+
+    Long getLastMessageSenderId();
+
+    Long getLastMessageReceiverId();
+
+    String getLastMessageContent();
+
+    Boolean getLastMessageIsRead();
+
+    LocalDateTime getLastMessageReadAt();
+
+    LocalDateTime getLastMessageSentAt();
+
+    Long getUnreadCount();
+}
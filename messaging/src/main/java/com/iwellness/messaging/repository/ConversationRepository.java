@@ -1,9 +1,12 @@
 package com.iwellness.messaging.repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -11,10 +14,170 @@ import org.springframework.stereotype.Repository;
 import com.iwellness.messaging.entity.Conversation;
 
 @Repository
-public interface ConversationRepository extends JpaRepository<Conversation, Long> {
+public interface ConversationRepository extends JpaRepository<Conversation, Long>, ConversationRepositoryCustom {
     @Query("SELECT c FROM Conversation c WHERE (c.user1Id = :userId OR c.user2Id = :userId)")
     List<Conversation> findByParticipant(@Param("userId") Long userId);
 
-    @Query("SELECT c FROM Conversation c WHERE (c.user1Id = :user1 AND c.user2Id = :user2) OR (c.user1Id = :user2 AND c.user2Id = :user1)")
-    Optional<Conversation> findByUsers(@Param("user1") Long user1, @Param("user2") Long user2);
+    /**
+     * De entre los candidatos, los usuarios con los que el usuario tiene una conversación.
+     */
+    @Query("""
+            SELECT CASE WHEN c.user1Id = :userId THEN c.user2Id ELSE c.user1Id END FROM Conversation c
+            WHERE (c.user1Id = :userId AND c.user2Id IN :candidateIds)
+               OR (c.user2Id = :userId AND c.user1Id IN :candidateIds)
+            """)
+    List<Long> findPartnerIdsIn(@Param("userId") Long userId, @Param("candidateIds") Collection<Long> candidateIds);
+
+    /**
+     * Busca la conversación entre dos usuarios, en cualquier orden.
+     * Las parejas se guardan ordenadas, así que es una sola búsqueda en el índice único.
+     */
+    default Optional<Conversation> findByUsers(Long user1, Long user2) {
+        return findByUser1IdAndUser2Id(Math.min(user1, user2), Math.max(user1, user2));
+    }
+
+    Optional<Conversation> findByUser1IdAndUser2Id(Long user1Id, Long user2Id);
+
+    /**
+     * Obtiene la bandeja de entrada completa de un usuario en una sola sentencia SQL
+     * a partir del modelo de lectura desnormalizado de la conversación, ordenada por
+     * última actividad. El último mensaje se une por clave primaria solo para su estado de lectura.
+     *
+     * @param userId El ID del usuario participante.
+     * @return Una fila por conversación.
+     */
+    @Query("""
+            SELECT c.id AS conversationId,
+                   c.user1Id AS user1Id,
+                   c.user2Id AS user2Id,
+                   c.updatedAt AS updatedAt,
+                   c.lastMessageId AS lastMessageId,
+                   c.lastMessageSenderId AS lastMessageSenderId,
+                   m.receiverId AS lastMessageReceiverId,
+                   c.lastMessagePreview AS lastMessageContent,
+                   m.isRead AS lastMessageIsRead,
+                   m.readAt AS lastMessageReadAt,
+                   c.lastMessageAt AS lastMessageSentAt,
+                   CASE WHEN c.user1Id = :userId THEN c.user1UnreadCount ELSE c.user2UnreadCount END AS unreadCount
+            FROM Conversation c
+            LEFT JOIN Message m ON m.id = c.lastMessageId
+            WHERE c.user1Id = :userId OR c.user2Id = :userId
+            ORDER BY c.updatedAt DESC
+            """)
+    List<ConversationInboxView> findInboxByParticipant(@Param("userId") Long userId);
+
+    /**
+     * Igual que {@link #findInboxByParticipant}, limitado a un conjunto de conversaciones
+     * (las que cambiaron desde la última sincronización del cliente).
+     *
+     * @param userId El ID del usuario participante.
+     * @param conversationIds Las conversaciones a incluir; se ignoran las que no son del usuario.
+     * @return Una fila por conversación.
+     */
+    @Query("""
+            SELECT c.id AS conversationId,
+                   c.user1Id AS user1Id,
+                   c.user2Id AS user2Id,
+                   c.updatedAt AS updatedAt,
+                   c.lastMessageId AS lastMessageId,
+                   c.lastMessageSenderId AS lastMessageSenderId,
+                   m.receiverId AS lastMessageReceiverId,
+                   c.lastMessagePreview AS lastMessageContent,
+                   m.isRead AS lastMessageIsRead,
+                   m.readAt AS lastMessageReadAt,
+                   c.lastMessageAt AS lastMessageSentAt,
+                   CASE WHEN c.user1Id = :userId THEN c.user1UnreadCount ELSE c.user2UnreadCount END AS unreadCount
+            FROM Conversation c
+            LEFT JOIN Message m ON m.id = c.lastMessageId
+            WHERE (c.user1Id = :userId OR c.user2Id = :userId) AND c.id IN :conversationIds
+            ORDER BY c.updatedAt DESC
+            """)
+    List<ConversationInboxView> findInboxByParticipantAndIdIn(@Param("userId") Long userId,
+                                                              @Param("conversationIds") Collection<Long> conversationIds);
+
+    /**
+     * Registra un mensaje nuevo en el modelo de lectura de la conversación con una única
+     * sentencia atómica: actualiza el último mensaje (solo si es más reciente que el guardado)
+     * e incrementa el contador de no leídos del destinatario.
+     *
+     * @return El número de conversaciones actualizadas (0 o 1).
+     */
+    @Modifying
+    @Query("""
+            UPDATE Conversation c SET
+                   c.lastMessageId = CASE WHEN c.lastMessageId IS NULL OR c.lastMessageId < :messageId
+                                          THEN :messageId ELSE c.lastMessageId END,
+                   c.lastMessageSenderId = CASE WHEN c.lastMessageId IS NULL OR c.lastMessageId < :messageId
+                                                THEN :senderId ELSE c.lastMessageSenderId END,
+                   c.lastMessagePreview = CASE WHEN c.lastMessageId IS NULL OR c.lastMessageId < :messageId
+                                               THEN :preview ELSE c.lastMessagePreview END,
+                   c.lastMessageAt = CASE WHEN c.lastMessageId IS NULL OR c.lastMessageId < :messageId
+                                          THEN :sentAt ELSE c.lastMessageAt END,
+                   c.updatedAt = :sentAt,
+                   c.user1UnreadCount = c.user1UnreadCount
+                                        + CASE WHEN c.user1Id = :receiverId THEN 1 ELSE 0 END,
+                   c.user2UnreadCount = c.user2UnreadCount
+                                        + CASE WHEN c.user2Id = :receiverId AND c.user1Id <> :receiverId THEN 1 ELSE 0 END
+            WHERE c.id = :conversationId
+            """)
+    int registerNewMessage(@Param("conversationId") Long conversationId,
+                           @Param("messageId") Long messageId,
+                           @Param("senderId") Long senderId,
+                           @Param("receiverId") Long receiverId,
+                           @Param("preview") String preview,
+                           @Param("sentAt") LocalDateTime sentAt);
+
+    /**
+     * Descuenta mensajes leídos del contador de no leídos de un participante, sin bajar de cero.
+     *
+     * @return El número de conversaciones actualizadas (0 o 1).
+     */
+    @Modifying
+    @Query("""
+            UPDATE Conversation c SET
+                   c.user1UnreadCount = CASE WHEN c.user1Id = :userId
+                                             THEN CASE WHEN c.user1UnreadCount > :count THEN c.user1UnreadCount - :count ELSE 0 END
+                                             ELSE c.user1UnreadCount END,
+                   c.user2UnreadCount = CASE WHEN c.user2Id = :userId AND c.user1Id <> :userId
+                                             THEN CASE WHEN c.user2UnreadCount > :count THEN c.user2UnreadCount - :count ELSE 0 END
+                                             ELSE c.user2UnreadCount END
+            WHERE c.id = :conversationId
+            """)
+    int decrementUnreadCount(@Param("conversationId") Long conversationId,
+                             @Param("userId") Long userId,
+                             @Param("count") int count);
+
+    /**
+     * Reconstruye el modelo de lectura de todas las conversaciones a partir de la tabla de mensajes.
+     * Utilizado por el job de reconciliación para corregir cualquier desviación de los contadores.
+     * Solo ve los mensajes del nivel caliente: si todos los de una conversación están archivados,
+     * se conserva el último mensaje registrado y los no leídos quedan a cero. La vista previa de un
+     * último mensaje guardado comprimido (empieza por U+0001) se conserva: no se puede recortar en SQL.
+     *
+     * @return El número de conversaciones actualizadas.
+     */
+    @Modifying
+    @Query("""
+            UPDATE Conversation c SET
+                   c.user1UnreadCount = (SELECT COUNT(m.id) FROM Message m
+                                          WHERE m.conversation = c AND m.receiverId = c.user1Id AND m.isRead = false),
+                   c.user2UnreadCount = CASE WHEN c.user2Id = c.user1Id THEN 0
+                                             ELSE (SELECT COUNT(m.id) FROM Message m
+                                                    WHERE m.conversation = c AND m.receiverId = c.user2Id AND m.isRead = false) END,
+                   c.lastMessageId = COALESCE((SELECT MAX(m.id) FROM Message m WHERE m.conversation = c),
+                                              c.lastMessageId),
+                   c.lastMessageSenderId = COALESCE((SELECT m.senderId FROM Message m
+                                                      WHERE m.id = (SELECT MAX(l.id) FROM Message l WHERE l.conversation = c)),
+                                                    c.lastMessageSenderId),
+                   c.lastMessagePreview = COALESCE((SELECT CASE WHEN SUBSTRING(m.content, 1, 1) = '\u0001'
+                                                                 THEN c.lastMessagePreview
+                                                                 ELSE SUBSTRING(m.content, 1, 255) END
+                                                     FROM Message m
+                                                     WHERE m.id = (SELECT MAX(l.id) FROM Message l WHERE l.conversation = c)),
+                                                   c.lastMessagePreview),
+                   c.lastMessageAt = COALESCE((SELECT m.sentAt FROM Message m
+                                                WHERE m.id = (SELECT MAX(l.id) FROM Message l WHERE l.conversation = c)),
+                                              c.lastMessageAt)
+            """)
+    int rebuildInboxReadModel();
 }
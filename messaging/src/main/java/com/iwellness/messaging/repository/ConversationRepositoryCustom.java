@@ -0,0 +1,24 @@
+package com.iwellness.messaging.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * Operaciones de {@link ConversationRepository} que requieren SQL nativo.
+ */
+public interface ConversationRepositoryCustom {
+
+    /**
+     * Obtiene o crea la conversación entre dos usuarios de forma atómica (insert-on-conflict
+     * sobre la pareja canónica) y actualiza su fecha de última actividad.
+     * Aunque dos usuarios se escriban a la vez, siempre existe una sola conversación por pareja.
+     *
+     * @param userA El ID de uno de los participantes.
+     * @param userB El ID del otro participante.
+     * @param now La fecha de actividad a registrar.
+     * @return El ID de la conversación y si se creó en esta llamada (para publicar ConversationCreated una sola vez).
+     */
+    UpsertResult upsertConversation(Long userA, Long userB, LocalDateTime now);
+
+    record UpsertResult(Long id, boolean created) {
+    }
+}
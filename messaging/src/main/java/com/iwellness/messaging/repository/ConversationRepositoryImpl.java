@@ -0,0 +1,108 @@
+package com.iwellness.messaging.repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+import org.hibernate.Session;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+/**
+ * Implementación del get-or-create de conversaciones con una sola sentencia.
+ * En PostgreSQL usa INSERT ... ON CONFLICT ... RETURNING (xmax = 0 solo en las filas recién
+ * insertadas); en otras bases (H2 en desarrollo) usa un MERGE estándar seguido de la búsqueda
+ * por la pareja, y la fila es nueva si su created_at es la fecha de esta llamada. Si dos MERGE
+ * concurrentes insertan la misma pareja, el perdedor recibe la violación de uk_conversations_user_pair
+ * y simplemente lee la fila del ganador: el MERGE se ejecuta por JDBC para que ese error no
+ * marque la transacción como rollback-only.
+ */
+public class ConversationRepositoryImpl implements ConversationRepositoryCustom {
+
+    private static final String POSTGRES_UPSERT = """
+            INSERT INTO conversations (user1_id, user2_id, created_at, updated_at, user1_unread_count, user2_unread_count)
+            VALUES (:user1Id, :user2Id, :now, :now, 0, 0)
+            ON CONFLICT (user1_id, user2_id) DO UPDATE SET updated_at = EXCLUDED.updated_at
+            RETURNING id, (xmax = 0) AS inserted
+            """;
+
+    private static final String STANDARD_MERGE = """
+            MERGE INTO conversations c
+            USING (VALUES (CAST(? AS BIGINT), CAST(? AS BIGINT), CAST(? AS TIMESTAMP))) AS p (user1_id, user2_id, now)
+            ON c.user1_id = p.user1_id AND c.user2_id = p.user2_id
+            WHEN MATCHED THEN UPDATE SET updated_at = p.now
+            WHEN NOT MATCHED THEN
+                INSERT (user1_id, user2_id, created_at, updated_at, user1_unread_count, user2_unread_count)
+                VALUES (p.user1_id, p.user2_id, p.now, p.now, 0, 0)
+            """;
+
+    private static final String SELECT_BY_PAIR =
+            "SELECT id, created_at FROM conversations WHERE user1_id = ? AND user2_id = ?";
+
+    // SQLState estándar de violación de unicidad
+    private static final String UNIQUE_VIOLATION = "23505";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private volatile Boolean postgres;
+
+    @Override
+    public UpsertResult upsertConversation(Long userA, Long userB, LocalDateTime timestamp) {
+        // Misma forma canónica que aplica la entidad al persistirse
+        Long user1Id = Math.min(userA, userB);
+        Long user2Id = Math.max(userA, userB);
+        // Precisión de la columna: el created_at leído debe poder compararse con este valor
+        LocalDateTime now = timestamp.truncatedTo(ChronoUnit.MICROS);
+
+        if (isPostgres()) {
+            Object[] row = (Object[]) entityManager.createNativeQuery(POSTGRES_UPSERT)
+                    .setParameter("user1Id", user1Id)
+                    .setParameter("user2Id", user2Id)
+                    .setParameter("now", now)
+                    .getSingleResult();
+            return new UpsertResult(((Number) row[0]).longValue(), Boolean.TRUE.equals(row[1]));
+        }
+
+        // Los cambios pendientes del contexto de persistencia deben verse desde JDBC
+        entityManager.flush();
+        return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            try (PreparedStatement merge = connection.prepareStatement(STANDARD_MERGE)) {
+                merge.setLong(1, user1Id);
+                merge.setLong(2, user2Id);
+                merge.setTimestamp(3, Timestamp.valueOf(now));
+                merge.executeUpdate();
+            } catch (SQLException e) {
+                // Otra transacción insertó la pareja a la vez: se usa su fila
+                if (!UNIQUE_VIOLATION.equals(e.getSQLState())) {
+                    throw e;
+                }
+            }
+            try (PreparedStatement select = connection.prepareStatement(SELECT_BY_PAIR)) {
+                select.setLong(1, user1Id);
+                select.setLong(2, user2Id);
+                try (ResultSet rs = select.executeQuery()) {
+                    // Tras el MERGE (o la violación de unicidad de otra inserción) la fila debe existir
+                    if (!rs.next()) {
+                        throw new IllegalStateException("No se encontró la conversación entre los usuarios "
+                                + user1Id + " y " + user2Id + " después del MERGE");
+                    }
+                    LocalDateTime createdAt = rs.getTimestamp(2).toLocalDateTime();
+                    return new UpsertResult(rs.getLong(1), now.equals(createdAt));
+                }
+            }
+        });
+    }
+
+    private boolean isPostgres() {
+        if (postgres == null) {
+            postgres = entityManager.unwrap(Session.class).doReturningWork(connection ->
+                    connection.getMetaData().getDatabaseProductName().toLowerCase().contains("postgresql"));
+        }
+        return postgres;
+    }
+}
@@ -0,0 +1,251 @@
+package com.iwellness.messaging.repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+
+import com.iwellness.messaging.config.AppProperties;
+import com.iwellness.messaging.dto.ChatMessageDTO;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Nivel frío del historial: los segmentos de {@link MessageSegmentFile} del directorio
+ * app.messaging.archive.directory. Se cargan al arrancar y el directorio se relee
+ * periódicamente para ver los segmentos archivados por otras réplicas (volumen compartido).
+ * Las lecturas comprueban primero el mayor ID archivado, de modo que las consultas del
+ * historial reciente no tocan el disco.
+ */
+@Slf4j
+@Repository
+public class MessageArchiveRepository {
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    // Margen para que las lecturas en curso sobre un segmento retirado terminen antes de cerrarlo
+    private static final Duration RETIRE_GRACE = Duration.ofMinutes(1);
+
+    private final Path directory;
+    // Copia inmutable por escritura: las lecturas no se bloquean
+    private volatile List<MessageSegmentFile> segments = List.of();
+    private volatile long maxArchivedId = 0L;
+    // Segmentos retirados de la lista, pendientes de cerrar (acceso sincronizado)
+    private final List<Retired> retired = new ArrayList<>();
+
+    private record Retired(MessageSegmentFile segment, long closeAfterNanos) {
+    }
+
+    public MessageArchiveRepository(AppProperties appProperties) {
+        this.directory = Paths.get(appProperties.getMessaging().getArchive().getDirectory());
+    }
+
+    @PostConstruct
+    void start() {
+        rescan();
+        if (!segments.isEmpty()) {
+            log.info("Archivo de mensajes: {} segmentos en {} (ID máximo archivado {})",
+                    segments.size(), directory.toAbsolutePath(), maxArchivedId);
+        }
+    }
+
+    @PreDestroy
+    synchronized void stop() {
+        segments.forEach(MessageArchiveRepository::closeQuietly);
+        segments = List.of();
+        retired.forEach(entry -> closeQuietly(entry.segment()));
+        retired.clear();
+    }
+
+    /**
+     * Sincroniza los segmentos abiertos con los ficheros del directorio.
+     */
+    @Scheduled(fixedDelayString = "#{@appProperties.messaging.archive.rescanInterval.toMillis()}")
+    public synchronized void rescan() {
+        closeRetired();
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        Map<Path, MessageSegmentFile> current = new HashMap<>();
+        segments.forEach(segment -> current.put(segment.getPath(), segment));
+        List<MessageSegmentFile> updated = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                Path path = file.toAbsolutePath();
+                MessageSegmentFile segment = current.remove(path);
+                if (segment == null) {
+                    try {
+                        segment = MessageSegmentFile.open(path);
+                    } catch (IOException e) {
+                        log.warn("Segmento de archivo ignorado {}: {}", path, e.getMessage());
+                        continue;
+                    }
+                }
+                updated.add(segment);
+            }
+        } catch (IOException e) {
+            log.warn("No se pudo leer el directorio de archivo {}: {}", directory, e.getMessage());
+            return;
+        }
+        publish(updated);
+        // Segmentos cuyo fichero ya no existe
+        current.values().forEach(this::retire);
+    }
+
+    /**
+     * @return La ruta del segmento de un mes (p. ej. messages-2024-01.seg).
+     */
+    public Path segmentPath(String month) throws IOException {
+        Files.createDirectories(directory);
+        return directory.resolve("messages-" + month + SEGMENT_SUFFIX).toAbsolutePath();
+    }
+
+    /**
+     * Abre y publica un segmento recién escrito.
+     */
+    public synchronized void register(Path path) throws IOException {
+        Path absolute = path.toAbsolutePath();
+        List<MessageSegmentFile> updated = new ArrayList<>();
+        for (MessageSegmentFile segment : segments) {
+            if (segment.getPath().equals(absolute)) {
+                retire(segment);
+            } else {
+                updated.add(segment);
+            }
+        }
+        updated.add(MessageSegmentFile.open(absolute));
+        publish(updated);
+    }
+
+    /**
+     * Retira un segmento (archivado fallido); su fichero se cierra pasado el margen de gracia.
+     */
+    public synchronized void unregister(Path path) {
+        Path absolute = path.toAbsolutePath();
+        List<MessageSegmentFile> updated = new ArrayList<>(segments);
+        updated.removeIf(segment -> {
+            if (segment.getPath().equals(absolute)) {
+                retire(segment);
+                return true;
+            }
+            return false;
+        });
+        publish(updated);
+    }
+
+    public long getMaxArchivedId() {
+        return maxArchivedId;
+    }
+
+    /**
+     * Mensajes archivados de la conversación con floorId &lt; ID &lt; beforeId.
+     *
+     * @return Hasta limit mensajes, del más reciente al más antiguo.
+     */
+    public List<ChatMessageDTO> readBefore(long conversationId, long beforeId, long floorId, int limit) {
+        if (floorId >= maxArchivedId || limit <= 0) {
+            return List.of();
+        }
+        TreeMap<Long, ChatMessageDTO> found = new TreeMap<>(Comparator.reverseOrder());
+        try {
+            for (MessageSegmentFile segment : segments) {
+                if (segment.getMinId() >= beforeId || segment.getMaxId() <= floorId) {
+                    continue;
+                }
+                long[] range = segment.idRange(conversationId);
+                if (range == null || range[0] >= beforeId || range[1] <= floorId) {
+                    continue;
+                }
+                for (ChatMessageDTO message : segment.readBefore(conversationId, beforeId, floorId, limit)) {
+                    found.put(message.getId(), message);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error leyendo el archivo de mensajes", e);
+        }
+        return found.values().stream().limit(limit).toList();
+    }
+
+    /**
+     * Mensajes archivados de la conversación con afterId &lt; ID &lt; ceilingId.
+     *
+     * @return Hasta limit mensajes, del más antiguo al más reciente.
+     */
+    public List<ChatMessageDTO> readAfter(long conversationId, long afterId, long ceilingId, int limit) {
+        if (afterId >= maxArchivedId || limit <= 0) {
+            return List.of();
+        }
+        TreeMap<Long, ChatMessageDTO> found = new TreeMap<>();
+        try {
+            for (MessageSegmentFile segment : segments) {
+                if (segment.getMaxId() <= afterId || segment.getMinId() >= ceilingId) {
+                    continue;
+                }
+                long[] range = segment.idRange(conversationId);
+                if (range == null || range[1] <= afterId || range[0] >= ceilingId) {
+                    continue;
+                }
+                for (ChatMessageDTO message : segment.readAfter(conversationId, afterId, ceilingId, limit)) {
+                    found.put(message.getId(), message);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error leyendo el archivo de mensajes", e);
+        }
+        return found.values().stream().limit(limit).toList();
+    }
+
+    /**
+     * Busca un mensaje archivado concreto de una conversación.
+     */
+    public ChatMessageDTO find(long conversationId, long messageId) {
+        List<ChatMessageDTO> found = readBefore(conversationId, messageId + 1, messageId - 1, 1);
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    /**
+     * Las lecturas recorren la lista publicada sin bloqueo, así que un segmento sustituido puede
+     * seguir en uso: se cierra en un rescan posterior, pasado RETIRE_GRACE.
+     */
+    private void retire(MessageSegmentFile segment) {
+        retired.add(new Retired(segment, System.nanoTime() + RETIRE_GRACE.toNanos()));
+    }
+
+    private void closeRetired() {
+        long now = System.nanoTime();
+        retired.removeIf(entry -> {
+            if (now - entry.closeAfterNanos() < 0) {
+                return false;
+            }
+            closeQuietly(entry.segment());
+            return true;
+        });
+    }
+
+    private void publish(List<MessageSegmentFile> updated) {
+        updated.sort(Comparator.comparingLong(MessageSegmentFile::getMaxId).reversed());
+        segments = List.copyOf(updated);
+        maxArchivedId = updated.stream().mapToLong(MessageSegmentFile::getMaxId).max().orElse(0L);
+    }
+
+    private static void closeQuietly(MessageSegmentFile segment) {
+        try {
+            segment.close();
+        } catch (IOException e) {
+            log.debug("Error cerrando el segmento {}: {}", segment.getPath(), e.getMessage());
+        }
+    }
+}
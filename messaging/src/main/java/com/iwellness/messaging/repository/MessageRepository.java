@@ -1,15 +1,32 @@
 package com.iwellness.messaging.repository;
 
 import com.iwellness.messaging.entity.Message;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface MessageRepository extends JpaRepository<Message, Long> {
 
+    /**
+     * Filas por viaje a la base de datos al recorrer una conversación con {@link #streamByConversationIdOrderByIdAsc}.
+     */
+    String EXPORT_FETCH_SIZE = "500";
+
     /**
      * Busca todos los mensajes de una conversación específica, ordenados por fecha de envío ascendente.
      * Utilizado en `getConversationDetails` para obtener el historial completo del chat.
@@ -19,6 +36,51 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
      */
     List<Message> findByConversationIdOrderBySentAtAsc(Long conversationId);
 
+    /**
+     * Primera página del historial: los mensajes más recientes de una conversación, del más nuevo al más antiguo.
+     *
+     * @param conversationId El ID de la conversación.
+     * @param limit Número máximo de mensajes a devolver.
+     * @return Una lista de mensajes ordenados por ID descendente.
+     */
+    List<Message> findByConversationIdOrderByIdDesc(Long conversationId, Limit limit);
+
+    /**
+     * Página de mensajes anteriores al cursor (paginación por keyset hacia atrás).
+     *
+     * @param conversationId El ID de la conversación.
+     * @param beforeId ID del mensaje cursor; se devuelven mensajes con ID estrictamente menor.
+     * @param limit Número máximo de mensajes a devolver.
+     * @return Una lista de mensajes ordenados por ID descendente.
+     */
+    List<Message> findByConversationIdAndIdLessThanOrderByIdDesc(Long conversationId, Long beforeId, Limit limit);
+
+    /**
+     * Página de mensajes posteriores al cursor (paginación por keyset hacia adelante).
+     * Se ordena ascendente para tomar los inmediatamente siguientes al cursor.
+     *
+     * @param conversationId El ID de la conversación.
+     * @param afterId ID del mensaje cursor; se devuelven mensajes con ID estrictamente mayor.
+     * @param limit Número máximo de mensajes a devolver.
+     * @return Una lista de mensajes ordenados por ID ascendente.
+     */
+    List<Message> findByConversationIdAndIdGreaterThanOrderByIdAsc(Long conversationId, Long afterId, Limit limit);
+
+    /**
+     * Recorre todos los mensajes de una conversación, del más antiguo al más reciente, con un cursor
+     * de solo avance (en PostgreSQL requiere una transacción abierta). Utilizado en la exportación:
+     * el llamador debe cerrar el stream y separar cada entidad del contexto de persistencia.
+     *
+     * @param conversationId El ID de la conversación.
+     * @return Un stream de mensajes ordenados por ID ascendente.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = EXPORT_FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT m FROM Message m WHERE m.conversation.id = :conversationId ORDER BY m.id ASC")
+    Stream<Message> streamByConversationIdOrderByIdAsc(@Param("conversationId") Long conversationId);
+
     /**
      * Busca el último mensaje enviado en una conversación.
      * Utilizado en `mapToSummaryDTO` para mostrar un avance del último mensaje en la lista de chats.
@@ -38,4 +100,111 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
      */
     long countByConversationIdAndReceiverIdAndIsReadIsFalse(Long conversationId, Long receiverId);
 
+    /**
+     * Marca un mensaje como leído solo si aún no lo estaba (un mensaje leído también queda entregado).
+     * La condición sobre `isRead` hace la transición atómica: si dos lecturas compiten, solo una la aplica.
+     *
+     * @param messageId El ID del mensaje.
+     * @param readAt La fecha de lectura.
+     * @return 1 si el mensaje pasó a leído, 0 si ya estaba leído.
+     */
+    @Modifying
+    @Query("""
+            UPDATE Message m SET m.isRead = true, m.readAt = :readAt, m.deliveredAt = COALESCE(m.deliveredAt, :readAt)
+            WHERE m.id = :messageId AND m.isRead = false
+            """)
+    int markAsReadIfUnread(@Param("messageId") Long messageId, @Param("readAt") LocalDateTime readAt);
+
+    /**
+     * Obtiene el rango de IDs de los mensajes no leídos por un destinatario hasta un mensaje dado.
+     *
+     * @param conversationId El ID de la conversación.
+     * @param receiverId El ID del destinatario.
+     * @param upToMessageId ID del último mensaje a considerar (inclusive).
+     * @return El primer y último ID no leídos; ambos nulos si no hay ninguno.
+     */
+    @Query("""
+            SELECT MIN(m.id) AS firstId, MAX(m.id) AS lastId FROM Message m
+            WHERE m.conversation.id = :conversationId AND m.receiverId = :receiverId
+              AND m.isRead = false AND m.id <= :upToMessageId
+            """)
+    UnreadRange findUnreadRange(@Param("conversationId") Long conversationId,
+                                @Param("receiverId") Long receiverId,
+                                @Param("upToMessageId") Long upToMessageId);
+
+    /**
+     * Marca como leídos, en una sola sentencia, los mensajes no leídos de un destinatario dentro de un rango de IDs.
+     *
+     * @return El número de mensajes que pasaron a leídos.
+     */
+    @Modifying
+    @Query("""
+            UPDATE Message m SET m.isRead = true, m.readAt = :readAt, m.deliveredAt = COALESCE(m.deliveredAt, :readAt)
+            WHERE m.conversation.id = :conversationId AND m.receiverId = :receiverId
+              AND m.isRead = false AND m.id BETWEEN :firstId AND :lastId
+            """)
+    int markRangeAsRead(@Param("conversationId") Long conversationId,
+                        @Param("receiverId") Long receiverId,
+                        @Param("firstId") Long firstId,
+                        @Param("lastId") Long lastId,
+                        @Param("readAt") LocalDateTime readAt);
+
+    /**
+     * Marca como entregados, de entre los IDs dados, los mensajes pendientes de un destinatario en una conversación.
+     *
+     * @return El número de mensajes que pasaron a entregados.
+     */
+    @Modifying
+    @Query("""
+            UPDATE Message m SET m.deliveredAt = :deliveredAt
+            WHERE m.conversation.id = :conversationId AND m.receiverId = :receiverId
+              AND m.deliveredAt IS NULL AND m.id IN :messageIds
+            """)
+    int markDeliveredIn(@Param("conversationId") Long conversationId,
+                        @Param("receiverId") Long receiverId,
+                        @Param("messageIds") Collection<Long> messageIds,
+                        @Param("deliveredAt") LocalDateTime deliveredAt);
+
+    /**
+     * Página de entregas pendientes de un destinatario en todas sus conversaciones, en orden de envío.
+     * Usa el índice parcial de mensajes no entregados.
+     *
+     * @param receiverId El ID del destinatario.
+     * @param afterId Cursor: se devuelven mensajes con ID estrictamente mayor.
+     * @param limit Número máximo de mensajes a devolver.
+     * @return Una lista de mensajes ordenados por ID ascendente.
+     */
+    List<Message> findByReceiverIdAndDeliveredAtIsNullAndIdGreaterThanOrderByIdAsc(Long receiverId, Long afterId,
+                                                                                   Limit limit);
+
+    /**
+     * Mensajes pendientes de entrega para un destinatario entre los IDs dados (los que el cliente
+     * recibió), en orden de ID. Se bloquean hasta el final de la transacción para que la
+     * confirmación liste exactamente los mensajes que pasan a entregados.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("""
+            SELECT m.id AS id, m.conversation.id AS conversationId FROM Message m
+            WHERE m.receiverId = :receiverId AND m.deliveredAt IS NULL AND m.id IN :messageIds
+            ORDER BY m.id
+            """)
+    List<PendingMessage> findPendingIn(@Param("receiverId") Long receiverId,
+                                       @Param("messageIds") Collection<Long> messageIds);
+
+    /**
+     * Mensaje pendiente de entrega (proyección de `findPendingIn`).
+     */
+    interface PendingMessage {
+        Long getId();
+        Long getConversationId();
+    }
+
+    /**
+     * Rango de IDs de mensajes (proyección de `findUnreadRange`).
+     */
+    interface UnreadRange {
+        Long getFirstId();
+        Long getLastId();
+    }
+
 }
@@ -0,0 +1,446 @@
+package com.iwellness.messaging.repository;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.iwellness.messaging.dto.ChatMessageDTO;
+
+/**
+ * Fichero de segmento del archivo frío: los mensajes de un mes, inmutable una vez escrito.
+ * <pre>
+ * cabecera  MAGIC
+ * bloques   registros ordenados por (conversación, ID), comprimidos con Deflate por bloques
+ * índice    una entrada de tamaño fijo por conversación, ordenado por ID de conversación
+ * tabla     desplazamiento y tamaños de cada bloque
+ * pie       posiciones del índice y la tabla, rango de IDs, número de mensajes y MAGIC
+ * </pre>
+ * El índice se proyecta en memoria (mmap) y se consulta por búsqueda binaria, sin ocupar heap;
+ * una lectura solo descomprime los bloques de la conversación pedida.
+ */
+public final class MessageSegmentFile implements Closeable {
+
+    private static final byte[] MAGIC = "IWMSEG01".getBytes(StandardCharsets.US_ASCII);
+    // conversationId, firstBlock, lastBlock, count, minId, maxId
+    private static final int INDEX_ENTRY_SIZE = 8 + 4 + 4 + 4 + 8 + 8;
+    // offset, compressedLength, rawLength
+    private static final int BLOCK_ENTRY_SIZE = 8 + 4 + 4;
+    // indexOffset, blockTableOffset, minId, maxId, messageCount, MAGIC
+    private static final int FOOTER_SIZE = 8 + 8 + 8 + 8 + 4 + 8;
+    private static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer index;
+    private final MappedByteBuffer blockTable;
+    private final int conversations;
+    private final long minId;
+    private final long maxId;
+    private final int messageCount;
+
+    private MessageSegmentFile(Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < MAGIC.length + FOOTER_SIZE) {
+                throw new IOException("Segmento truncado: " + path);
+            }
+            ByteBuffer footer = ByteBuffer.allocate(FOOTER_SIZE);
+            channel.read(footer, size - FOOTER_SIZE);
+            footer.flip();
+            long indexOffset = footer.getLong();
+            long blockTableOffset = footer.getLong();
+            this.minId = footer.getLong();
+            this.maxId = footer.getLong();
+            this.messageCount = footer.getInt();
+            byte[] magic = new byte[MAGIC.length];
+            footer.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("No es un segmento de mensajes: " + path);
+            }
+            this.index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, blockTableOffset - indexOffset);
+            this.blockTable = channel.map(FileChannel.MapMode.READ_ONLY, blockTableOffset,
+                    size - FOOTER_SIZE - blockTableOffset);
+            this.conversations = index.capacity() / INDEX_ENTRY_SIZE;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Abre un segmento existente para lectura.
+     */
+    public static MessageSegmentFile open(Path path) throws IOException {
+        return new MessageSegmentFile(path);
+    }
+
+    /**
+     * Crea un escritor que genera el segmento en un fichero temporal y lo publica al terminar.
+     *
+     * @param path La ruta final del segmento.
+     * @param blockSize Tamaño aproximado (sin comprimir) de cada bloque.
+     */
+    public static Writer writer(Path path, int blockSize) throws IOException {
+        return new Writer(path, blockSize);
+    }
+
+    public Path getPath() { return path; }
+    public long getMinId() { return minId; }
+    public long getMaxId() { return maxId; }
+    public int getMessageCount() { return messageCount; }
+
+    /**
+     * @return El rango de IDs de la conversación en este segmento, o null si no tiene mensajes aquí.
+     */
+    public long[] idRange(long conversationId) {
+        int entry = findEntry(conversationId);
+        if (entry < 0) {
+            return null;
+        }
+        int position = entry * INDEX_ENTRY_SIZE;
+        return new long[] {index.getLong(position + 20), index.getLong(position + 28)};
+    }
+
+    /**
+     * Mensajes de la conversación con floorId &lt; ID &lt; beforeId, del más reciente al más antiguo.
+     */
+    public List<ChatMessageDTO> readBefore(long conversationId, long beforeId, long floorId, int limit)
+            throws IOException {
+        int entry = findEntry(conversationId);
+        if (entry < 0) {
+            return List.of();
+        }
+        int position = entry * INDEX_ENTRY_SIZE;
+        int firstBlock = index.getInt(position + 8);
+        int lastBlock = index.getInt(position + 12);
+        List<ChatMessageDTO> result = new ArrayList<>();
+        for (int block = lastBlock; block >= firstBlock && result.size() < limit; block--) {
+            List<ChatMessageDTO> matches = new ArrayList<>();
+            for (ChatMessageDTO message : readBlock(block)) {
+                if (message.getConversationId() == conversationId
+                        && message.getId() < beforeId && message.getId() > floorId) {
+                    matches.add(message);
+                }
+            }
+            Collections.reverse(matches);
+            result.addAll(matches.subList(0, Math.min(matches.size(), limit - result.size())));
+        }
+        return result;
+    }
+
+    /**
+     * Mensajes de la conversación con afterId &lt; ID &lt; ceilingId, del más antiguo al más reciente.
+     */
+    public List<ChatMessageDTO> readAfter(long conversationId, long afterId, long ceilingId, int limit)
+            throws IOException {
+        int entry = findEntry(conversationId);
+        if (entry < 0) {
+            return List.of();
+        }
+        int position = entry * INDEX_ENTRY_SIZE;
+        int firstBlock = index.getInt(position + 8);
+        int lastBlock = index.getInt(position + 12);
+        List<ChatMessageDTO> result = new ArrayList<>();
+        for (int block = firstBlock; block <= lastBlock && result.size() < limit; block++) {
+            for (ChatMessageDTO message : readBlock(block)) {
+                if (message.getConversationId() == conversationId
+                        && message.getId() > afterId && message.getId() < ceilingId && result.size() < limit) {
+                    result.add(message);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private int findEntry(long conversationId) {
+        int low = 0;
+        int high = conversations - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long current = index.getLong(middle * INDEX_ENTRY_SIZE);
+            if (current < conversationId) {
+                low = middle + 1;
+            } else if (current > conversationId) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private List<ChatMessageDTO> readBlock(int block) throws IOException {
+        int position = block * BLOCK_ENTRY_SIZE;
+        long offset = blockTable.getLong(position);
+        int compressedLength = blockTable.getInt(position + 8);
+        int rawLength = blockTable.getInt(position + 12);
+
+        ByteBuffer compressed = ByteBuffer.allocate(compressedLength);
+        while (compressed.hasRemaining()) {
+            if (channel.read(compressed, offset + compressed.position()) < 0) {
+                throw new IOException("Segmento truncado: " + path);
+            }
+        }
+        byte[] raw = new byte[rawLength];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed.array());
+            int read = 0;
+            while (read < rawLength && !inflater.finished()) {
+                read += inflater.inflate(raw, read, rawLength - read);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Bloque corrupto en " + path, e);
+        } finally {
+            inflater.end();
+        }
+
+        List<ChatMessageDTO> messages = new ArrayList<>();
+        DataInputStream in = new DataInputStream(new java.io.ByteArrayInputStream(raw));
+        while (in.available() > 0) {
+            messages.add(readRecord(in));
+        }
+        return messages;
+    }
+
+    private static ChatMessageDTO readRecord(DataInputStream in) throws IOException {
+        ChatMessageDTO message = ChatMessageDTO.builder()
+                .id(in.readLong())
+                .conversationId(in.readLong())
+                .senderId(in.readLong())
+                .receiverId(in.readLong())
+                .isRead(in.readBoolean())
+                .readAt(fromMicros(in.readLong()))
+                .deliveredAt(fromMicros(in.readLong()))
+                .sentAt(fromMicros(in.readLong()))
+                .build();
+        byte[] content = new byte[in.readInt()];
+        in.readFully(content);
+        message.setContent(new String(content, StandardCharsets.UTF_8));
+        return message;
+    }
+
+    private static long toMicros(LocalDateTime timestamp) {
+        if (timestamp == null) {
+            return NO_TIMESTAMP;
+        }
+        return timestamp.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + timestamp.getNano() / 1_000;
+    }
+
+    private static LocalDateTime fromMicros(long micros) {
+        if (micros == NO_TIMESTAMP) {
+            return null;
+        }
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000L),
+                (int) Math.floorMod(micros, 1_000_000L) * 1_000, ZoneOffset.UTC);
+    }
+
+    /**
+     * Escritor de un segmento. Los mensajes deben añadirse ordenados por (conversación, ID).
+     * El fichero se escribe junto al destino con extensión .tmp y se mueve de forma atómica en
+     * {@link #finish()}; si no se llega a terminar, {@link #close()} lo elimina.
+     */
+    public static final class Writer implements Closeable {
+
+        private final Path path;
+        private final Path tempPath;
+        private final int blockSize;
+        private final FileOutputStream file;
+        private final CountingOutputStream out;
+        private final ByteArrayOutputStream block;
+        private final DataOutputStream blockOut;
+        private final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        private final ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+        private final DataOutputStream indexOut = new DataOutputStream(indexBytes);
+        private final ByteArrayOutputStream blockTableBytes = new ByteArrayOutputStream();
+        private final DataOutputStream blockTableOut = new DataOutputStream(blockTableBytes);
+
+        private int blocks;
+        private long conversationId = Long.MIN_VALUE;
+        private int conversationFirstBlock;
+        private int conversationCount;
+        private long conversationMinId;
+        private long conversationMaxId;
+        private long lastId = Long.MIN_VALUE;
+        private long minId = Long.MAX_VALUE;
+        private long maxId = Long.MIN_VALUE;
+        private int messageCount;
+        private boolean finished;
+
+        private Writer(Path path, int blockSize) throws IOException {
+            this.path = path;
+            this.tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+            this.blockSize = blockSize;
+            this.file = new FileOutputStream(tempPath.toFile());
+            this.out = new CountingOutputStream(new BufferedOutputStream(file));
+            this.block = new ByteArrayOutputStream(blockSize + 8192);
+            this.blockOut = new DataOutputStream(block);
+            out.write(MAGIC);
+        }
+
+        public void append(ChatMessageDTO message) throws IOException {
+            long id = message.getId();
+            if (message.getConversationId() != conversationId) {
+                if (message.getConversationId() < conversationId) {
+                    throw new IllegalArgumentException("Los mensajes deben estar ordenados por conversación");
+                }
+                closeConversation();
+                conversationId = message.getConversationId();
+                conversationFirstBlock = blocks;
+                conversationMinId = id;
+            } else if (id <= lastId) {
+                throw new IllegalArgumentException("Los mensajes deben estar ordenados por ID");
+            }
+
+            blockOut.writeLong(id);
+            blockOut.writeLong(message.getConversationId());
+            blockOut.writeLong(message.getSenderId());
+            blockOut.writeLong(message.getReceiverId());
+            blockOut.writeBoolean(Boolean.TRUE.equals(message.getIsRead()));
+            blockOut.writeLong(toMicros(message.getReadAt()));
+            blockOut.writeLong(toMicros(message.getDeliveredAt()));
+            blockOut.writeLong(toMicros(message.getSentAt()));
+            byte[] content = message.getContent().getBytes(StandardCharsets.UTF_8);
+            blockOut.writeInt(content.length);
+            blockOut.write(content);
+
+            lastId = id;
+            conversationMaxId = id;
+            conversationCount++;
+            minId = Math.min(minId, id);
+            maxId = Math.max(maxId, id);
+            messageCount++;
+            if (block.size() >= blockSize) {
+                flushBlock();
+            }
+        }
+
+        /**
+         * Escribe índice, tabla de bloques y pie, sincroniza el fichero con el disco y lo publica.
+         *
+         * @return El número de mensajes escritos.
+         */
+        public int finish() throws IOException {
+            flushBlock();
+            closeConversation();
+            long indexOffset = out.count();
+            indexBytes.writeTo(out);
+            long blockTableOffset = out.count();
+            blockTableBytes.writeTo(out);
+            DataOutputStream footer = new DataOutputStream(out);
+            footer.writeLong(indexOffset);
+            footer.writeLong(blockTableOffset);
+            footer.writeLong(messageCount > 0 ? minId : 0L);
+            footer.writeLong(messageCount > 0 ? maxId : 0L);
+            footer.writeInt(messageCount);
+            footer.write(MAGIC);
+            footer.flush();
+            file.getFD().sync();
+            out.close();
+            Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            finished = true;
+            return messageCount;
+        }
+
+        @Override
+        public void close() throws IOException {
+            deflater.end();
+            if (!finished) {
+                out.close();
+                Files.deleteIfExists(tempPath);
+            }
+        }
+
+        private void closeConversation() throws IOException {
+            if (conversationCount == 0) {
+                return;
+            }
+            // El bloque actual aún no se ha escrito si tiene datos: su índice es el número de bloques escritos
+            int lastBlock = block.size() > 0 ? blocks : blocks - 1;
+            indexOut.writeLong(conversationId);
+            indexOut.writeInt(conversationFirstBlock);
+            indexOut.writeInt(lastBlock);
+            indexOut.writeInt(conversationCount);
+            indexOut.writeLong(conversationMinId);
+            indexOut.writeLong(conversationMaxId);
+            conversationCount = 0;
+        }
+
+        private void flushBlock() throws IOException {
+            if (block.size() == 0) {
+                return;
+            }
+            byte[] raw = block.toByteArray();
+            deflater.reset();
+            deflater.setInput(raw);
+            deflater.finish();
+            long offset = out.count();
+            byte[] buffer = new byte[8192];
+            int compressedLength = 0;
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                out.write(buffer, 0, length);
+                compressedLength += length;
+            }
+            blockTableOut.writeLong(offset);
+            blockTableOut.writeInt(compressedLength);
+            blockTableOut.writeInt(raw.length);
+            blocks++;
+            block.reset();
+        }
+    }
+
+    private static final class CountingOutputStream extends java.io.FilterOutputStream {
+
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        long count() {
+            return count;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
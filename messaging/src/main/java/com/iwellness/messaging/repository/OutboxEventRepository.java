@@ -0,0 +1,30 @@
+package com.iwellness.messaging.repository;
+
+import java.util.List;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.stereotype.Repository;
+
+import com.iwellness.messaging.entity.OutboxEvent;
+
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+
+    /**
+     * Toma el siguiente lote de eventos con el estado dado en orden de inserción, bloqueándolos.
+     * Las filas ya bloqueadas por otra réplica se saltan (SKIP LOCKED donde la base lo soporta),
+     * así varias instancias pueden drenar el outbox sin publicar dos veces el mismo lote.
+     * El relay pide solo los PENDING: los aparcados no vuelven a intentarse.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    List<OutboxEvent> findAllByStatusOrderByIdAsc(OutboxEvent.Status status, Limit limit);
+
+    long countByStatus(OutboxEvent.Status status);
+}
@@ -0,0 +1,51 @@
+package com.iwellness.messaging.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.iwellness.messaging.entity.SyncChange;
+
+@Repository
+public interface SyncChangeRepository extends JpaRepository<SyncChange, Long> {
+
+    /**
+     * Cambios de un usuario con afterId &lt; ID &lt;= upToId, en orden de registro.
+     * Usa el índice (user_id, id): el coste depende de lo que cambió, no del historial.
+     */
+    List<SyncChange> findByUserIdAndIdGreaterThanAndIdLessThanEqualOrderByIdAsc(Long userId, Long afterId, Long upToId,
+                                                                                Limit limit);
+
+    /**
+     * IDs registrados después de afterId, de todos los usuarios, para avanzar la marca de agua.
+     */
+    @Query("SELECT s.id FROM SyncChange s WHERE s.id > :afterId ORDER BY s.id ASC")
+    List<Long> findIdsAfter(@Param("afterId") Long afterId, Limit limit);
+
+    /**
+     * El mayor ID registrado antes de una fecha (punto de partida de la marca de agua al arrancar).
+     */
+    @Query("SELECT MAX(s.id) FROM SyncChange s WHERE s.createdAt < :before")
+    Long findMaxIdCreatedBefore(@Param("before") LocalDateTime before);
+
+    /**
+     * El menor ID registrado (estado inicial de la marca de purga en H2).
+     */
+    @Query("SELECT MIN(s.id) FROM SyncChange s")
+    Long findMinId();
+
+    /**
+     * Elimina los cambios más antiguos que la retención configurada.
+     *
+     * @return El número de filas eliminadas.
+     */
+    @Modifying
+    @Query("DELETE FROM SyncChange s WHERE s.createdAt < :before")
+    int deleteCreatedBefore(@Param("before") LocalDateTime before);
+}
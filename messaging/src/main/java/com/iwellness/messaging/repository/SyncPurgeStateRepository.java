@@ -0,0 +1,28 @@
+package com.iwellness.messaging.repository;
+
+import java.time.LocalDateTime;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.iwellness.messaging.entity.SyncPurgeState;
+
+@Repository
+public interface SyncPurgeStateRepository extends JpaRepository<SyncPurgeState, Integer> {
+
+    @Query("SELECT s.purgedBefore FROM SyncPurgeState s WHERE s.id = " + SyncPurgeState.SINGLETON_ID)
+    Long findPurgedBefore();
+
+    /**
+     * Adelanta la marca de purga; nunca la retrocede (dos réplicas pueden purgar a la vez).
+     *
+     * @return El número de filas actualizadas (0 si la marca ya era mayor o igual).
+     */
+    @Modifying
+    @Query("UPDATE SyncPurgeState s SET s.purgedBefore = :purgedBefore, s.purgedAt = :purgedAt"
+            + " WHERE s.id = " + SyncPurgeState.SINGLETON_ID + " AND s.purgedBefore < :purgedBefore")
+    int advancePurgedBefore(@Param("purgedBefore") long purgedBefore, @Param("purgedAt") LocalDateTime purgedAt);
+}
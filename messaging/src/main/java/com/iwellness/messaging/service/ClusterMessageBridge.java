@@ -0,0 +1,234 @@
+package com.iwellness.messaging.service;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.iwellness.messaging.config.AppProperties;
+import com.iwellness.messaging.dto.ClusterDeliveryDTO;
+import com.iwellness.messaging.dto.PresenceUpdateDTO;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Modo clúster ligero sobre un exchange propio (app.websocket.cluster.exchange). Cada nodo mantiene su
+ * broker simple y una cola propia; las entregas a usuarios conectados en otro nodo se
+ * publican con la clave de ese nodo y se reinyectan allí como convertAndSendToUser.
+ * La presencia se difunde con anuncios incrementales y una instantánea periódica.
+ * Con el broker relay (app.websocket.broker.mode=relay) no se activa: el broker externo ya reparte.
+ * Las entregas se publican desde un ejecutor propio con cola acotada, de modo que un broker lento
+ * o caído no bloquea los hilos del canal de entrada STOMP; lo que no cabe en la cola se descarta
+ * y se cuenta en messaging.cluster.delivery.dropped.
+ */
+@Slf4j
+@Service
+@ConditionalOnExpression(ClusterMessageBridge.ENABLED)
+public class ClusterMessageBridge {
+
+    public static final String ENABLED = "${app.websocket.cluster.enabled:false}"
+            + " and !'${app.websocket.broker.mode:simple}'.equalsIgnoreCase('relay')";
+
+    static final String TYPE_HEADER = "x-cluster-type";
+    static final String TYPE_DELIVERY = "delivery";
+    static final String TYPE_PRESENCE = "presence";
+
+    private final RabbitTemplate rabbitTemplate;
+    private final ObjectMapper objectMapper;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final PresenceRegistry presenceRegistry;
+    private final String exchange;
+    private final String routingKeyPrefix;
+    private final String deliveryExpiration;
+    private final String presenceExpiration;
+
+    private final Counter forwarded;
+    private final Counter received;
+    private final Counter failed;
+    private final Counter dropped;
+    private final Timer deliveryLatency;
+    private final ThreadPoolExecutor forwardExecutor;
+
+    public ClusterMessageBridge(ConnectionFactory connectionFactory, ObjectMapper objectMapper,
+                                SimpMessagingTemplate messagingTemplate, PresenceRegistry presenceRegistry,
+                                AppProperties appProperties, MeterRegistry meterRegistry) {
+        // Plantilla propia sin reintentos: una entrega entre nodos caducada no vale la pena;
+        // el cliente se resincroniza al reconectar
+        this.rabbitTemplate = new RabbitTemplate(connectionFactory);
+        this.objectMapper = objectMapper;
+        this.messagingTemplate = messagingTemplate;
+        this.presenceRegistry = presenceRegistry;
+        AppProperties.Cluster cluster = appProperties.getWebsocket().getCluster();
+        this.exchange = cluster.getExchange();
+        this.routingKeyPrefix = cluster.getRoutingKeyPrefix();
+        this.deliveryExpiration = String.valueOf(cluster.getDeliveryTtl().toMillis());
+        this.presenceExpiration = String.valueOf(cluster.getPresenceTtl().toMillis());
+
+        this.forwarded = Counter.builder("messaging.cluster.delivery.forwarded")
+                .description("Entregas publicadas hacia otros nodos")
+                .register(meterRegistry);
+        this.received = Counter.builder("messaging.cluster.delivery.received")
+                .description("Entregas recibidas de otros nodos")
+                .register(meterRegistry);
+        this.failed = Counter.builder("messaging.cluster.delivery.failed")
+                .description("Entregas que no pudieron publicarse en el exchange")
+                .register(meterRegistry);
+        this.dropped = Counter.builder("messaging.cluster.delivery.dropped")
+                .description("Entregas descartadas por tener llena la cola de publicación")
+                .register(meterRegistry);
+        this.deliveryLatency = Timer.builder("messaging.cluster.delivery.latency")
+                .description("Tiempo entre la publicación en el nodo de origen y la entrega local en el destino")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+
+        this.forwardExecutor = new ThreadPoolExecutor(cluster.getForwardThreads(), cluster.getForwardThreads(),
+                60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(cluster.getForwardQueueCapacity()),
+                new CustomizableThreadFactory("cluster-forward-"), new ThreadPoolExecutor.AbortPolicy());
+        meterRegistry.gauge("messaging.cluster.delivery.queued", forwardExecutor, e -> e.getQueue().size());
+
+        log.info("Modo clúster activo: nodo {} en el exchange {}", presenceRegistry.getNodeId(), exchange);
+    }
+
+    public static String nodeRoutingKey(String routingKeyPrefix, String nodeId) {
+        return routingKeyPrefix + ".node." + nodeId;
+    }
+
+    public static String presenceRoutingKey(String routingKeyPrefix) {
+        return routingKeyPrefix + ".presence";
+    }
+
+    /**
+     * Reenvía una entrega a los nodos donde el usuario tiene sesión. El cuerpo se serializa una sola vez
+     * en el hilo llamante; la publicación se hace en el ejecutor del clúster y, si su cola está llena,
+     * la entrega se descarta.
+     */
+    public void forward(Collection<String> nodes, String user, String destination, Object payload) {
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(ClusterDeliveryDTO.builder()
+                    .originNodeId(presenceRegistry.getNodeId())
+                    .user(user)
+                    .destination(destination)
+                    .payload(objectMapper.valueToTree(payload))
+                    .sentAt(System.currentTimeMillis())
+                    .build());
+        } catch (Exception e) {
+            failed.increment();
+            log.error("Error al serializar la entrega para el usuario {}: {}", user, e.getMessage());
+            return;
+        }
+        List<String> targets = List.copyOf(nodes);
+        try {
+            forwardExecutor.execute(() -> publish(targets, user, body));
+        } catch (RejectedExecutionException e) {
+            dropped.increment(targets.size());
+            log.warn("Cola de reenvío del clúster llena: se descarta la entrega para el usuario {}", user);
+        }
+    }
+
+    private void publish(List<String> nodes, String user, byte[] body) {
+        for (String node : nodes) {
+            try {
+                rabbitTemplate.send(exchange, nodeRoutingKey(routingKeyPrefix, node),
+                        toAmqpMessage(body, TYPE_DELIVERY, deliveryExpiration));
+                forwarded.increment();
+            } catch (Exception e) {
+                failed.increment();
+                log.error("Error al reenviar entrega para el usuario {} al nodo {}: {}", user, node, e.getMessage());
+            }
+        }
+    }
+
+    @RabbitListener(queues = "#{@clusterNodeQueue.name}")
+    public void onClusterMessage(Message message) throws Exception {
+        Object type = message.getMessageProperties().getHeader(TYPE_HEADER);
+        if (TYPE_DELIVERY.equals(type)) {
+            ClusterDeliveryDTO delivery = objectMapper.readValue(message.getBody(), ClusterDeliveryDTO.class);
+            messagingTemplate.convertAndSendToUser(delivery.getUser(), delivery.getDestination(), delivery.getPayload());
+            received.increment();
+            deliveryLatency.record(Math.max(0, System.currentTimeMillis() - delivery.getSentAt()), TimeUnit.MILLISECONDS);
+        } else if (TYPE_PRESENCE.equals(type)) {
+            PresenceUpdateDTO update = objectMapper.readValue(message.getBody(), PresenceUpdateDTO.class);
+            if (presenceRegistry.getNodeId().equals(update.getNodeId())) {
+                return;
+            }
+            presenceRegistry.applyRemoteUpdate(update);
+            // Un nodo nuevo necesita conocer a los demás sin esperar a la siguiente instantánea
+            if ("HELLO".equals(update.getType())) {
+                publishPresence("SNAPSHOT", presenceRegistry.getLocalUsers());
+            }
+        } else {
+            log.warn("Mensaje de clúster sin tipo reconocido: {}", type);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void announce() {
+        publishPresence("HELLO", presenceRegistry.getLocalUsers());
+    }
+
+    @EventListener
+    public void onPresenceChanged(PresenceRegistry.PresenceChangedEvent event) {
+        publishPresence(event.online() ? "ONLINE" : "OFFLINE", List.of(event.user()));
+    }
+
+    @Scheduled(fixedDelayString = "#{@appProperties.websocket.cluster.presenceInterval.toMillis()}")
+    public void publishSnapshot() {
+        presenceRegistry.evictStaleNodes();
+        publishPresence("SNAPSHOT", presenceRegistry.getLocalUsers());
+    }
+
+    @PreDestroy
+    public void leave() {
+        forwardExecutor.shutdown();
+        try {
+            forwardExecutor.awaitTermination(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        publishPresence("LEAVE", List.of());
+    }
+
+    private void publishPresence(String type, List<String> users) {
+        try {
+            byte[] body = objectMapper.writeValueAsBytes(PresenceUpdateDTO.builder()
+                    .nodeId(presenceRegistry.getNodeId())
+                    .type(type)
+                    .users(users)
+                    .timestamp(System.currentTimeMillis())
+                    .build());
+            rabbitTemplate.send(exchange, presenceRoutingKey(routingKeyPrefix),
+                    toAmqpMessage(body, TYPE_PRESENCE, presenceExpiration));
+        } catch (Exception e) {
+            log.warn("No se pudo publicar la presencia {} del nodo: {}", type, e.getMessage());
+        }
+    }
+
+    private static Message toAmqpMessage(byte[] body, String type, String expiration) {
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+        properties.setHeader(TYPE_HEADER, type);
+        properties.setExpiration(expiration);
+        return new Message(body, properties);
+    }
+}
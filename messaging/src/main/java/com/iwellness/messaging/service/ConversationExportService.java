@@ -0,0 +1,318 @@
+package com.iwellness.messaging.service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.iwellness.messaging.dto.ChatMessageDTO;
+import com.iwellness.messaging.entity.Conversation;
+import com.iwellness.messaging.entity.Message;
+import com.iwellness.messaging.repository.ConversationRepository;
+import com.iwellness.messaging.repository.MessageArchiveRepository;
+import com.iwellness.messaging.repository.MessageRepository;
+
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Exportación completa de una conversación (NDJSON o CSV) escrita directamente en la respuesta.
+ * Los mensajes de PostgreSQL se leen con un cursor de solo avance de
+ * {@value MessageRepository#EXPORT_FETCH_SIZE} filas y los del archivo frío en páginas del mismo
+ * tamaño; ambos niveles se mezclan por ID, así que la memoria no depende de la longitud del historial.
+ */
+@Slf4j
+@Service
+public class ConversationExportService {
+
+    private static final int FETCH_SIZE = Integer.parseInt(MessageRepository.EXPORT_FETCH_SIZE);
+
+    private static final String CSV_HEADER =
+            "id,conversation_id,sender_id,receiver_id,sent_at,delivered_at,read_at,is_read,content\r\n";
+
+    /**
+     * Formatos de exportación admitidos.
+     */
+    public enum Format {
+        NDJSON("application/x-ndjson", "ndjson"),
+        CSV("text/csv;charset=UTF-8", "csv");
+
+        private final String mediaType;
+        private final String extension;
+
+        Format(String mediaType, String extension) {
+            this.mediaType = mediaType;
+            this.extension = extension;
+        }
+
+        public String getMediaType() { return mediaType; }
+        public String getExtension() { return extension; }
+
+        /**
+         * @return El formato con ese nombre (sin distinguir mayúsculas), o null si no existe.
+         */
+        public static Format from(String name) {
+            for (Format format : values()) {
+                if (format.name().equals(name.toUpperCase(Locale.ROOT))) {
+                    return format;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final ConversationRepository conversationRepository;
+    private final MessageRepository messageRepository;
+    private final MessageArchiveRepository messageArchive;
+    private final EntityManager entityManager;
+    private final ObjectWriter jsonWriter;
+    private final TransactionTemplate readOnlyTemplate;
+
+    public ConversationExportService(ConversationRepository conversationRepository,
+                                     MessageRepository messageRepository,
+                                     MessageArchiveRepository messageArchive,
+                                     EntityManager entityManager,
+                                     ObjectMapper objectMapper,
+                                     PlatformTransactionManager transactionManager) {
+        this.conversationRepository = conversationRepository;
+        this.messageRepository = messageRepository;
+        this.messageArchive = messageArchive;
+        this.entityManager = entityManager;
+        // Se vuelca al llenarse el buffer del generador, no tras cada mensaje
+        this.jsonWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.readOnlyTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTemplate.setReadOnly(true);
+    }
+
+    /**
+     * Valida el acceso y prepara la exportación. La comprobación se hace ya, en el hilo de la
+     * petición; la lectura y la escritura ocurren después, al enviar la respuesta.
+     *
+     * @param conversationId El ID de la conversación a exportar.
+     * @param userId El ID del usuario que exporta (debe ser participante).
+     * @param format El formato de salida.
+     * @return El cuerpo de la respuesta, que escribe los mensajes del más antiguo al más reciente.
+     */
+    public StreamingResponseBody export(Long conversationId, Long userId, Format format) {
+        Conversation conversation = conversationRepository.findById(conversationId)
+                .orElseThrow(() -> new RuntimeException("Conversation not found with id: " + conversationId));
+
+        if (!conversation.getUser1Id().equals(userId) && !conversation.getUser2Id().equals(userId)) {
+            throw new SecurityException("User is not a participant of this conversation.");
+        }
+
+        log.info("Exporting conversation {} as {} for user {}", conversationId, format, userId);
+        return out -> {
+            long started = System.nanoTime();
+            long count = write(conversationId, format == Format.CSV ? new CsvExportWriter(out) : new NdjsonExportWriter(out));
+            log.info("Exported {} messages of conversation {} in {} ms",
+                    count, conversationId, (System.nanoTime() - started) / 1_000_000);
+        };
+    }
+
+    private long write(long conversationId, ExportWriter writer) throws IOException {
+        try {
+            Long count = readOnlyTemplate.execute(status -> {
+                try (Stream<Message> stream = messageRepository.streamByConversationIdOrderByIdAsc(conversationId)) {
+                    return merge(conversationId, stream.iterator(), new ArchiveCursor(conversationId), writer);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            writer.finish();
+            return count != null ? count : 0L;
+        } catch (UncheckedIOException e) {
+            // Normalmente el cliente cerró la conexión a mitad de la descarga
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Mezcla por ID los mensajes de PostgreSQL y los del archivo; si un mensaje está en ambos
+     * niveles (mientras se archiva su partición), prima el de PostgreSQL.
+     */
+    private long merge(long conversationId, Iterator<Message> hot, ArchiveCursor archived,
+                       ExportWriter writer) throws IOException {
+        long count = 0;
+        ChatMessageDTO cold = archived.poll();
+        while (hot.hasNext()) {
+            Message message = hot.next();
+            while (cold != null && cold.getId() < message.getId()) {
+                writer.write(cold);
+                count++;
+                cold = archived.poll();
+            }
+            if (cold != null && cold.getId().equals(message.getId())) {
+                cold = archived.poll();
+            }
+            writer.write(toDTO(message, conversationId));
+            count++;
+            // El contexto de persistencia no debe crecer con el historial
+            entityManager.detach(message);
+        }
+        while (cold != null) {
+            writer.write(cold);
+            count++;
+            cold = archived.poll();
+        }
+        return count;
+    }
+
+    private static ChatMessageDTO toDTO(Message message, long conversationId) {
+        return ChatMessageDTO.builder()
+                .id(message.getId())
+                .conversationId(conversationId)
+                .senderId(message.getSenderId())
+                .receiverId(message.getReceiverId())
+                .content(message.getContent())
+                .isRead(message.getIsRead())
+                .readAt(message.getReadAt())
+                .deliveredAt(message.getDeliveredAt())
+                .sentAt(message.getSentAt())
+                .build();
+    }
+
+    /**
+     * Recorre los mensajes archivados de una conversación en páginas ascendentes de FETCH_SIZE.
+     */
+    private final class ArchiveCursor {
+
+        private final long conversationId;
+        private long lastId;
+        private Iterator<ChatMessageDTO> page = Collections.emptyIterator();
+        private boolean exhausted;
+
+        ArchiveCursor(long conversationId) {
+            this.conversationId = conversationId;
+        }
+
+        ChatMessageDTO poll() {
+            if (!page.hasNext() && !exhausted) {
+                List<ChatMessageDTO> next = messageArchive.readAfter(conversationId, lastId, Long.MAX_VALUE, FETCH_SIZE);
+                exhausted = next.size() < FETCH_SIZE;
+                page = next.iterator();
+            }
+            if (!page.hasNext()) {
+                return null;
+            }
+            ChatMessageDTO message = page.next();
+            lastId = message.getId();
+            return message;
+        }
+    }
+
+    private interface ExportWriter {
+        void write(ChatMessageDTO message) throws IOException;
+
+        void finish() throws IOException;
+    }
+
+    /**
+     * Un objeto JSON de {@link ChatMessageDTO} por línea.
+     */
+    private final class NdjsonExportWriter implements ExportWriter {
+
+        private final JsonGenerator generator;
+
+        NdjsonExportWriter(OutputStream out) throws IOException {
+            this.generator = jsonWriter.getFactory().createGenerator(out);
+            // El stream de la respuesta lo cierra el contenedor
+            this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            // Sin separador entre valores raíz (por defecto un espacio, que quedaría al inicio de cada línea)
+            this.generator.setPrettyPrinter(new MinimalPrettyPrinter(""));
+        }
+
+        @Override
+        public void write(ChatMessageDTO message) throws IOException {
+            jsonWriter.writeValue(generator, message);
+            generator.writeRaw('\n');
+        }
+
+        @Override
+        public void finish() throws IOException {
+            generator.close();
+        }
+    }
+
+    /**
+     * CSV según RFC 4180 (UTF-8, fin de línea CRLF, campos entre comillas solo cuando hace falta).
+     * Los contenidos que empiezan por =, +, -, @, tabulador o retorno de carro se prefijan con '.
+     */
+    private static final class CsvExportWriter implements ExportWriter {
+
+        private static final String FORMULA_PREFIXES = "=+-@\t\r";
+
+        private final Writer writer;
+
+        CsvExportWriter(OutputStream out) throws IOException {
+            this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 16 * 1024);
+            this.writer.write(CSV_HEADER);
+        }
+
+        @Override
+        public void write(ChatMessageDTO message) throws IOException {
+            writer.write(String.valueOf(message.getId()));
+            writer.write(',');
+            writer.write(String.valueOf(message.getConversationId()));
+            writer.write(',');
+            writer.write(String.valueOf(message.getSenderId()));
+            writer.write(',');
+            writer.write(String.valueOf(message.getReceiverId()));
+            writer.write(',');
+            writer.write(valueOrEmpty(message.getSentAt()));
+            writer.write(',');
+            writer.write(valueOrEmpty(message.getDeliveredAt()));
+            writer.write(',');
+            writer.write(valueOrEmpty(message.getReadAt()));
+            writer.write(',');
+            writer.write(valueOrEmpty(message.getIsRead()));
+            writer.write(',');
+            writeQuoted(message.getContent());
+            writer.write("\r\n");
+        }
+
+        @Override
+        public void finish() throws IOException {
+            writer.flush();
+        }
+
+        private void writeQuoted(String value) throws IOException {
+            if (value == null) {
+                return;
+            }
+            // Evita que una hoja de cálculo interprete el contenido como fórmula (CSV injection)
+            if (!value.isEmpty() && FORMULA_PREFIXES.indexOf(value.charAt(0)) >= 0) {
+                value = "'" + value;
+            }
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+                writer.write(value);
+                return;
+            }
+            writer.write('"');
+            writer.write(value.replace("\"", "\"\""));
+            writer.write('"');
+        }
+
+        private static String valueOrEmpty(Object value) {
+            return value != null ? value.toString() : "";
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package com.iwellness.messaging.service;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.function.IntFunction;
+import java.util.function.UnaryOperator;
+
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.iwellness.messaging.config.AppProperties;
+import com.iwellness.messaging.dto.ChatMessageDTO;
+import com.iwellness.messaging.util.TransactionCallbacks;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Caché en memoria de los últimos mensajes (la "cola") de las conversaciones activas, para
+ * servir la primera página del historial sin ir a la base de datos.
+ * Cada entrada guarda hasta app.messaging.tail-cache.size mensajes contiguos, del más antiguo
+ * al más reciente, y se reemplaza entera en cada cambio (copia en escritura), de modo que los
+ * lectores nunca ven una lista a medio modificar. El total se acota por memoria estimada
+ * (app.messaging.tail-cache.max-memory), desalojando las conversaciones menos usadas.
+ * Los cambios se aplican tras el commit de la transacción que los origina. Una entrada se
+ * descarta si su último mensaje no coincide con el de la conversación (p. ej. mensajes
+ * guardados por otro nodo) y, para acotar el desfase de los estados de lectura que cambian
+ * en otros nodos, se recarga como mucho cada app.messaging.tail-cache.max-age.
+ */
+@Component
+public class ConversationTailCache {
+
+    // Estimación de memoria por entrada y por mensaje (objetos, fechas y cabeceras de String)
+    private static final int ENTRY_OVERHEAD = 96;
+    private static final int MESSAGE_OVERHEAD = 200;
+
+    private final boolean enabled;
+    private final int size;
+    private final Cache<Long, Tail> cache;
+    private final Counter hits;
+    private final Counter misses;
+
+    public ConversationTailCache(AppProperties appProperties, MeterRegistry meterRegistry) {
+        AppProperties.TailCache props = appProperties.getMessaging().getTailCache();
+        this.enabled = props.isEnabled() && props.getSize() > 0;
+        this.size = props.getSize();
+        long maxAgeNanos = props.getMaxAge().toNanos();
+
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(props.getMaxMemory().toBytes())
+                .weigher((Long conversationId, Tail tail) -> tail.weight())
+                // La edad cuenta desde la carga desde la base de datos, no desde la última actualización
+                .expireAfter(new Expiry<Long, Tail>() {
+                    @Override
+                    public long expireAfterCreate(Long conversationId, Tail tail, long currentTime) {
+                        return maxAgeNanos;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(Long conversationId, Tail tail, long currentTime,
+                                                  long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(Long conversationId, Tail tail, long currentTime,
+                                                long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+
+        this.hits = Counter.builder("messaging.tail-cache.requests")
+                .tag("result", "hit")
+                .description("Primeras páginas del historial servidas desde memoria")
+                .register(meterRegistry);
+        this.misses = Counter.builder("messaging.tail-cache.requests")
+                .tag("result", "miss")
+                .description("Primeras páginas del historial que requirieron cargar la cola desde la base de datos")
+                .register(meterRegistry);
+        Gauge.builder("messaging.tail-cache.conversations", cache, Cache::estimatedSize)
+                .description("Conversaciones con la cola en memoria")
+                .register(meterRegistry);
+        Gauge.builder("messaging.tail-cache.memory", cache, c -> c.policy().eviction()
+                        .map(eviction -> eviction.weightedSize().orElse(0L)).orElse(0L))
+                .description("Memoria estimada ocupada por las colas en caché")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Resuelve la primera página del historial (más reciente primero) desde la cola en memoria,
+     * cargándola si no está o no está al día.
+     *
+     * @param conversationId El ID de la conversación.
+     * @param lastMessageId El último mensaje según la conversación; valida que la cola esté al día.
+     * @param pageSize El tamaño de página.
+     * @param loader Carga los últimos N mensajes de la conversación, del más reciente al más antiguo.
+     * @return La página, o null si no puede servirse desde memoria.
+     */
+    public Page firstPage(Long conversationId, Long lastMessageId, int pageSize,
+                          IntFunction<List<ChatMessageDTO>> loader) {
+        // Se necesita un mensaje más que la página para saber si hay más
+        if (!enabled || lastMessageId == null || pageSize >= size) {
+            return null;
+        }
+        Tail tail = cache.getIfPresent(conversationId);
+        if (tail != null && tail.lastId() == lastMessageId) {
+            hits.increment();
+            return tail.page(pageSize);
+        }
+        misses.increment();
+        if (tail != null) {
+            cache.asMap().remove(conversationId, tail);
+        }
+        // Las actualizaciones concurrentes de la misma conversación esperan a que termine la carga
+        tail = cache.get(conversationId, id -> {
+            List<ChatMessageDTO> latest = new ArrayList<>(loader.apply(size));
+            Collections.reverse(latest);
+            return new Tail(List.copyOf(latest), latest.size() < size);
+        });
+        return tail.page(pageSize);
+    }
+
+    /**
+     * Añade un mensaje recién guardado a la cola de su conversación, tras el commit.
+     * Si la conversación es nueva, crea la cola (completa); si no, solo actualiza una cola existente.
+     *
+     * @param message El mensaje guardado.
+     * @param newConversation true si la conversación se creó con este mensaje.
+     */
+    public void append(ChatMessageDTO message, boolean newConversation) {
+        if (!enabled) {
+            return;
+        }
+        ChatMessageDTO cached = copyOf(message);
+        TransactionCallbacks.afterCommit(() -> {
+            if (newConversation) {
+                cache.asMap().merge(cached.getConversationId(), new Tail(List.of(cached), true),
+                        (tail, created) -> tail.with(cached, size));
+            } else {
+                cache.asMap().computeIfPresent(cached.getConversationId(), (id, tail) -> tail.with(cached, size));
+            }
+        });
+    }
+
+    /**
+     * Refleja la lectura de un rango de mensajes dirigidos al lector, tras el commit.
+     */
+    public void markRead(Long conversationId, Long readerId, Long firstMessageId, Long lastMessageId,
+                         LocalDateTime readAt) {
+        if (!enabled) {
+            return;
+        }
+        TransactionCallbacks.afterCommit(() -> cache.asMap().computeIfPresent(conversationId, (id, tail) -> {
+            // Un mensaje posterior a la cola aún no añadido: se descarta para no servirlo sin leer
+            if (lastMessageId > tail.lastId()) {
+                return null;
+            }
+            return tail.map(message -> {
+                if (!message.getReceiverId().equals(readerId) || Boolean.TRUE.equals(message.getIsRead())
+                        || message.getId() < firstMessageId || message.getId() > lastMessageId) {
+                    return message;
+                }
+                ChatMessageDTO read = copyOf(message);
+                read.setIsRead(true);
+                read.setReadAt(stored(readAt));
+                if (read.getDeliveredAt() == null) {
+                    read.setDeliveredAt(stored(readAt));
+                }
+                return read;
+            });
+        }));
+    }
+
+    /**
+     * Refleja la entrega de un conjunto concreto de mensajes dirigidos al destinatario, tras el commit.
+     */
+    public void markDelivered(Long conversationId, Long recipientId, Collection<Long> messageIds,
+                              LocalDateTime deliveredAt) {
+        if (!enabled) {
+            return;
+        }
+        Set<Long> ids = Set.copyOf(messageIds);
+        TransactionCallbacks.afterCommit(() -> cache.asMap().computeIfPresent(conversationId, (id, tail) ->
+                tail.map(message -> {
+                    if (!message.getReceiverId().equals(recipientId) || message.getDeliveredAt() != null
+                            || !ids.contains(message.getId())) {
+                        return message;
+                    }
+                    ChatMessageDTO delivered = copyOf(message);
+                    delivered.setDeliveredAt(stored(deliveredAt));
+                    return delivered;
+                })));
+    }
+
+    // La caché guarda sus propias copias: los DTO devueltos a los llamadores pueden modificarse
+    private static ChatMessageDTO copyOf(ChatMessageDTO message) {
+        return ChatMessageDTO.builder()
+                .id(message.getId())
+                .conversationId(message.getConversationId())
+                .senderId(message.getSenderId())
+                .receiverId(message.getReceiverId())
+                .content(message.getContent())
+                .isRead(message.getIsRead())
+                .readAt(stored(message.getReadAt()))
+                .deliveredAt(stored(message.getDeliveredAt()))
+                .sentAt(stored(message.getSentAt()))
+                .build();
+    }
+
+    // Redondeo a microsegundos como las columnas TIMESTAMP, para que la página coincida con la de la base de datos
+    private static LocalDateTime stored(LocalDateTime timestamp) {
+        return timestamp != null ? timestamp.plusNanos(500).truncatedTo(ChronoUnit.MICROS) : null;
+    }
+
+    /**
+     * Primera página servida desde memoria.
+     *
+     * @param messages Los mensajes, del más reciente al más antiguo.
+     * @param hasMore true si hay mensajes anteriores a la página.
+     */
+    public record Page(List<ChatMessageDTO> messages, boolean hasMore) {
+    }
+
+    /**
+     * Cola inmutable de una conversación.
+     *
+     * @param messages Los últimos mensajes, del más antiguo al más reciente.
+     * @param complete true si contiene todos los mensajes de la conversación.
+     */
+    private record Tail(List<ChatMessageDTO> messages, boolean complete) {
+
+        long lastId() {
+            return messages.isEmpty() ? 0L : messages.get(messages.size() - 1).getId();
+        }
+
+        Page page(int pageSize) {
+            int from = Math.max(0, messages.size() - pageSize);
+            List<ChatMessageDTO> page = new ArrayList<>(messages.size() - from);
+            for (int i = messages.size() - 1; i >= from; i--) {
+                page.add(copyOf(messages.get(i)));
+            }
+            return new Page(page, from > 0 || !complete);
+        }
+
+        /**
+         * Inserta un mensaje en orden de ID (los commits pueden llegar desordenados), sin duplicarlo,
+         * y recorta la cola a su capacidad.
+         */
+        Tail with(ChatMessageDTO message, int capacity) {
+            int index = messages.size();
+            while (index > 0 && messages.get(index - 1).getId() >= message.getId()) {
+                if (messages.get(index - 1).getId().equals(message.getId())) {
+                    return this;
+                }
+                index--;
+            }
+            // Anterior a toda la cola: no es contiguo con lo que falta en memoria
+            if (index == 0 && !messages.isEmpty() && !complete) {
+                return this;
+            }
+            List<ChatMessageDTO> updated = new ArrayList<>(messages.size() + 1);
+            updated.addAll(messages.subList(0, index));
+            updated.add(message);
+            updated.addAll(messages.subList(index, messages.size()));
+            boolean stillComplete = complete;
+            if (updated.size() > capacity) {
+                updated = updated.subList(updated.size() - capacity, updated.size());
+                stillComplete = false;
+            }
+            return new Tail(List.copyOf(updated), stillComplete);
+        }
+
+        Tail map(UnaryOperator<ChatMessageDTO> update) {
+            List<ChatMessageDTO> updated = new ArrayList<>(messages.size());
+            boolean changed = false;
+            for (ChatMessageDTO message : messages) {
+                ChatMessageDTO result = update.apply(message);
+                changed |= result != message;
+                updated.add(result);
+            }
+            return changed ? new Tail(List.copyOf(updated), complete) : this;
+        }
+
+        int weight() {
+            long bytes = ENTRY_OVERHEAD;
+            for (ChatMessageDTO message : messages) {
+                bytes += MESSAGE_OVERHEAD + 2L * (message.getContent() != null ? message.getContent().length() : 0);
+            }
+            return (int) Math.min(Integer.MAX_VALUE, bytes);
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package com.iwellness.messaging.service;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.iwellness.messaging.config.AppProperties;
+import com.iwellness.messaging.dto.DeliveryReceiptDTO;
+import com.iwellness.messaging.dto.ReadReceiptDTO;
+import com.iwellness.messaging.dto.SyncDTO;
+import com.iwellness.messaging.entity.SyncChange;
+import com.iwellness.messaging.entity.SyncPurgeState;
+import com.iwellness.messaging.repository.SyncChangeRepository;
+import com.iwellness.messaging.repository.SyncPurgeStateRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Sincronización incremental tras una reconexión: devuelve solo lo que cambió para el usuario
+ * desde su cursor (mensajes nuevos, lecturas, entregas y el resumen de las conversaciones
+ * afectadas), leyendo sync_changes por el índice del usuario.
+ * <p>
+ * Los IDs se asignan al insertar, no al confirmar: una transacción en curso puede tener un ID
+ * menor que otra ya confirmada. En PostgreSQL cada fila lleva el ID de su transacción (xid, V9)
+ * y la marca de agua es pg_snapshot_xmin(pg_current_snapshot()): todas las transacciones con un
+ * xid menor ya terminaron, así que las filas por debajo de la marca no cambiarán y ninguna nueva
+ * puede aparecer ahí. El cursor es un xid (se han entregado todas las filas con xid menor) y las
+ * páginas nunca parten una transacción. Una transacción de escritura larga retrasa la
+ * sincronización hasta que termina, pero no hace perder cambios.
+ * <p>
+ * En H2 (desarrollo, un solo nodo) no hay xid: el cursor es el ID y la marca es el mayor ID sin
+ * huecos por debajo; un hueco se da por revertido tras app.messaging.sync.settle.
+ * Cada réplica calcula su propia marca cada poll-interval.
+ * <p>
+ * La purga registra en sync_purge_state (V11) el menor cursor todavía válido; un cursor anterior
+ * recibe resetRequired.
+ */
+@Slf4j
+@Service
+public class DeltaSyncService {
+
+    private static final int SCAN_BATCH = 10_000;
+
+    private static final String CURRENT_XMIN = "SELECT pg_snapshot_xmin(pg_current_snapshot())::text::bigint";
+
+    // Mayor xid entre las filas que va a borrar la purga
+    private static final String MAX_XID_CREATED_BEFORE =
+            "SELECT xid::text::bigint FROM sync_changes WHERE created_at < ? ORDER BY xid DESC LIMIT 1";
+
+    private static final String CHANGES_SINCE = """
+            SELECT id, user_id, conversation_id, change_type, message_id, actor_id, created_at, xid::text::bigint AS xid
+            FROM sync_changes
+            WHERE user_id = ? AND xid >= ?::text::xid8 AND xid < ?::text::xid8
+            ORDER BY xid, id
+            LIMIT ?
+            """;
+
+    // Resto de las filas de una transacción cortada por el límite de la página
+    private static final String CHANGES_OF_TRANSACTION = """
+            SELECT id, user_id, conversation_id, change_type, message_id, actor_id, created_at, xid::text::bigint AS xid
+            FROM sync_changes
+            WHERE user_id = ? AND xid = ?::text::xid8 AND id > ?
+            ORDER BY id
+            """;
+
+    private final SyncChangeRepository syncChangeRepository;
+    private final SyncPurgeStateRepository syncPurgeStateRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final MessagingService messagingService;
+    private final AppProperties.Sync props;
+    private final DistributionSummary changesPerSync;
+    private final Counter resets;
+
+    private boolean postgres;
+    private volatile long highWaterMark;
+    // Solo H2: primer ID ausente por debajo de la marca y cuándo se detectó (System.nanoTime)
+    private long gapId = -1;
+    private long gapSince;
+
+    public DeltaSyncService(SyncChangeRepository syncChangeRepository,
+                            SyncPurgeStateRepository syncPurgeStateRepository, JdbcTemplate jdbcTemplate,
+                            MessagingService messagingService, AppProperties appProperties,
+                            MeterRegistry meterRegistry) {
+        this.syncChangeRepository = syncChangeRepository;
+        this.syncPurgeStateRepository = syncPurgeStateRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.messagingService = messagingService;
+        this.props = appProperties.getMessaging().getSync();
+        this.changesPerSync = DistributionSummary.builder("messaging.sync.changes")
+                .description("Cambios devueltos por cada sincronización incremental")
+                .register(meterRegistry);
+        this.resets = Counter.builder("messaging.sync.resets")
+                .description("Sincronizaciones con cursor nulo o purgado que exigen una recarga completa")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        postgres = Boolean.TRUE.equals(jdbcTemplate.execute((ConnectionCallback<Boolean>) connection ->
+                connection.getMetaData().getDatabaseProductName().toLowerCase().contains("postgresql")));
+        if (postgres) {
+            advance();
+            return;
+        }
+        // En PostgreSQL la fila la crea V11; en H2 (ddl-auto) se crea aquí, suponiendo purgado lo
+        // anterior al ID más antiguo que queda
+        if (!syncPurgeStateRepository.existsById(SyncPurgeState.SINGLETON_ID)) {
+            Long minId = syncChangeRepository.findMinId();
+            syncPurgeStateRepository.save(SyncPurgeState.builder()
+                    .id(SyncPurgeState.SINGLETON_ID)
+                    .purgedBefore(minId != null ? minId - 1 : 0L)
+                    .build());
+        }
+        // Lo registrado hace menos de settle puede tener huecos aún abiertos: se vuelve a recorrer
+        Long settled = syncChangeRepository.findMaxIdCreatedBefore(LocalDateTime.now().minus(props.getSettle()));
+        highWaterMark = settled != null ? settled : 0L;
+        advance();
+    }
+
+    /**
+     * Avanza la marca de agua: en PostgreSQL, al xid de la transacción activa más antigua;
+     * en H2, sobre los IDs confirmados consecutivos.
+     */
+    @Scheduled(fixedDelayString = "#{@appProperties.messaging.sync.pollInterval.toMillis()}")
+    public synchronized void advance() {
+        if (postgres) {
+            Long xmin = jdbcTemplate.queryForObject(CURRENT_XMIN, Long.class);
+            if (xmin != null && xmin > highWaterMark) {
+                highWaterMark = xmin;
+            }
+            return;
+        }
+        long mark = highWaterMark;
+        for (Long id : syncChangeRepository.findIdsAfter(mark, Limit.of(SCAN_BATCH))) {
+            if (id != mark + 1) {
+                long now = System.nanoTime();
+                if (gapId != mark + 1) {
+                    gapId = mark + 1;
+                    gapSince = now;
+                }
+                if (now - gapSince < props.getSettle().toNanos()) {
+                    break;
+                }
+                log.debug("Sync change ids {}..{} never committed; skipping", mark + 1, id - 1);
+            }
+            mark = id;
+        }
+        highWaterMark = mark;
+    }
+
+    public long getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    /**
+     * Obtiene los cambios del usuario posteriores al cursor.
+     *
+     * @param userId El ID del usuario que sincroniza.
+     * @param since Cursor devuelto por la sincronización anterior; nulo en la primera.
+     * @param size Número máximo de cambios a procesar (por defecto y como máximo app.messaging.sync.max-changes).
+     * @return Los cambios agrupados y el nuevo cursor.
+     */
+    @Transactional(readOnly = true)
+    public SyncDTO sync(Long userId, Long since, Integer size) {
+        long mark = highWaterMark;
+        if (since == null || since <= 0) {
+            resets.increment();
+            return emptySync(mark, true);
+        }
+        // Cursor emitido por una réplica con la marca más avanzada: nunca se retrocede
+        if (since >= mark) {
+            return emptySync(since, false);
+        }
+
+        int limit = size == null || size <= 0 ? props.getMaxChanges() : Math.min(size, props.getMaxChanges());
+        ChangePage page = postgres ? readByTransaction(userId, since, mark, limit) : readById(userId, since, mark, limit);
+        // La marca de purga se lee después de los cambios: si una purga confirmó antes de la
+        // lectura de la página, la consulta de la marca también la ve
+        if (isPurged(since)) {
+            resets.increment();
+            return emptySync(mark, true);
+        }
+        List<SyncChange> changes = page.changes();
+        changesPerSync.record(changes.size());
+
+        // Las lecturas repetidas de una conversación se reducen a la última marca de agua;
+        // las entregas se agrupan por conversación con la lista de mensajes entregados
+        Set<Long> conversationIds = new LinkedHashSet<>();
+        List<Long> messageIds = new ArrayList<>();
+        Map<String, ReadReceiptDTO> reads = new LinkedHashMap<>();
+        Map<String, DeliveryReceiptDTO> deliveries = new LinkedHashMap<>();
+        for (SyncChange change : changes) {
+            conversationIds.add(change.getConversationId());
+            String key = change.getConversationId() + ":" + change.getActorId();
+            switch (change.getType()) {
+                case MESSAGE -> messageIds.add(change.getMessageId());
+                case READ -> reads.merge(key, ReadReceiptDTO.builder()
+                                .conversationId(change.getConversationId())
+                                .readerId(change.getActorId())
+                                .lastMessageId(change.getMessageId())
+                                .readAt(change.getCreatedAt())
+                                .build(),
+                        (previous, latest) -> latest.getLastMessageId() >= previous.getLastMessageId() ? latest : previous);
+                case DELIVERED -> {
+                    DeliveryReceiptDTO receipt = deliveries.computeIfAbsent(key, k -> DeliveryReceiptDTO.builder()
+                            .conversationId(change.getConversationId())
+                            .recipientId(change.getActorId())
+                            .messageIds(new ArrayList<>())
+                            .build());
+                    receipt.getMessageIds().add(change.getMessageId());
+                    receipt.setCount(receipt.getMessageIds().size());
+                    if (receipt.getDeliveredAt() == null || change.getCreatedAt().isAfter(receipt.getDeliveredAt())) {
+                        receipt.setDeliveredAt(change.getCreatedAt());
+                    }
+                }
+                case CONVERSATION -> {
+                    // Basta con el resumen de la conversación
+                }
+            }
+        }
+
+        return SyncDTO.builder()
+                .cursor(page.cursor())
+                .hasMore(page.hasMore())
+                .conversations(messagingService.getConversationSummaries(userId, conversationIds))
+                .messages(messagingService.getMessagesByIds(messageIds))
+                .readReceipts(new ArrayList<>(reads.values()))
+                .deliveryReceipts(new ArrayList<>(deliveries.values()))
+                .build();
+    }
+
+    /**
+     * Purga los cambios más antiguos que app.messaging.sync.retention y, en la misma transacción,
+     * adelanta la marca de purga: los clientes con un cursor anterior reciben resetRequired.
+     */
+    @Scheduled(cron = "${app.messaging.sync.cleanup-cron:-}")
+    @Transactional
+    public int purge() {
+        LocalDateTime before = LocalDateTime.now().minus(props.getRetention());
+        // PostgreSQL: válido desde el xid siguiente al mayor borrado; H2: cursor igual o mayor que el mayor ID borrado
+        Long purgedBefore;
+        if (postgres) {
+            List<Long> maxXid = jdbcTemplate.queryForList(MAX_XID_CREATED_BEFORE, Long.class, before);
+            purgedBefore = maxXid.isEmpty() ? null : maxXid.get(0) + 1;
+        } else {
+            purgedBefore = syncChangeRepository.findMaxIdCreatedBefore(before);
+        }
+        int deleted = syncChangeRepository.deleteCreatedBefore(before);
+        if (purgedBefore != null) {
+            syncPurgeStateRepository.advancePurgedBefore(purgedBefore, LocalDateTime.now());
+        }
+        log.info("Purged {} sync changes older than {}", deleted, props.getRetention());
+        return deleted;
+    }
+
+    /**
+     * Cambios con since &le; xid &lt; mark. Si el límite corta una transacción, se completa con el
+     * resto de sus filas: el cursor siguiente es el primer xid aún no entregado.
+     */
+    private ChangePage readByTransaction(long userId, long since, long mark, int limit) {
+        List<VersionedChange> rows = jdbcTemplate.query(CHANGES_SINCE, DeltaSyncService::mapRow,
+                userId, since, mark, limit + 1);
+        if (rows.size() <= limit) {
+            return new ChangePage(rows.stream().map(VersionedChange::change).toList(), mark, false);
+        }
+        VersionedChange last = rows.get(limit - 1);
+        List<SyncChange> changes = new ArrayList<>(limit);
+        rows.subList(0, limit).forEach(row -> changes.add(row.change()));
+        if (rows.get(limit).xid() == last.xid()) {
+            jdbcTemplate.query(CHANGES_OF_TRANSACTION, DeltaSyncService::mapRow, userId, last.xid(), last.change().getId())
+                    .forEach(row -> changes.add(row.change()));
+        }
+        return new ChangePage(changes, last.xid() + 1, true);
+    }
+
+    // Solo H2: cambios con since < ID <= mark
+    private ChangePage readById(long userId, long since, long mark, int limit) {
+        List<SyncChange> changes = syncChangeRepository.findByUserIdAndIdGreaterThanAndIdLessThanEqualOrderByIdAsc(
+                userId, since, mark, Limit.of(limit + 1));
+        if (changes.size() <= limit) {
+            return new ChangePage(changes, mark, false);
+        }
+        changes = changes.subList(0, limit);
+        return new ChangePage(changes, changes.get(changes.size() - 1).getId(), true);
+    }
+
+    private boolean isPurged(long since) {
+        Long purgedBefore = syncPurgeStateRepository.findPurgedBefore();
+        return purgedBefore != null && since < purgedBefore;
+    }
+
+    private static VersionedChange mapRow(ResultSet rs, int rowNum) throws SQLException {
+        SyncChange change = SyncChange.builder()
+                .id(rs.getLong("id"))
+                .userId(rs.getLong("user_id"))
+                .conversationId(rs.getLong("conversation_id"))
+                .type(SyncChange.Type.valueOf(rs.getString("change_type")))
+                .messageId(rs.getObject("message_id", Long.class))
+                .actorId(rs.getLong("actor_id"))
+                .createdAt(rs.getTimestamp("created_at").toLocalDateTime())
+                .build();
+        return new VersionedChange(change, rs.getLong("xid"));
+    }
+
+    private record VersionedChange(SyncChange change, long xid) {
+    }
+
+    private record ChangePage(List<SyncChange> changes, long cursor, boolean hasMore) {
+    }
+
+    private static SyncDTO emptySync(long cursor, boolean resetRequired) {
+        return SyncDTO.builder()
+                .cursor(cursor)
+                .resetRequired(resetRequired)
+                .conversations(List.of())
+                .messages(List.of())
+                .readReceipts(List.of())
+                .deliveryReceipts(List.of())
+                .build();
+    }
+}
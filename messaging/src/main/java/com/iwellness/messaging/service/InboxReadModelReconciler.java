@@ -0,0 +1,35 @@
+package com.iwellness.messaging.service;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.iwellness.messaging.repository.ConversationRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Job de reconciliación del modelo de lectura de la bandeja de entrada.
+ * Recalcula último mensaje y contadores de no leídos de cada conversación a partir
+ * de la tabla de mensajes. Se programa con app.messaging.inbox-reconcile-cron
+ * (deshabilitado por defecto) y también puede invocarse manualmente.
+ */
+@Slf4j
+@Component
+public class InboxReadModelReconciler {
+
+    private final ConversationRepository conversationRepository;
+
+    public InboxReadModelReconciler(ConversationRepository conversationRepository) {
+        this.conversationRepository = conversationRepository;
+    }
+
+    @Scheduled(cron = "${app.messaging.inbox-reconcile-cron:-}")
+    @Transactional
+    public int reconcile() {
+        log.info("Reconciling inbox read model from messages table");
+        int updated = conversationRepository.rebuildInboxReadModel();
+        log.info("Inbox read model rebuilt for {} conversations", updated);
+        return updated;
+    }
+}
@@ -0,0 +1,329 @@
+package com.iwellness.messaging.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.iwellness.messaging.config.AppProperties;
+import com.iwellness.messaging.config.SchedulingConfig;
+import com.iwellness.messaging.dto.ChatMessageDTO;
+import com.iwellness.messaging.entity.MessageContentConverter;
+import com.iwellness.messaging.repository.MessageArchiveRepository;
+import com.iwellness.messaging.repository.MessageSegmentFile;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Mantenimiento de las particiones mensuales de messages (solo PostgreSQL).
+ * Crea por adelantado las particiones de los próximos meses y, con app.messaging.archive.cron
+ * (deshabilitado por defecto), mueve las particiones anteriores a app.messaging.archive.hot-months
+ * a segmentos comprimidos en disco ({@link MessageArchiveRepository}).
+ * <p>
+ * Cada partición se exporta desde una instantánea de solo lectura; después, en una transacción
+ * corta con la partición bloqueada, se comprueba que no cambió durante la exportación, se descuentan
+ * sus mensajes no leídos de los contadores de las conversaciones y se separa y elimina. Si algo
+ * falla, el segmento se descarta y la partición queda intacta. Un advisory lock evita que dos
+ * réplicas archiven a la vez. Ambos jobs usan el planificador propio messageArchiveScheduler.
+ */
+@Slf4j
+@Component
+public class MessageArchiver {
+
+    private static final Pattern PARTITION_NAME = Pattern.compile("messages_p(\\d{6})");
+    private static final DateTimeFormatter PARTITION_MONTH = DateTimeFormatter.ofPattern("yyyyMM");
+    // Clave del advisory lock del job de archivado
+    private static final long ARCHIVE_LOCK_KEY = 0x4d534741524348L;
+
+    private static final String LIST_PARTITIONS = """
+            SELECT c.relname
+            FROM pg_inherits i
+            JOIN pg_class c ON c.oid = i.inhrelid
+            WHERE i.inhparent = 'messages'::regclass
+            ORDER BY c.relname
+            """;
+
+    private static final String DECREMENT_ARCHIVED_UNREAD = """
+            UPDATE conversations c
+            SET user1_unread_count = GREATEST(c.user1_unread_count - u.unread1, 0),
+                user2_unread_count = GREATEST(c.user2_unread_count - u.unread2, 0)
+            FROM (SELECT m.conversation_id,
+                         COUNT(*) FILTER (WHERE m.receiver_id = cv.user1_id) AS unread1,
+                         COUNT(*) FILTER (WHERE m.receiver_id = cv.user2_id AND cv.user2_id <> cv.user1_id) AS unread2
+                  FROM %s m
+                  JOIN conversations cv ON cv.id = m.conversation_id
+                  WHERE m.is_read = FALSE
+                  GROUP BY m.conversation_id) u
+            WHERE c.id = u.conversation_id
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate snapshotTemplate;
+    private final MessageArchiveRepository archiveRepository;
+    private final AppProperties appProperties;
+    private final Counter archivedMessages;
+
+    private boolean postgres;
+
+    public MessageArchiver(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                           MessageArchiveRepository archiveRepository, AppProperties appProperties,
+                           MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.snapshotTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.snapshotTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.snapshotTemplate.setReadOnly(true);
+        this.archiveRepository = archiveRepository;
+        this.appProperties = appProperties;
+        this.archivedMessages = Counter.builder("messaging.archive.messages")
+                .description("Mensajes movidos al archivo frío")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        postgres = Boolean.TRUE.equals(jdbcTemplate.execute((ConnectionCallback<Boolean>) connection ->
+                connection.getMetaData().getDatabaseProductName().toLowerCase().contains("postgresql")));
+        ensurePartitions();
+    }
+
+    /**
+     * Crea las particiones del mes actual y de los app.messaging.partitions.months-ahead siguientes.
+     */
+    @Scheduled(cron = "${app.messaging.partitions.maintenance-cron:0 0 3 * * *}",
+            scheduler = SchedulingConfig.MESSAGE_ARCHIVE_SCHEDULER)
+    public void ensurePartitions() {
+        if (!postgres) {
+            return;
+        }
+        YearMonth month = YearMonth.now();
+        int monthsAhead = appProperties.getMessaging().getPartitions().getMonthsAhead();
+        for (int i = 0; i <= monthsAhead; i++, month = month.plusMonths(1)) {
+            try {
+                jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + partitionName(month)
+                        + " PARTITION OF messages FOR VALUES FROM ('" + month.atDay(1)
+                        + "') TO ('" + month.plusMonths(1).atDay(1) + "')");
+            } catch (DataAccessException e) {
+                // Típicamente, filas de ese mes ya guardadas en la partición DEFAULT
+                log.warn("No se pudo crear la partición {}: {}", partitionName(month), e.getMostSpecificCause().getMessage());
+            }
+        }
+    }
+
+    /**
+     * Archiva las particiones mensuales anteriores a los meses calientes configurados.
+     *
+     * @return El número de mensajes archivados.
+     */
+    @Scheduled(cron = "${app.messaging.archive.cron:-}", scheduler = SchedulingConfig.MESSAGE_ARCHIVE_SCHEDULER)
+    public long archiveOldPartitions() {
+        if (!postgres) {
+            return 0L;
+        }
+        // Advisory lock de sesión, retenido en su propia conexión durante todo el job
+        Long archived = jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+            try (PreparedStatement lock = connection.prepareStatement("SELECT pg_try_advisory_lock(?)")) {
+                lock.setLong(1, ARCHIVE_LOCK_KEY);
+                try (ResultSet rs = lock.executeQuery()) {
+                    if (!rs.next() || !rs.getBoolean(1)) {
+                        log.info("Archivado de mensajes en curso en otra réplica");
+                        return 0L;
+                    }
+                }
+            }
+            try {
+                return archivePartitions();
+            } finally {
+                try (PreparedStatement unlock = connection.prepareStatement("SELECT pg_advisory_unlock(?)")) {
+                    unlock.setLong(1, ARCHIVE_LOCK_KEY);
+                    unlock.execute();
+                }
+            }
+        });
+        return archived != null ? archived : 0L;
+    }
+
+    private long archivePartitions() {
+        YearMonth cutoff = YearMonth.now().minusMonths(appProperties.getMessaging().getArchive().getHotMonths());
+        List<String> candidates = new ArrayList<>();
+        for (String partition : jdbcTemplate.queryForList(LIST_PARTITIONS, String.class)) {
+            Matcher matcher = PARTITION_NAME.matcher(partition);
+            if (matcher.matches() && YearMonth.parse(matcher.group(1), PARTITION_MONTH).isBefore(cutoff)) {
+                candidates.add(partition);
+            }
+        }
+        long total = 0L;
+        for (String partition : candidates) {
+            try {
+                total += archivePartition(partition);
+            } catch (RuntimeException e) {
+                log.error("Error archivando la partición {}; se conserva en PostgreSQL", partition, e);
+            }
+        }
+        return total;
+    }
+
+    private long archivePartition(String partition) {
+        YearMonth month = YearMonth.parse(partition.substring("messages_p".length()), PARTITION_MONTH);
+        AppProperties.Archive archive = appProperties.getMessaging().getArchive();
+        Path path;
+        try {
+            path = archiveRepository.segmentPath(month.toString());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        long started = System.nanoTime();
+        PartitionStats exported = snapshotTemplate.execute(status ->
+                export(partition, path, (int) archive.getBlockSize().toBytes()));
+        // true cuando el DROP ya se ejecutó: un fallo posterior es del commit y su resultado es incierto
+        boolean[] committing = {false};
+        try {
+            if (exported.total() > 0) {
+                archiveRepository.register(path);
+            }
+            transactionTemplate.executeWithoutResult(status -> {
+                // SET LOCAL: si hay tráfico que retiene la tabla, se desiste en lugar de bloquearlo
+                jdbcTemplate.execute("SET LOCAL lock_timeout = " + archive.getLockTimeout().toMillis());
+                jdbcTemplate.execute("LOCK TABLE ONLY messages, ONLY " + partition + " IN ACCESS EXCLUSIVE MODE");
+                PartitionStats current = stats(partition);
+                if (!current.equals(exported)) {
+                    throw new IllegalStateException("La partición " + partition
+                            + " cambió durante la exportación: " + exported + " -> " + current);
+                }
+                jdbcTemplate.update(DECREMENT_ARCHIVED_UNREAD.formatted(partition));
+                jdbcTemplate.execute("ALTER TABLE messages DETACH PARTITION " + partition);
+                jdbcTemplate.execute("DROP TABLE " + partition);
+                committing[0] = true;
+            });
+        } catch (IOException e) {
+            discard(path);
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            // El segmento solo se descarta si la partición sigue en PostgreSQL: si el DROP llegó a
+            // confirmarse, el segmento es la única copia de ese mes
+            Boolean exists = committing[0] ? partitionExists(partition) : Boolean.TRUE;
+            if (Boolean.TRUE.equals(exists)) {
+                discard(path);
+                throw e;
+            }
+            if (exists == null) {
+                log.error("Resultado incierto al eliminar la partición {}; se conserva el segmento {}", partition, path);
+                throw e;
+            }
+            log.warn("El commit de la partición {} informó un error pero se aplicó: {}", partition, e.getMessage());
+        }
+        if (exported.total() == 0) {
+            deleteQuietly(path);
+        }
+        archivedMessages.increment(exported.total());
+        log.info("Partición {} archivada en {}: {} mensajes en {} ms", partition, path, exported.total(),
+                (System.nanoTime() - started) / 1_000_000);
+        return exported.total();
+    }
+
+    private PartitionStats export(String partition, Path path, int blockSize) {
+        try (MessageSegmentFile.Writer writer = MessageSegmentFile.writer(path, blockSize)) {
+            long[] counts = new long[3];
+            jdbcTemplate.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement(
+                        "SELECT id, conversation_id, sender_id, receiver_id, content, is_read, read_at, delivered_at, sent_at"
+                                + " FROM " + partition + " ORDER BY conversation_id, id");
+                // Lectura por cursor: la partición no se carga entera en memoria
+                statement.setFetchSize(1000);
+                return statement;
+            }, (ResultSet rs) -> {
+                ChatMessageDTO message = ChatMessageDTO.builder()
+                        .id(rs.getLong("id"))
+                        .conversationId(rs.getLong("conversation_id"))
+                        .senderId(rs.getLong("sender_id"))
+                        .receiverId(rs.getLong("receiver_id"))
+                        .content(MessageContentConverter.decode(rs.getString("content")))
+                        .isRead(rs.getBoolean("is_read"))
+                        .readAt(toLocalDateTime(rs.getTimestamp("read_at")))
+                        .deliveredAt(toLocalDateTime(rs.getTimestamp("delivered_at")))
+                        .sentAt(toLocalDateTime(rs.getTimestamp("sent_at")))
+                        .build();
+                try {
+                    writer.append(message);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                counts[0]++;
+                if (Boolean.TRUE.equals(message.getIsRead())) {
+                    counts[1]++;
+                }
+                if (message.getDeliveredAt() != null) {
+                    counts[2]++;
+                }
+            });
+            writer.finish();
+            return new PartitionStats(counts[0], counts[1], counts[2]);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error escribiendo el segmento " + path, e);
+        }
+    }
+
+    private PartitionStats stats(String partition) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*), COUNT(*) FILTER (WHERE is_read),"
+                + " COUNT(*) FILTER (WHERE delivered_at IS NOT NULL) FROM " + partition,
+                (rs, rowNum) -> new PartitionStats(rs.getLong(1), rs.getLong(2), rs.getLong(3)));
+    }
+
+    private static String partitionName(YearMonth month) {
+        return "messages_p" + month.format(PARTITION_MONTH);
+    }
+
+    // null si no se puede comprobar (p. ej. la conexión sigue caída)
+    private Boolean partitionExists(String partition) {
+        try {
+            return jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, partition);
+        } catch (DataAccessException e) {
+            log.warn("No se pudo comprobar si la partición {} existe: {}", partition, e.getMessage());
+            return null;
+        }
+    }
+
+    private void discard(Path path) {
+        archiveRepository.unregister(path);
+        deleteQuietly(path);
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("No se pudo eliminar el segmento {}: {}", path, e.getMessage());
+        }
+    }
+
+    private static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toLocalDateTime() : null;
+    }
+
+    // Huella de la partición para detectar cambios entre la exportación y el borrado
+    private record PartitionStats(long total, long read, long delivered) {
+    }
+}
@@ -0,0 +1,146 @@
+package com.iwellness.messaging.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.web.util.HtmlUtils;
+
+/**
+ * Índice invertido en memoria para la búsqueda de mensajes en bases sin texto completo
+ * (H2 en desarrollo). Cada término se indexa por usuario participante (emisor y receptor),
+ * de modo que una búsqueda solo recorre los mensajes del propio usuario. Las listas de
+ * mensajes están ordenadas por ID para paginar por keyset del más reciente al más antiguo.
+ * Como la configuración 'simple' de PostgreSQL: palabras en minúsculas, sin stemming.
+ */
+public class MessageSearchIndex {
+
+    private static final Pattern TOKEN = Pattern.compile("[\\p{L}\\p{N}]+");
+    // Caracteres de contexto alrededor del primer término encontrado en el fragmento resaltado
+    private static final int FRAGMENT_CONTEXT = 80;
+
+    private final Map<String, NavigableSet<Long>> postings = new ConcurrentHashMap<>();
+
+    /**
+     * Indexa un mensaje para sus dos participantes.
+     */
+    public void add(Long messageId, Long senderId, Long receiverId, String content) {
+        for (String term : terms(content)) {
+            addPosting(senderId, term, messageId);
+            if (!receiverId.equals(senderId)) {
+                addPosting(receiverId, term, messageId);
+            }
+        }
+    }
+
+    /**
+     * Busca los mensajes del usuario que contienen todos los términos.
+     *
+     * @param userId El usuario (emisor o receptor de los mensajes).
+     * @param terms Los términos normalizados de la consulta.
+     * @param beforeId Cursor: solo mensajes con ID menor.
+     * @param limit Número máximo de IDs a devolver.
+     * @return Los IDs encontrados, del más reciente al más antiguo.
+     */
+    public List<Long> search(Long userId, Set<String> terms, long beforeId, int limit) {
+        List<NavigableSet<Long>> sets = new ArrayList<>(terms.size());
+        for (String term : terms) {
+            NavigableSet<Long> set = postings.get(key(userId, term));
+            if (set == null) {
+                return List.of();
+            }
+            sets.add(set);
+        }
+        if (sets.isEmpty()) {
+            return List.of();
+        }
+        // Se recorre el término menos frecuente y se comprueba en los demás
+        sets.sort(Comparator.comparingInt(Set::size));
+        List<Long> ids = new ArrayList<>(limit);
+        Iterator<Long> candidates = sets.get(0).headSet(beforeId, false).descendingIterator();
+        while (candidates.hasNext() && ids.size() < limit) {
+            Long id = candidates.next();
+            boolean all = true;
+            for (int i = 1; i < sets.size() && all; i++) {
+                all = sets.get(i).contains(id);
+            }
+            if (all) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * @return Los términos distintos de un texto, normalizados, en orden de aparición.
+     */
+    public static Set<String> terms(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        if (text == null) {
+            return terms;
+        }
+        Matcher matcher = TOKEN.matcher(text);
+        while (matcher.find()) {
+            terms.add(matcher.group().toLowerCase(Locale.ROOT));
+        }
+        return terms;
+    }
+
+    /**
+     * Fragmento del contenido alrededor del primer término encontrado, en HTML escapado
+     * y con los términos entre &lt;mark&gt; y &lt;/mark&gt;.
+     */
+    public static String highlight(String content, Set<String> terms) {
+        List<int[]> matches = new ArrayList<>();
+        Matcher matcher = TOKEN.matcher(content);
+        while (matcher.find()) {
+            if (terms.contains(matcher.group().toLowerCase(Locale.ROOT))) {
+                matches.add(new int[] {matcher.start(), matcher.end()});
+            }
+        }
+        int from = matches.isEmpty() ? 0 : Math.max(0, matches.get(0)[0] - FRAGMENT_CONTEXT);
+        int to = Math.min(content.length(), (matches.isEmpty() ? 0 : matches.get(0)[1]) + FRAGMENT_CONTEXT);
+        if (matches.isEmpty()) {
+            to = Math.min(content.length(), 2 * FRAGMENT_CONTEXT);
+        }
+
+        StringBuilder html = new StringBuilder(to - from + 32);
+        if (from > 0) {
+            html.append("… ");
+        }
+        int position = from;
+        for (int[] match : matches) {
+            if (match[1] > to) {
+                break;
+            }
+            html.append(HtmlUtils.htmlEscape(content.substring(position, match[0])))
+                    .append("<mark>")
+                    .append(HtmlUtils.htmlEscape(content.substring(match[0], match[1])))
+                    .append("</mark>");
+            position = match[1];
+        }
+        html.append(HtmlUtils.htmlEscape(content.substring(position, to)));
+        if (to < content.length()) {
+            html.append(" …");
+        }
+        return html.toString();
+    }
+
+    private void addPosting(Long userId, String term, Long messageId) {
+        postings.computeIfAbsent(key(userId, term), key -> new ConcurrentSkipListSet<>()).add(messageId);
+    }
+
+    private static String key(Long userId, String term) {
+        return userId + ":" + term;
+    }
+}
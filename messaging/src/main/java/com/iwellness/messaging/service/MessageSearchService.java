@@ -0,0 +1,261 @@
+package com.iwellness.messaging.service;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.util.HtmlUtils;
+
+import com.iwellness.messaging.config.AppProperties;
+import com.iwellness.messaging.dto.ChatMessageDTO;
+import com.iwellness.messaging.dto.MessageSearchHitDTO;
+import com.iwellness.messaging.dto.MessageSearchResultDTO;
+import com.iwellness.messaging.entity.Message;
+import com.iwellness.messaging.entity.MessageContentConverter;
+import com.iwellness.messaging.repository.MessageRepository;
+import com.iwellness.messaging.util.TransactionCallbacks;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Búsqueda de texto completo en los mensajes de un usuario (como emisor o receptor).
+ * En PostgreSQL usa los índices GIN por usuario (btree_gin, V6/V8) sobre receiver_id/sender_id y
+ * COALESCE(content_tsv, to_tsvector(content)), una rama por índice unidas con UNION ALL (content_tsv
+ * solo se rellena, sin posiciones, para los contenidos guardados comprimidos: en ellos las frases
+ * entre comillas se evalúan como todas las palabras) con websearch_to_tsquery (admite frases entre
+ * comillas, OR y -término) y ts_headline solo sobre la página devuelta;
+ * cada consulta se corta a los app.messaging.search.timeout. En otras bases (H2 en desarrollo)
+ * usa un {@link MessageSearchIndex} en memoria, reconstruido al arrancar y actualizado en cada
+ * envío; ahí todas las palabras de la consulta deben aparecer en el mensaje.
+ */
+@Slf4j
+@Service
+public class MessageSearchService {
+
+    // Marcas de resaltado de ts_headline (chr(2)/chr(3)); se sustituyen por <mark> tras escapar el HTML
+    private static final String START_MARK = "\u0002";
+    private static final String STOP_MARK = "\u0003";
+    // SQLState de PostgreSQL para una sentencia cancelada por statement_timeout
+    private static final String QUERY_CANCELED = "57014";
+
+    private static final String INDEX_ENCODED_CONTENT = """
+            UPDATE messages SET content_tsv = strip(to_tsvector('simple', ?))
+            WHERE id = ? AND content_tsv IS NULL
+            """;
+
+    // Una rama por índice de V8 (receptor y emisor); la segunda excluye los mensajes a uno mismo,
+    // que ya devuelve la primera
+    private static final String POSTGRES_SEARCH = """
+            WITH q AS (SELECT websearch_to_tsquery('simple', ?) AS query),
+            received AS (
+                SELECT m.id, m.conversation_id, m.sender_id, m.receiver_id, m.content,
+                       m.is_read, m.read_at, m.delivered_at, m.sent_at
+                FROM messages m, q
+                WHERE m.receiver_id = ?
+                  AND COALESCE(m.content_tsv, to_tsvector('simple', CASE WHEN left(m.content, 1) <> chr(1) THEN m.content END))
+                      @@ q.query
+                  AND m.id < ?
+                ORDER BY m.id DESC
+                LIMIT ?
+            ),
+            sent AS (
+                SELECT m.id, m.conversation_id, m.sender_id, m.receiver_id, m.content,
+                       m.is_read, m.read_at, m.delivered_at, m.sent_at
+                FROM messages m, q
+                WHERE m.sender_id = ?
+                  AND COALESCE(m.content_tsv, to_tsvector('simple', CASE WHEN left(m.content, 1) <> chr(1) THEN m.content END))
+                      @@ q.query
+                  AND m.receiver_id <> m.sender_id
+                  AND m.id < ?
+                ORDER BY m.id DESC
+                LIMIT ?
+            ),
+            hits AS (
+                SELECT * FROM (SELECT * FROM received UNION ALL SELECT * FROM sent) AS both_sides
+                ORDER BY id DESC
+                LIMIT ?
+            )
+            SELECT hits.*,
+                   CASE WHEN left(hits.content, 1) <> chr(1)
+                        THEN ts_headline('simple', hits.content, q.query,
+                                         'StartSel=' || chr(2) || ', StopSel=' || chr(3)
+                                         || ', MaxWords=30, MinWords=10, MaxFragments=2, FragmentDelimiter=" … "')
+                   END AS highlight
+            FROM hits, q
+            ORDER BY hits.id DESC
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MessageRepository messageRepository;
+    private final AppProperties appProperties;
+    private final Timer searchLatency;
+
+    private MessageSearchIndex memoryIndex;
+
+    public MessageSearchService(JdbcTemplate jdbcTemplate, MessageRepository messageRepository,
+                                AppProperties appProperties, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.messageRepository = messageRepository;
+        this.appProperties = appProperties;
+        this.searchLatency = Timer.builder("messaging.search.latency")
+                .description("Tiempo de resolución de una página de búsqueda")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        boolean postgres = Boolean.TRUE.equals(jdbcTemplate.execute((ConnectionCallback<Boolean>) connection ->
+                connection.getMetaData().getDatabaseProductName().toLowerCase().contains("postgresql")));
+        if (postgres) {
+            return;
+        }
+        memoryIndex = new MessageSearchIndex();
+        int[] indexed = {0};
+        jdbcTemplate.query("SELECT id, sender_id, receiver_id, content FROM messages", (ResultSet rs) -> {
+            memoryIndex.add(rs.getLong(1), rs.getLong(2), rs.getLong(3),
+                    MessageContentConverter.decode(rs.getString(4)));
+            indexed[0]++;
+        });
+        log.info("Búsqueda de mensajes con índice en memoria: {} mensajes indexados", indexed[0]);
+    }
+
+    /**
+     * Añade un mensaje recién guardado al índice en memoria, tras el commit. En PostgreSQL
+     * solo actúa si el contenido se guardó codificado: rellena content_tsv a partir del texto
+     * original en la misma transacción; el resto se indexa directamente desde content.
+     *
+     * @param message El mensaje guardado.
+     */
+    public void index(ChatMessageDTO message) {
+        if (memoryIndex == null) {
+            String stored = MessageContentConverter.encode(message.getContent(),
+                    appProperties.getMessaging().getCompression());
+            if (MessageContentConverter.isEncoded(stored)) {
+                jdbcTemplate.update(INDEX_ENCODED_CONTENT, message.getContent(), message.getId());
+            }
+            return;
+        }
+        TransactionCallbacks.afterCommit(() -> memoryIndex.add(
+                message.getId(), message.getSenderId(), message.getReceiverId(), message.getContent()));
+    }
+
+    /**
+     * Busca en los mensajes enviados o recibidos por el usuario.
+     *
+     * @param userId El ID del usuario; solo se buscan sus mensajes.
+     * @param query El texto a buscar.
+     * @param beforeId Cursor opcional: devuelve resultados anteriores a este ID.
+     * @param size Tamaño de página solicitado; se acota a los límites configurados.
+     * @return Los resultados del más reciente al más antiguo, con el fragmento resaltado.
+     */
+    @Transactional(readOnly = true)
+    public MessageSearchResultDTO search(Long userId, String query, Long beforeId, Integer size) {
+        AppProperties.Pagination pagination = appProperties.getMessaging().getPagination();
+        int pageSize = size == null || size <= 0 ? pagination.getDefaultSize() : Math.min(size, pagination.getMaxSize());
+        long cursor = beforeId != null ? beforeId : Long.MAX_VALUE;
+        List<MessageSearchHitDTO> hits = searchLatency.record(() -> memoryIndex != null
+                ? searchInMemory(userId, query, cursor, pageSize + 1)
+                : searchPostgres(userId, query, cursor, pageSize + 1));
+
+        boolean hasMore = hits.size() > pageSize;
+        if (hasMore) {
+            hits = hits.subList(0, pageSize);
+        }
+        return MessageSearchResultDTO.builder()
+                .hits(hits)
+                .nextCursor(hits.isEmpty() ? beforeId : hits.get(hits.size() - 1).getMessage().getId())
+                .hasMore(hasMore)
+                .build();
+    }
+
+    private List<MessageSearchHitDTO> searchPostgres(Long userId, String query, long beforeId, int limit) {
+        // SET LOCAL: el límite de tiempo solo afecta a esta transacción
+        long timeoutMillis = appProperties.getMessaging().getSearch().getTimeout().toMillis();
+        jdbcTemplate.execute("SET LOCAL statement_timeout = " + timeoutMillis);
+        try {
+            return jdbcTemplate.query(POSTGRES_SEARCH, (rs, rowNum) -> {
+                ChatMessageDTO message = mapRow(rs);
+                String headline = rs.getString("highlight");
+                return MessageSearchHitDTO.builder()
+                        .message(message)
+                        // Contenido comprimido: el fragmento se calcula aquí sobre el texto original
+                        .highlight(headline != null
+                                ? HtmlUtils.htmlEscape(headline).replace(START_MARK, "<mark>").replace(STOP_MARK, "</mark>")
+                                : MessageSearchIndex.highlight(message.getContent(), MessageSearchIndex.terms(query)))
+                        .build();
+            }, query, userId, beforeId, limit, userId, beforeId, limit, limit);
+        } catch (DataAccessException e) {
+            if (e.getMostSpecificCause() instanceof SQLException sqlException
+                    && QUERY_CANCELED.equals(sqlException.getSQLState())) {
+                throw new QueryTimeoutException("La búsqueda superó " + timeoutMillis + " ms", e);
+            }
+            throw e;
+        }
+    }
+
+    private List<MessageSearchHitDTO> searchInMemory(Long userId, String query, long beforeId, int limit) {
+        Set<String> terms = MessageSearchIndex.terms(query);
+        List<Long> ids = memoryIndex.search(userId, terms, beforeId, limit);
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, Message> messages = messageRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(Message::getId, Function.identity()));
+        List<MessageSearchHitDTO> hits = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Message message = messages.get(id);
+            if (message == null) {
+                continue;
+            }
+            hits.add(MessageSearchHitDTO.builder()
+                    .message(ChatMessageDTO.builder()
+                            .id(message.getId())
+                            .conversationId(message.getConversation().getId())
+                            .senderId(message.getSenderId())
+                            .receiverId(message.getReceiverId())
+                            .content(message.getContent())
+                            .isRead(message.getIsRead())
+                            .readAt(message.getReadAt())
+                            .deliveredAt(message.getDeliveredAt())
+                            .sentAt(message.getSentAt())
+                            .build())
+                    .highlight(MessageSearchIndex.highlight(message.getContent(), terms))
+                    .build());
+        }
+        return hits;
+    }
+
+    private static ChatMessageDTO mapRow(ResultSet rs) throws SQLException {
+        return ChatMessageDTO.builder()
+                .id(rs.getLong("id"))
+                .conversationId(rs.getLong("conversation_id"))
+                .senderId(rs.getLong("sender_id"))
+                .receiverId(rs.getLong("receiver_id"))
+                .content(MessageContentConverter.decode(rs.getString("content")))
+                .isRead(rs.getBoolean("is_read"))
+                .readAt(toLocalDateTime(rs.getTimestamp("read_at")))
+                .deliveredAt(toLocalDateTime(rs.getTimestamp("delivered_at")))
+                .sentAt(toLocalDateTime(rs.getTimestamp("sent_at")))
+                .build();
+    }
+
+    private static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toLocalDateTime() : null;
+    }
+}
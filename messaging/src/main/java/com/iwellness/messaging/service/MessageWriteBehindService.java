@@ -0,0 +1,412 @@
+package com.iwellness.messaging.service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.NonTransientDataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.iwellness.messaging.config.AppProperties;
+import com.iwellness.messaging.dto.ChatMessageDTO;
+import com.iwellness.messaging.entity.Conversation;
+import com.iwellness.messaging.entity.MessageContentConverter;
+import com.iwellness.messaging.entity.OutboxEvent;
+import com.iwellness.messaging.publisher.MessageEventPublisher;
+import com.iwellness.messaging.repository.ConversationRepository;
+import com.iwellness.messaging.repository.ConversationRepositoryCustom;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Ingesta asíncrona de mensajes (write-behind).
+ * Con app.messaging.ingest.mode=async, cada mensaje recibe un ID de un bloque reservado en
+ * memoria (id-block-size valores de la secuencia de messages por viaje a la base de datos),
+ * se entrega de inmediato y queda en una cola acotada; un hilo escritor
+ * lo persiste por lotes (inserciones JDBC en batch + actualización del modelo de lectura
+ * + eventos MessageSent en el outbox, en la misma transacción)
+ * y completa el futuro de persistencia, que se usa para confirmar al remitente.
+ * Si la cola está llena, la ingesta espera hasta offer-timeout y luego rechaza el mensaje
+ * (ya con ID y conversación, para que la confirmación al remitente los incluya).
+ * Solo está disponible en PostgreSQL; en otras bases se mantiene la ingesta síncrona.
+ */
+@Slf4j
+@Service
+public class MessageWriteBehindService {
+
+    // Un bloque de IDs de la secuencia de messages en un solo viaje, sin cambiar su INCREMENT
+    // (la ingesta síncrona sigue tomando IDs de la misma secuencia)
+    private static final String NEXT_ID_BLOCK_SQL =
+            "SELECT nextval(pg_get_serial_sequence('messages', 'id')) FROM generate_series(1, ?)";
+
+    private static final String INSERT_SQL = """
+            INSERT INTO messages (id, conversation_id, sender_id, receiver_id, content, is_read, read_at, sent_at, content_tsv)
+            VALUES (?, ?, ?, ?, ?, FALSE, NULL, ?, strip(to_tsvector('simple', ?)))
+            """;
+
+    private static final String INSERT_OUTBOX_SQL = """
+            INSERT INTO outbox_events (event_type, aggregate_id, payload, created_at, attempts, status)
+            VALUES (?, ?, ?, ?, 0, 'PENDING')
+            """;
+
+    // Mismo efecto que ConversationRepository.registerNewMessage, agregado por conversación
+    private static final String UPDATE_CONVERSATION_SQL = """
+            UPDATE conversations SET
+                   last_message_id = CASE WHEN last_message_id IS NULL OR last_message_id < :messageId
+                                          THEN :messageId ELSE last_message_id END,
+                   last_message_sender_id = CASE WHEN last_message_id IS NULL OR last_message_id < :messageId
+                                                 THEN :senderId ELSE last_message_sender_id END,
+                   last_message_preview = CASE WHEN last_message_id IS NULL OR last_message_id < :messageId
+                                               THEN :preview ELSE last_message_preview END,
+                   last_message_at = CASE WHEN last_message_id IS NULL OR last_message_id < :messageId
+                                          THEN :sentAt ELSE last_message_at END,
+                   updated_at = :sentAt,
+                   user1_unread_count = user1_unread_count + :user1Increment,
+                   user2_unread_count = user2_unread_count + :user2Increment
+            WHERE id = :conversationId
+            """;
+
+    private final ConversationRepository conversationRepository;
+    private final MessageEventPublisher eventPublisher;
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final AppProperties.Ingest props;
+    private final int maxMessageLength;
+    private final AppProperties.Compression compression;
+    private final MeterRegistry meterRegistry;
+    private final ConversationTailCache tailCache;
+    private final SyncChangeLog syncChangeLog;
+
+    // La pareja canónica de una conversación nunca cambia: se evita el upsert en cada mensaje
+    private final Cache<String, Long> conversationIds = Caffeine.newBuilder()
+            .maximumSize(100_000)
+            .build();
+
+    // IDs reservados y aún sin asignar; se descartan al caducar para no desordenar el historial
+    private final Deque<Long> idBlock = new ArrayDeque<>();
+    private long idBlockFetchedAt;
+
+    private BlockingQueue<PendingMessage> queue;
+    private Thread writer;
+    private volatile boolean enabled;
+    private volatile boolean running;
+
+    private Timer persistLatency;
+    private DistributionSummary batchSizes;
+    private Counter failedMessages;
+
+    public MessageWriteBehindService(ConversationRepository conversationRepository,
+                                     MessageEventPublisher eventPublisher,
+                                     JdbcTemplate jdbcTemplate,
+                                     TransactionTemplate transactionTemplate,
+                                     AppProperties appProperties,
+                                     MeterRegistry meterRegistry,
+                                     ConversationTailCache tailCache,
+                                     SyncChangeLog syncChangeLog) {
+        this.conversationRepository = conversationRepository;
+        this.eventPublisher = eventPublisher;
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.transactionTemplate = transactionTemplate;
+        this.props = appProperties.getMessaging().getIngest();
+        this.maxMessageLength = appProperties.getMessaging().getMaxMessageLength();
+        this.compression = appProperties.getMessaging().getCompression();
+        this.meterRegistry = meterRegistry;
+        this.tailCache = tailCache;
+        this.syncChangeLog = syncChangeLog;
+    }
+
+    @PostConstruct
+    void start() {
+        if (props.getMode() != AppProperties.IngestMode.ASYNC) {
+            return;
+        }
+        boolean postgres = Boolean.TRUE.equals(jdbcTemplate.execute((ConnectionCallback<Boolean>) connection ->
+                connection.getMetaData().getDatabaseProductName().toLowerCase().contains("postgresql")));
+        if (!postgres) {
+            log.warn("La ingesta asíncrona requiere PostgreSQL; se usará la ingesta síncrona");
+            return;
+        }
+
+        queue = new ArrayBlockingQueue<>(props.getQueueCapacity());
+        Gauge.builder("messaging.ingest.queue.size", queue, BlockingQueue::size)
+                .description("Mensajes aceptados pendientes de persistir")
+                .register(meterRegistry);
+        persistLatency = Timer.builder("messaging.ingest.persist.latency")
+                .description("Tiempo entre la aceptación de un mensaje y su persistencia")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        batchSizes = DistributionSummary.builder("messaging.ingest.batch.size")
+                .description("Mensajes por lote persistido")
+                .register(meterRegistry);
+        failedMessages = Counter.builder("messaging.ingest.failed")
+                .description("Mensajes que no pudieron persistirse tras los reintentos")
+                .register(meterRegistry);
+
+        running = true;
+        enabled = true;
+        writer = new Thread(this::writeLoop, "message-write-behind");
+        writer.start();
+        log.info("Ingesta asíncrona habilitada (batch-size={}, linger={}, queue-capacity={}, id-block-size={})",
+                props.getBatchSize(), props.getLinger(), props.getQueueCapacity(), props.getIdBlockSize());
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        if (!enabled) {
+            return;
+        }
+        // Deja de aceptar mensajes y espera a que el escritor vacíe la cola
+        enabled = false;
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(30));
+        if (!queue.isEmpty()) {
+            log.error("{} mensajes aceptados no pudieron persistirse antes del apagado", queue.size());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Acepta un mensaje para persistencia diferida: le asigna ID, conversación y fecha de envío
+     * sin esperar a la base de datos (salvo al agotarse el bloque de IDs o la primera vez que
+     * se ve la pareja).
+     *
+     * @param messageDTO El mensaje recibido.
+     * @return El mensaje con ID y conversación asignados y el futuro que se completa al persistirlo.
+     *         Si la cola sigue llena tras offer-timeout, el mensaje no se acepta
+     *         ({@link IngestedMessage#accepted()} es false) y el futuro ya está completado con error.
+     * @throws IllegalArgumentException si el contenido falta o excede la longitud máxima.
+     */
+    public IngestedMessage ingest(ChatMessageDTO messageDTO) {
+        if (!enabled) {
+            throw new IllegalStateException("La ingesta asíncrona no está habilitada");
+        }
+        if (messageDTO.getContent() == null || messageDTO.getContent().length() > maxMessageLength) {
+            throw new IllegalArgumentException("El mensaje no puede exceder " + maxMessageLength + " caracteres");
+        }
+
+        Long senderId = messageDTO.getSenderId();
+        Long receiverId = messageDTO.getReceiverId();
+        Long conversationId = conversationIds.get(pairKey(senderId, receiverId), key ->
+                transactionTemplate.execute(status -> {
+                    LocalDateTime now = LocalDateTime.now();
+                    ConversationRepositoryCustom.UpsertResult result =
+                            conversationRepository.upsertConversation(senderId, receiverId, now);
+                    if (result.created()) {
+                        eventPublisher.publishConversationCreated(result.id(), senderId, receiverId, now);
+                        syncChangeLog.recordConversationCreated(result.id(), senderId, receiverId);
+                    }
+                    return result.id();
+                }));
+
+        ChatMessageDTO message = ChatMessageDTO.builder()
+                .id(nextId())
+                .conversationId(conversationId)
+                .senderId(senderId)
+                .receiverId(receiverId)
+                .content(messageDTO.getContent())
+                .isRead(false)
+                .sentAt(LocalDateTime.now())
+                .build();
+
+        PendingMessage pending = new PendingMessage(message, new CompletableFuture<>(), System.nanoTime());
+        try {
+            if (!queue.offer(pending, props.getOfferTimeout().toNanos(), TimeUnit.NANOSECONDS)) {
+                return rejected(message,
+                        new RejectedExecutionException("Cola de ingesta llena; reintente más tarde"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return rejected(message, new RejectedExecutionException("Ingesta interrumpida", e));
+        }
+        return new IngestedMessage(message, true, pending.persisted());
+    }
+
+    private static IngestedMessage rejected(ChatMessageDTO message, RejectedExecutionException cause) {
+        return new IngestedMessage(message, false, CompletableFuture.failedFuture(cause));
+    }
+
+    /**
+     * Siguiente ID del bloque reservado. Un bloque más viejo que id-block-ttl se descarta: sus IDs
+     * quedarían por debajo de los asignados después por otras réplicas o por la ingesta síncrona,
+     * y el mensaje aparecería fuera de orden en el historial (que se pagina por ID).
+     */
+    private synchronized long nextId() {
+        long now = System.nanoTime();
+        if (idBlock.isEmpty() || now - idBlockFetchedAt > props.getIdBlockTtl().toNanos()) {
+            idBlock.clear();
+            idBlock.addAll(jdbcTemplate.queryForList(NEXT_ID_BLOCK_SQL, Long.class, props.getIdBlockSize()));
+            idBlockFetchedAt = now;
+        }
+        return idBlock.removeFirst();
+    }
+
+    private void writeLoop() {
+        List<PendingMessage> batch = new ArrayList<>(props.getBatchSize());
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingMessage first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // Espera hasta `linger` para completar el lote
+                long deadline = System.nanoTime() + props.getLinger().toNanos();
+                while (batch.size() < props.getBatchSize()) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingMessage next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        queue.drainTo(batch, props.getBatchSize() - batch.size());
+                        break;
+                    }
+                    batch.add(next);
+                }
+                persistWithRetry(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("Escritor de mensajes interrumpido con {} mensajes en cola", queue.size());
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Persiste el lote en una transacción. Un error de datos (p. ej. una clave foránea rota) no se
+     * arregla reintentando: el lote se divide en mitades hasta aislar la fila culpable, que es la
+     * única que falla. Los demás errores (conexión, bloqueos) se reintentan con espera exponencial.
+     */
+    private void persistWithRetry(List<PendingMessage> batch) throws InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> persist(batch));
+                break;
+            } catch (RuntimeException e) {
+                boolean dataError = isDataError(e);
+                if (dataError && batch.size() > 1) {
+                    log.warn("Error de datos en un lote de {} mensajes; se divide: {}", batch.size(), e.getMessage());
+                    int half = batch.size() / 2;
+                    persistWithRetry(new ArrayList<>(batch.subList(0, half)));
+                    persistWithRetry(new ArrayList<>(batch.subList(half, batch.size())));
+                    return;
+                }
+                if (dataError || attempt > props.getMaxRetries()) {
+                    log.error("No se pudo persistir un lote de {} mensajes: {}", batch.size(), e.getMessage(), e);
+                    failedMessages.increment(batch.size());
+                    batch.forEach(pending -> pending.persisted().completeExceptionally(e));
+                    return;
+                }
+                log.warn("Error al persistir lote de {} mensajes (intento {}): {}", batch.size(), attempt, e.getMessage());
+                Thread.sleep(100L << (attempt - 1));
+            }
+        }
+
+        batchSizes.record(batch.size());
+        long now = System.nanoTime();
+        for (PendingMessage pending : batch) {
+            persistLatency.record(now - pending.acceptedAt(), TimeUnit.NANOSECONDS);
+            tailCache.append(pending.message(), false);
+            pending.persisted().complete(null);
+        }
+    }
+
+    private void persist(List<PendingMessage> batch) {
+        jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), (ps, pending) -> {
+            ChatMessageDTO message = pending.message();
+            ps.setLong(1, message.getId());
+            ps.setLong(2, message.getConversationId());
+            ps.setLong(3, message.getSenderId());
+            ps.setLong(4, message.getReceiverId());
+            String stored = MessageContentConverter.encode(message.getContent(), compression);
+            ps.setString(5, stored);
+            ps.setTimestamp(6, Timestamp.valueOf(message.getSentAt()));
+            // content_tsv solo se rellena si el contenido se guarda codificado (to_tsvector(NULL) es NULL)
+            ps.setString(7, MessageContentConverter.isEncoded(stored) ? message.getContent() : null);
+        });
+
+        // Una actualización por conversación: último mensaje del lote y no leídos acumulados
+        Map<Long, MapSqlParameterSource> updates = new HashMap<>();
+        for (PendingMessage pending : batch) {
+            ChatMessageDTO message = pending.message();
+            MapSqlParameterSource params = updates.computeIfAbsent(message.getConversationId(), id ->
+                    new MapSqlParameterSource("conversationId", id)
+                            .addValue("messageId", 0L)
+                            .addValue("user1Increment", 0)
+                            .addValue("user2Increment", 0));
+            if (message.getId() > (Long) params.getValue("messageId")) {
+                params.addValue("messageId", message.getId())
+                        .addValue("senderId", message.getSenderId())
+                        .addValue("preview", Conversation.toPreview(message.getContent()))
+                        .addValue("sentAt", Timestamp.valueOf(message.getSentAt()));
+            }
+            // La pareja es canónica: user1 es el menor de los dos IDs
+            boolean receiverIsUser1 = message.getReceiverId() <= message.getSenderId();
+            String counter = receiverIsUser1 ? "user1Increment" : "user2Increment";
+            params.addValue(counter, (Integer) params.getValue(counter) + 1);
+        }
+        namedJdbcTemplate.batchUpdate(UPDATE_CONVERSATION_SQL, updates.values().toArray(new MapSqlParameterSource[0]));
+
+        Timestamp createdAt = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.batchUpdate(INSERT_OUTBOX_SQL, batch, batch.size(), (ps, pending) -> {
+            OutboxEvent event = eventPublisher.messageSentEvent(pending.message());
+            ps.setString(1, event.getEventType());
+            ps.setLong(2, event.getAggregateId());
+            ps.setString(3, event.getPayload());
+            ps.setTimestamp(4, createdAt);
+        });
+
+        syncChangeLog.recordMessagesSent(batch.stream().map(PendingMessage::message).toList());
+    }
+
+    // Errores deterministas de los datos del lote; los de recursos (conexión caída) son transitorios
+    private static boolean isDataError(RuntimeException e) {
+        return e instanceof NonTransientDataAccessException && !(e instanceof DataAccessResourceFailureException);
+    }
+
+    private static String pairKey(Long userA, Long userB) {
+        return Math.min(userA, userB) + ":" + Math.max(userA, userB);
+    }
+
+    /**
+     * Mensaje recibido por la ingesta asíncrona.
+     *
+     * @param message El mensaje con ID y conversación asignados, listo para entregarse.
+     * @param accepted false si la cola estaba llena y el mensaje se descartó.
+     * @param persisted Se completa cuando el mensaje está guardado, o con error si no pudo guardarse.
+     */
+    public record IngestedMessage(ChatMessageDTO message, boolean accepted, CompletableFuture<Void> persisted) {
+    }
+
+    private record PendingMessage(ChatMessageDTO message, CompletableFuture<Void> persisted, long acceptedAt) {
+    }
+}
@@ -1,20 +1,37 @@
 package com.iwellness.messaging.service;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import com.iwellness.messaging.clientes.UserApiClient;
+import com.iwellness.messaging.clientes.UserProfileCache;
+import com.iwellness.messaging.config.AppProperties;
 import com.iwellness.messaging.dto.ChatMessageDTO;
 import com.iwellness.messaging.dto.ConversationDetailDTO;
 import com.iwellness.messaging.dto.ConversationSummaryDTO;
+import com.iwellness.messaging.dto.DeliveryReceiptDTO;
+import com.iwellness.messaging.dto.PendingDeliveriesDTO;
+import com.iwellness.messaging.dto.ReadReceiptDTO;
 import com.iwellness.messaging.dto.UsuarioDTO;
 import com.iwellness.messaging.entity.Conversation;
 import com.iwellness.messaging.entity.Message;
+import com.iwellness.messaging.publisher.MessageEventPublisher;
+import com.iwellness.messaging.repository.ConversationInboxView;
+import com.iwellness.messaging.repository.MessageArchiveRepository;
 import com.iwellness.messaging.repository.ConversationRepository;
+import com.iwellness.messaging.repository.ConversationRepositoryCustom;
 import com.iwellness.messaging.repository.MessageRepository;
 
 import lombok.extern.slf4j.Slf4j;
@@ -25,20 +42,39 @@ public class MessagingService {
 
     private final ConversationRepository conversationRepository;
     private final MessageRepository messageRepository;
-    private final UserApiClient userApiClient;
+    private final UserProfileCache userProfileCache;
+    private final AppProperties appProperties;
+    private final MessageEventPublisher eventPublisher;
+    private final ConversationTailCache tailCache;
+    private final MessageSearchService messageSearchService;
+    private final MessageArchiveRepository messageArchive;
+    private final SyncChangeLog syncChangeLog;
 
     public MessagingService(ConversationRepository conversationRepository,
                             MessageRepository messageRepository,
-                            UserApiClient userApiClient) {
+                            UserProfileCache userProfileCache,
+                            AppProperties appProperties,
+                            MessageEventPublisher eventPublisher,
+                            ConversationTailCache tailCache,
+                            MessageSearchService messageSearchService,
+                            MessageArchiveRepository messageArchive,
+                            SyncChangeLog syncChangeLog) {
         this.conversationRepository = conversationRepository;
         this.messageRepository = messageRepository;
-        this.userApiClient = userApiClient;
+        this.userProfileCache = userProfileCache;
+        this.appProperties = appProperties;
+        this.eventPublisher = eventPublisher;
+        this.tailCache = tailCache;
+        this.messageSearchService = messageSearchService;
+        this.messageArchive = messageArchive;
+        this.syncChangeLog = syncChangeLog;
     }
 
     /**
      * Procesa y guarda un nuevo mensaje.
-     * Busca una conversación existente entre el emisor y el receptor.
-     * Si no existe, crea una nueva.
+     * Obtiene o crea la conversación entre el emisor y el receptor con un upsert atómico,
+     * inserta el mensaje, actualiza el modelo de lectura y registra el evento MessageSent
+     * en el outbox, todo en la misma transacción.
      *
      * @param messageDTO DTO con la información del mensaje a enviar.
      * @return El DTO del mensaje guardado.
@@ -47,24 +83,14 @@ public class MessagingService {
     public ChatMessageDTO sendMessage(ChatMessageDTO messageDTO) {
         log.info("Sending message from user {} to user {}", messageDTO.getSenderId(), messageDTO.getReceiverId());
 
-        // Usa el método findByUsers para encontrar o crear la conversación
-        Conversation conversation = conversationRepository
-                .findByUsers(messageDTO.getSenderId(), messageDTO.getReceiverId())
-                .orElseGet(() -> {
-                    log.info("No existing conversation found. Creating a new one.");
-                    Conversation newConversation = new Conversation();
-                    newConversation.setUser1Id(messageDTO.getSenderId());
-                    newConversation.setUser2Id(messageDTO.getReceiverId());
-                    return conversationRepository.save(newConversation);
-                });
-
-        // Actualiza la fecha de la última actividad en la conversación
-        conversation.setUpdatedAt(LocalDateTime.now());
-        conversationRepository.save(conversation);
-
-        // Crea y guarda la nueva entidad de mensaje
+        // Obtiene o crea la conversación sin carreras: una sola por pareja aunque ambos escriban a la vez
+        ConversationRepositoryCustom.UpsertResult conversation =
+                upsertConversation(messageDTO.getSenderId(), messageDTO.getReceiverId());
+        Long conversationId = conversation.id();
+
+        // Crea y guarda la nueva entidad de mensaje (la referencia evita cargar la conversación)
         Message message = new Message();
-        message.setConversation(conversation);
+        message.setConversation(conversationRepository.getReferenceById(conversationId));
         message.setSenderId(messageDTO.getSenderId());
         message.setReceiverId(messageDTO.getReceiverId());
         message.setContent(messageDTO.getContent());
@@ -73,21 +99,99 @@ public class MessagingService {
         Message savedMessage = messageRepository.save(message);
         log.info("Message saved with ID: {}", savedMessage.getId());
 
-        return mapToChatMessageDTO(savedMessage);
+        // Actualiza último mensaje, última actividad y no leídos de la conversación en una sola sentencia
+        conversationRepository.registerNewMessage(
+                conversationId,
+                savedMessage.getId(),
+                savedMessage.getSenderId(),
+                savedMessage.getReceiverId(),
+                Conversation.toPreview(savedMessage.getContent()),
+                savedMessage.getSentAt());
+
+        ChatMessageDTO sentMessage = mapToChatMessageDTO(savedMessage);
+        eventPublisher.publishMessageSent(sentMessage);
+        tailCache.append(sentMessage, conversation.created());
+        messageSearchService.index(sentMessage);
+        syncChangeLog.recordMessageSent(sentMessage);
+        return sentMessage;
     }
 
 
     @Transactional(readOnly = true)
     public List<ConversationSummaryDTO> getConversationSummaries(Long userId) {
         log.info("Fetching conversation summaries for user ID: {}", userId);
-        // ✅ CORRECCIÓN: Usando el método findByParticipant del repositorio
-        List<Conversation> conversations = conversationRepository.findByParticipant(userId);
+        // Una sola consulta trae conversación, último mensaje y no leídos
+        List<ConversationInboxView> inbox = conversationRepository.findInboxByParticipant(userId);
+
+        // Todos los participantes de la página se resuelven en una sola consulta por lotes
+        Set<Long> participantIds = inbox.stream()
+                .map(row -> row.getUser1Id().equals(userId) ? row.getUser2Id() : row.getUser1Id())
+                .collect(Collectors.toSet());
+        Map<Long, UsuarioDTO> participants = userProfileCache.findAllById(participantIds);
 
-        return conversations.stream()
-                .map(conversation -> mapToSummaryDTO(conversation, userId))
+        return inbox.stream()
+                .map(row -> mapToSummaryDTO(row, userId, participants))
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Resúmenes de un subconjunto de las conversaciones del usuario, con la misma forma que
+     * {@link #getConversationSummaries(Long)}. Utilizado por la sincronización incremental.
+     *
+     * @param userId El ID del usuario.
+     * @param conversationIds Las conversaciones a resumir.
+     * @return Una lista de resúmenes, de la más reciente a la más antigua.
+     */
+    @Transactional(readOnly = true)
+    public List<ConversationSummaryDTO> getConversationSummaries(Long userId, Collection<Long> conversationIds) {
+        if (conversationIds.isEmpty()) {
+            return List.of();
+        }
+        List<ConversationInboxView> inbox = conversationRepository.findInboxByParticipantAndIdIn(userId, conversationIds);
+
+        Set<Long> participantIds = inbox.stream()
+                .map(row -> row.getUser1Id().equals(userId) ? row.getUser2Id() : row.getUser1Id())
+                .collect(Collectors.toSet());
+        Map<Long, UsuarioDTO> participants = userProfileCache.findAllById(participantIds);
+
+        return inbox.stream()
+                .map(row -> mapToSummaryDTO(row, userId, participants))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Obtiene varios mensajes por ID en una sola consulta. Los que ya no están en PostgreSQL
+     * (archivados) se omiten.
+     *
+     * @param messageIds Los IDs de los mensajes.
+     * @return Los mensajes encontrados, del más antiguo al más reciente.
+     */
+    @Transactional(readOnly = true)
+    public List<ChatMessageDTO> getMessagesByIds(Collection<Long> messageIds) {
+        if (messageIds.isEmpty()) {
+            return List.of();
+        }
+        return messageRepository.findAllById(messageIds).stream()
+                .sorted(Comparator.comparing(Message::getId))
+                .map(this::mapToChatMessageDTO)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Filtra los candidatos a los usuarios con los que el usuario tiene una conversación.
+     *
+     * @param userId El ID del usuario.
+     * @param candidateIds Los IDs a comprobar.
+     * @return Los candidatos que son interlocutores del usuario.
+     */
+    @Transactional(readOnly = true)
+    public Set<Long> findConversationPartners(Long userId, Collection<Long> candidateIds) {
+        if (candidateIds.isEmpty()) {
+            return Set.of();
+        }
+        return Set.copyOf(conversationRepository.findPartnerIdsIn(userId, candidateIds));
+    }
+
     /**
      * Crea una nueva conversación entre dos usuarios o recupera una existente.
      * Útil cuando un usuario quiere iniciar un chat desde la lista de contactos.
@@ -100,25 +204,10 @@ public class MessagingService {
     public ConversationSummaryDTO createOrGetConversation(Long senderId, Long receiverId) {
         log.info("Creating or getting conversation between user {} and user {}", senderId, receiverId);
 
-        // Busca una conversación existente entre los dos usuarios
-        Conversation conversation = conversationRepository
-                .findByUsers(senderId, receiverId)
-                .orElseGet(() -> {
-                    log.info("No existing conversation found. Creating a new one.");
-                    Conversation newConversation = new Conversation();
-                    newConversation.setUser1Id(senderId);
-                    newConversation.setUser2Id(receiverId);
-                    newConversation.setUpdatedAt(LocalDateTime.now());
-                    newConversation.setCreatedAt(LocalDateTime.now());
-                    newConversation.setMessages(List.of());
-                    return conversationRepository.save(newConversation);
-                });
-
-        // Si la conversación ya existía, actualizamos su timestamp
-        if (conversation.getId() != null) {
-            conversation.setUpdatedAt(LocalDateTime.now());
-            conversationRepository.save(conversation);
-        }
+        // Crea la conversación o, si ya existía, actualiza su timestamp en la misma sentencia
+        Long conversationId = upsertConversation(senderId, receiverId).id();
+        Conversation conversation = conversationRepository.findById(conversationId)
+                .orElseThrow(() -> new RuntimeException("Conversation not found with id: " + conversationId));
 
         // Retorna el resumen de la conversación para que el frontend pueda mostrarla
         return mapToSummaryDTO(conversation, senderId);
@@ -126,6 +215,25 @@ public class MessagingService {
 
     @Transactional(readOnly = true)
     public ConversationDetailDTO getConversationDetails(Long conversationId, Long userId) {
+        return getConversationDetails(conversationId, userId, null, null, null);
+    }
+
+    /**
+     * Obtiene el detalle de una conversación con una página de su historial.
+     * Usa paginación por keyset sobre el ID del mensaje: nunca recorre ni carga
+     * el historial completo, sin importar su longitud. La primera página de las
+     * conversaciones activas se sirve desde {@link ConversationTailCache}.
+     *
+     * @param conversationId El ID de la conversación.
+     * @param userId El ID del usuario que consulta (debe ser participante).
+     * @param beforeId Cursor opcional: devuelve mensajes anteriores a este ID.
+     * @param afterId Cursor opcional: devuelve mensajes posteriores a este ID.
+     * @param size Tamaño de página solicitado; se acota a los límites configurados.
+     * @return El detalle con los mensajes ordenados del más reciente al más antiguo.
+     */
+    @Transactional(readOnly = true)
+    public ConversationDetailDTO getConversationDetails(Long conversationId, Long userId,
+                                                        Long beforeId, Long afterId, Integer size) {
         log.info("Fetching details for conversation ID: {} for user ID: {}", conversationId, userId);
         Conversation conversation = conversationRepository.findById(conversationId)
                 .orElseThrow(() -> new RuntimeException("Conversation not found with id: " + conversationId));
@@ -135,13 +243,33 @@ public class MessagingService {
         }
 
         log.debug("Fetching participant info from admin-users-service");
-        UsuarioDTO participant1 = userApiClient.findById(conversation.getUser1Id());
-        UsuarioDTO participant2 = userApiClient.findById(conversation.getUser2Id());
-
-        List<Message> messages = messageRepository.findByConversationIdOrderBySentAtAsc(conversationId);
-        List<ChatMessageDTO> messageDTOs = messages.stream()
-                .map(this::mapToChatMessageDTO)
-                .collect(Collectors.toList());
+        Map<Long, UsuarioDTO> participants = userProfileCache.findAllById(
+                List.of(conversation.getUser1Id(), conversation.getUser2Id()));
+        UsuarioDTO participant1 = participants.get(conversation.getUser1Id());
+        UsuarioDTO participant2 = participants.get(conversation.getUser2Id());
+
+        int pageSize = resolvePageSize(size);
+        List<ChatMessageDTO> messageDTOs;
+        boolean hasMore;
+        ConversationTailCache.Page cached = afterId == null && beforeId == null
+                ? tailCache.firstPage(conversationId, conversation.getLastMessageId(), pageSize,
+                        tailSize -> readHistory(conversationId, null, null, tailSize))
+                : null;
+        if (cached != null) {
+            messageDTOs = cached.messages();
+            hasMore = cached.hasMore();
+        } else {
+            // Se pide un elemento extra para saber si hay más sin ejecutar un COUNT
+            messageDTOs = readHistory(conversationId, beforeId, afterId, pageSize + 1);
+            hasMore = messageDTOs.size() > pageSize;
+            if (hasMore) {
+                messageDTOs = messageDTOs.subList(0, pageSize);
+            }
+            if (afterId != null) {
+                messageDTOs = new ArrayList<>(messageDTOs);
+                Collections.reverse(messageDTOs);
+            }
+        }
 
         return ConversationDetailDTO.builder()
                 .id(conversation.getId())
@@ -150,6 +278,9 @@ public class MessagingService {
                 .participant1(participant1)
                 .participant2(participant2)
                 .messages(messageDTOs)
+                .newerCursor(messageDTOs.isEmpty() ? afterId : messageDTOs.get(0).getId())
+                .olderCursor(messageDTOs.isEmpty() ? beforeId : messageDTOs.get(messageDTOs.size() - 1).getId())
+                .hasMore(hasMore)
                 .build();
     }
 
@@ -158,10 +289,11 @@ public class MessagingService {
      *
      * @param messageId El ID del mensaje a marcar.
      * @param userId El ID del usuario que está leyendo el mensaje (debe ser el destinatario).
-     * @return El DTO del mensaje actualizado.
+     * @return La confirmación del mensaje; count es 1 solo si esta llamada lo marcó como leído
+     *         (0 si ya lo estaba o si otra lectura concurrente se adelantó).
      */
         @Transactional
-    public ChatMessageDTO markMessageAsRead(Long messageId, Long userId) {
+    public ReadReceiptDTO markMessageAsRead(Long messageId, Long userId) {
         log.info("Attempting to mark message {} as read by user {}", messageId, userId);
         Message message = messageRepository.findById(messageId)
                 .orElseThrow(() -> new RuntimeException("Message not found with id: " + messageId));
@@ -173,18 +305,168 @@ public class MessagingService {
             throw new SecurityException("You can only mark messages addressed to you as read.");
         }
 
+        ReadReceiptDTO receipt = ReadReceiptDTO.builder()
+                .conversationId(message.getConversation().getId())
+                .readerId(userId)
+                .senderId(message.getSenderId())
+                .firstMessageId(messageId)
+                .lastMessageId(messageId)
+                .readAt(message.getReadAt())
+                .build();
+
                 // Si ya está leído, no hacemos nada para evitar escrituras innecesarias en la BD.
         if (message.getIsRead()) {
             log.info("Message {} was already marked as read.", messageId);
-            return mapToChatMessageDTO(message);
+            return receipt;
+        }
+
+        // La actualización condicional evita descontar dos veces si dos lecturas compiten
+        LocalDateTime readAt = LocalDateTime.now();
+        if (messageRepository.markAsReadIfUnread(messageId, readAt) == 1) {
+            conversationRepository.decrementUnreadCount(message.getConversation().getId(), userId, 1);
+            tailCache.markRead(message.getConversation().getId(), userId, messageId, messageId, readAt);
+            receipt.setCount(1);
+            receipt.setReadAt(readAt);
+            eventPublisher.publishMessageRead(receipt);
+            syncChangeLog.recordMessagesRead(receipt);
+            log.info("Message {} successfully marked as read.", messageId);
+        } else {
+            log.info("Message {} was marked as read by a concurrent request.", messageId);
         }
+        return receipt;
+    }
+
+    /**
+     * Marca como leídos todos los mensajes de una conversación dirigidos al usuario
+     * hasta un mensaje dado (marca de agua), con una sola actualización masiva.
+     *
+     * @param conversationId El ID de la conversación.
+     * @param userId El ID del usuario lector (debe ser participante).
+     * @param upToMessageId ID del último mensaje leído, inclusive; si es nulo, se marcan todos.
+     * @return La confirmación agregada con el rango afectado.
+     */
+    @Transactional
+    public ReadReceiptDTO markConversationReadUpTo(Long conversationId, Long userId, Long upToMessageId) {
+        log.info("Marking conversation {} as read by user {} up to message {}", conversationId, userId, upToMessageId);
+        Conversation conversation = conversationRepository.findById(conversationId)
+                .orElseThrow(() -> new RuntimeException("Conversation not found with id: " + conversationId));
 
-        message.setIsRead(true);
-        message.setReadAt(LocalDateTime.now());
-        Message updatedMessage = messageRepository.save(message);
+        if (!conversation.hasParticipant(userId)) {
+            throw new SecurityException("User is not a participant of this conversation.");
+        }
 
-        log.info("Message {} successfully marked as read.", messageId);
-        return mapToChatMessageDTO(updatedMessage);
+        LocalDateTime readAt = LocalDateTime.now();
+        ReadReceiptDTO receipt = ReadReceiptDTO.builder()
+                .conversationId(conversationId)
+                .readerId(userId)
+                .senderId(conversation.getOtherParticipant(userId))
+                .readAt(readAt)
+                .build();
+
+        MessageRepository.UnreadRange range = messageRepository.findUnreadRange(
+                conversationId, userId, upToMessageId != null ? upToMessageId : Long.MAX_VALUE);
+        if (range == null || range.getFirstId() == null) {
+            log.info("No unread messages in conversation {} for user {}", conversationId, userId);
+            return receipt;
+        }
+
+        int count = messageRepository.markRangeAsRead(
+                conversationId, userId, range.getFirstId(), range.getLastId(), readAt);
+        if (count > 0) {
+            conversationRepository.decrementUnreadCount(conversationId, userId, count);
+        }
+
+        receipt.setFirstMessageId(range.getFirstId());
+        receipt.setLastMessageId(range.getLastId());
+        receipt.setCount(count);
+        if (count > 0) {
+            eventPublisher.publishMessageRead(receipt);
+            syncChangeLog.recordMessagesRead(receipt);
+            tailCache.markRead(conversationId, userId, range.getFirstId(), range.getLastId(), readAt);
+        }
+        log.info("{} messages marked as read in conversation {}", count, conversationId);
+        return receipt;
+    }
+
+    /**
+     * Confirma como entregados exactamente los mensajes que el cliente recibió en la página
+     * anterior, en todas sus conversaciones. No se usa una marca de agua por ID: los IDs se asignan
+     * antes del commit (y la ingesta diferida los asigna al aceptar el mensaje), así que un ID
+     * menor puede hacerse visible después de que el cliente leyera su página.
+     *
+     * @param userId El ID del destinatario.
+     * @param messageIds Los IDs recibidos por el cliente; los ajenos o ya entregados se ignoran.
+     * @return Una confirmación por conversación afectada, para notificar a cada remitente.
+     */
+    @Transactional
+    public List<DeliveryReceiptDTO> acknowledgeDelivered(Long userId, Collection<Long> messageIds) {
+        if (messageIds.isEmpty()) {
+            return List.of();
+        }
+        // Los pendientes quedan bloqueados: la confirmación lista justo los que pasan a entregados
+        Map<Long, List<Long>> pendingByConversation = new LinkedHashMap<>();
+        for (MessageRepository.PendingMessage row : messageRepository.findPendingIn(userId, messageIds)) {
+            pendingByConversation.computeIfAbsent(row.getConversationId(), id -> new ArrayList<>()).add(row.getId());
+        }
+        if (pendingByConversation.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, Conversation> conversations = conversationRepository.findAllById(pendingByConversation.keySet())
+                .stream()
+                .collect(Collectors.toMap(Conversation::getId, conversation -> conversation));
+
+        LocalDateTime deliveredAt = LocalDateTime.now();
+        List<DeliveryReceiptDTO> receipts = new ArrayList<>(pendingByConversation.size());
+        for (Map.Entry<Long, List<Long>> entry : pendingByConversation.entrySet()) {
+            Conversation conversation = conversations.get(entry.getKey());
+            List<Long> delivered = entry.getValue();
+            int count = messageRepository.markDeliveredIn(conversation.getId(), userId, delivered, deliveredAt);
+            if (count == 0) {
+                continue;
+            }
+            DeliveryReceiptDTO receipt = DeliveryReceiptDTO.builder()
+                    .conversationId(conversation.getId())
+                    .recipientId(userId)
+                    .senderId(conversation.getOtherParticipant(userId))
+                    .messageIds(delivered)
+                    .count(count)
+                    .deliveredAt(deliveredAt)
+                    .build();
+            eventPublisher.publishMessageDelivered(receipt);
+            syncChangeLog.recordMessagesDelivered(receipt);
+            tailCache.markDelivered(conversation.getId(), userId, delivered, deliveredAt);
+            receipts.add(receipt);
+        }
+        log.info("User {} acknowledged {} delivered messages in {} conversations",
+                userId, messageIds.size(), receipts.size());
+        return receipts;
+    }
+
+    /**
+     * Obtiene una página de mensajes pendientes de entrega para el usuario, en todas sus
+     * conversaciones, sin recorrer el historial ya entregado.
+     *
+     * @param userId El ID del destinatario.
+     * @param afterId Cursor opcional: devuelve mensajes posteriores a este ID.
+     * @param size Tamaño de página solicitado; se acota a los límites configurados.
+     * @return La página de mensajes pendientes, del más antiguo al más reciente.
+     */
+    @Transactional(readOnly = true)
+    public PendingDeliveriesDTO getPendingDeliveries(Long userId, Long afterId, Integer size) {
+        int pageSize = resolvePageSize(size);
+        List<Message> messages = messageRepository.findByReceiverIdAndDeliveredAtIsNullAndIdGreaterThanOrderByIdAsc(
+                userId, afterId != null ? afterId : 0L, Limit.of(pageSize + 1));
+
+        boolean hasMore = messages.size() > pageSize;
+        List<ChatMessageDTO> messageDTOs = (hasMore ? messages.subList(0, pageSize) : messages).stream()
+                .map(this::mapToChatMessageDTO)
+                .collect(Collectors.toList());
+
+        return PendingDeliveriesDTO.builder()
+                .messages(messageDTOs)
+                .nextCursor(messageDTOs.isEmpty() ? afterId : messageDTOs.get(messageDTOs.size() - 1).getId())
+                .hasMore(hasMore)
+                .build();
     }
 
         /**
@@ -202,36 +484,137 @@ public class MessagingService {
 
     // --- Métodos de Ayuda (Helpers) ---
 
+    /**
+     * Lee una página del historial de ambos niveles: las particiones de PostgreSQL y el archivo
+     * frío. El archivo solo se consulta en el rango de IDs que la página caliente no cubre
+     * (o si la página no se llenó), así que el historial reciente nunca toca el disco.
+     *
+     * @return Hasta limit mensajes; ascendentes si hay afterId, descendentes en otro caso.
+     */
+    private List<ChatMessageDTO> readHistory(Long conversationId, Long beforeId, Long afterId, int limit) {
+        Limit hotLimit = Limit.of(limit);
+        List<ChatMessageDTO> hot;
+        if (afterId != null) {
+            hot = messageRepository.findByConversationIdAndIdGreaterThanOrderByIdAsc(conversationId, afterId, hotLimit)
+                    .stream().map(message -> mapToChatMessageDTO(message, conversationId)).toList();
+        } else if (beforeId != null) {
+            hot = messageRepository.findByConversationIdAndIdLessThanOrderByIdDesc(conversationId, beforeId, hotLimit)
+                    .stream().map(message -> mapToChatMessageDTO(message, conversationId)).toList();
+        } else {
+            hot = messageRepository.findByConversationIdOrderByIdDesc(conversationId, hotLimit)
+                    .stream().map(message -> mapToChatMessageDTO(message, conversationId)).toList();
+        }
+
+        // Con la página llena, el archivo solo aporta IDs dentro del rango ya leído
+        boolean full = hot.size() >= limit;
+        long bound = full ? hot.get(hot.size() - 1).getId() : 0L;
+        List<ChatMessageDTO> archived = afterId != null
+                ? messageArchive.readAfter(conversationId, afterId, full ? bound : Long.MAX_VALUE, limit)
+                : messageArchive.readBefore(conversationId, beforeId != null ? beforeId : Long.MAX_VALUE,
+                        full ? bound : 0L, limit);
+        if (archived.isEmpty()) {
+            return hot;
+        }
+
+        Comparator<Long> order = afterId != null ? Comparator.naturalOrder() : Comparator.reverseOrder();
+        TreeMap<Long, ChatMessageDTO> merged = new TreeMap<>(order);
+        archived.forEach(message -> merged.put(message.getId(), message));
+        // Mientras se archiva una partición, un mensaje puede estar en ambos niveles: prima el caliente
+        hot.forEach(message -> merged.put(message.getId(), message));
+        return merged.values().stream().limit(limit).collect(Collectors.toList());
+    }
+
+    private ConversationRepositoryCustom.UpsertResult upsertConversation(Long senderId, Long receiverId) {
+        LocalDateTime now = LocalDateTime.now();
+        ConversationRepositoryCustom.UpsertResult result =
+                conversationRepository.upsertConversation(senderId, receiverId, now);
+        if (result.created()) {
+            eventPublisher.publishConversationCreated(result.id(), senderId, receiverId, now);
+            syncChangeLog.recordConversationCreated(result.id(), senderId, receiverId);
+        }
+        return result;
+    }
+
     private ConversationSummaryDTO mapToSummaryDTO(Conversation conversation, Long currentUserId) {
         Long otherParticipantId = conversation.getUser1Id().equals(currentUserId)
                 ? conversation.getUser2Id()
                 : conversation.getUser1Id();
 
-        UsuarioDTO otherParticipantInfo = userApiClient.findById(otherParticipantId);
-
-        Message lastMessage = messageRepository.findTopByConversationIdOrderBySentAtDesc(conversation.getId())
-                .orElse(null);
+        UsuarioDTO otherParticipantInfo = userProfileCache.findById(otherParticipantId);
 
-        long unreadCount = messageRepository.countByConversationIdAndReceiverIdAndIsReadIsFalse(conversation.getId(), currentUserId);
+        // El último mensaje y los no leídos salen del modelo de lectura de la conversación
+        ChatMessageDTO lastMessage = null;
+        if (conversation.getLastMessageId() != null) {
+            lastMessage = messageRepository.findById(conversation.getLastMessageId())
+                    .map(message -> mapToChatMessageDTO(message, conversation.getId()))
+                    .orElseGet(() -> messageArchive.find(conversation.getId(), conversation.getLastMessageId()));
+        }
+        if (lastMessage != null) {
+            lastMessage.setContent(conversation.getLastMessagePreview());
+        }
 
         return ConversationSummaryDTO.builder()
                 .id(conversation.getId())
-                .lastMessageAt(lastMessage != null ? lastMessage.getSentAt() : conversation.getUpdatedAt())
+                .lastMessageAt(conversation.getLastMessageAt() != null ? conversation.getLastMessageAt() : conversation.getUpdatedAt())
+                .otherParticipant(otherParticipantInfo)
+                .lastMessage(lastMessage)
+                .unreadCount(conversation.getUnreadCountFor(currentUserId))
+                .build();
+    }
+
+    private ConversationSummaryDTO mapToSummaryDTO(ConversationInboxView row, Long currentUserId,
+                                                   Map<Long, UsuarioDTO> participants) {
+        Long otherParticipantId = row.getUser1Id().equals(currentUserId)
+                ? row.getUser2Id()
+                : row.getUser1Id();
+
+        UsuarioDTO otherParticipantInfo = participants.get(otherParticipantId);
+
+        ChatMessageDTO lastMessage = null;
+        if (row.getLastMessageId() != null) {
+            lastMessage = ChatMessageDTO.builder()
+                    .id(row.getLastMessageId())
+                    .conversationId(row.getConversationId())
+                    .senderId(row.getLastMessageSenderId())
+                    .receiverId(row.getLastMessageReceiverId())
+                    .content(row.getLastMessageContent())
+                    .isRead(row.getLastMessageIsRead())
+                    .readAt(row.getLastMessageReadAt())
+                    .sentAt(row.getLastMessageSentAt())
+                    .build();
+        }
+
+        return ConversationSummaryDTO.builder()
+                .id(row.getConversationId())
+                .lastMessageAt(lastMessage != null ? lastMessage.getSentAt() : row.getUpdatedAt())
                 .otherParticipant(otherParticipantInfo)
-                .lastMessage(lastMessage != null ? mapToChatMessageDTO(lastMessage) : null)
-                .unreadCount(unreadCount)
+                .lastMessage(lastMessage)
+                .unreadCount(row.getUnreadCount() != null ? row.getUnreadCount() : 0L)
                 .build();
     }
 
+    private int resolvePageSize(Integer requestedSize) {
+        AppProperties.Pagination pagination = appProperties.getMessaging().getPagination();
+        if (requestedSize == null || requestedSize <= 0) {
+            return pagination.getDefaultSize();
+        }
+        return Math.min(requestedSize, pagination.getMaxSize());
+    }
+
     private ChatMessageDTO mapToChatMessageDTO(Message message) {
+        return mapToChatMessageDTO(message, message.getConversation().getId());
+    }
+
+    private ChatMessageDTO mapToChatMessageDTO(Message message, Long conversationId) {
         return ChatMessageDTO.builder()
                 .id(message.getId())
-                .conversationId(message.getConversation().getId())
+                .conversationId(conversationId)
                 .senderId(message.getSenderId())
                 .receiverId(message.getReceiverId())
                 .content(message.getContent())
                 .isRead(message.getIsRead())
                 .readAt(message.getReadAt())
+                .deliveredAt(message.getDeliveredAt())
                 .sentAt(message.getSentAt())
                 .build();
     }
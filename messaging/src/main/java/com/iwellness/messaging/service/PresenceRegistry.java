@@ -0,0 +1,287 @@
+package com.iwellness.messaging.service;
+
+import java.security.Principal;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import com.iwellness.messaging.config.AppProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.iwellness.messaging.dto.PresenceDTO;
+import com.iwellness.messaging.dto.PresenceUpdateDTO;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Registro de presencia del clúster: qué usuarios tienen sesiones STOMP en este nodo
+ * y, en modo clúster, en qué otros nodos están conectados según sus anuncios de presencia.
+ * Los usuarios se identifican por el nombre del Principal de la sesión, la misma clave
+ * que usa convertAndSendToUser (el ID de usuario, ver UserIdHandshakeHandler). Los nodos que
+ * dejan de anunciarse durante app.websocket.cluster.presence-ttl se descartan.
+ * Para los usuarios desconectados se conserva la hora de la última desconexión (last seen).
+ */
+@Slf4j
+@Component
+public class PresenceRegistry {
+
+    /**
+     * Se publica cuando un usuario abre su primera sesión en este nodo o cierra la última.
+     */
+    public record PresenceChangedEvent(String user, boolean online) {
+    }
+
+    private static final class NodePresence {
+        private final Set<String> users = ConcurrentHashMap.newKeySet();
+        private volatile long lastSeen;
+    }
+
+    private final String nodeId;
+    private final long remoteTtlMillis;
+    private final ApplicationEventPublisher eventPublisher;
+
+    // Usuario local -> número de sesiones abiertas en este nodo
+    private final Map<String, Integer> localUsers = new ConcurrentHashMap<>();
+    // Sesión -> usuario, para resolver la desconexión
+    private final Map<String, String> sessionUsers = new ConcurrentHashMap<>();
+    // Nodo remoto -> usuarios anunciados, e índice inverso usuario -> nodos
+    private final Map<String, NodePresence> remoteNodes = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> remoteUserNodes = new ConcurrentHashMap<>();
+    // Usuario desconectado -> última desconexión (epoch ms); acotado, como la caché de conversaciones
+    private final Cache<String, Long> lastSeen = Caffeine.newBuilder()
+            .maximumSize(100_000)
+            .build();
+
+    private final Counter connects;
+    private final Counter disconnects;
+
+    public PresenceRegistry(AppProperties appProperties, ApplicationEventPublisher eventPublisher,
+                            MeterRegistry meterRegistry) {
+        AppProperties.Cluster cluster = appProperties.getWebsocket().getCluster();
+        String baseId = StringUtils.hasText(cluster.getNodeId()) ? cluster.getNodeId() : "node";
+        // Sufijo aleatorio: un nodo reiniciado con el mismo hostname es un nodo nuevo
+        this.nodeId = baseId + "-" + UUID.randomUUID().toString().substring(0, 8);
+        this.remoteTtlMillis = cluster.getPresenceTtl().toMillis();
+        this.eventPublisher = eventPublisher;
+
+        Gauge.builder("messaging.presence.sessions", sessionUsers, Map::size)
+                .description("Sesiones STOMP autenticadas en este nodo")
+                .register(meterRegistry);
+        Gauge.builder("messaging.presence.users", localUsers, Map::size)
+                .tag("scope", "local")
+                .description("Usuarios con al menos una sesión en este nodo")
+                .register(meterRegistry);
+        Gauge.builder("messaging.presence.users", remoteUserNodes, Map::size)
+                .tag("scope", "remote")
+                .description("Usuarios conectados a otros nodos del clúster")
+                .register(meterRegistry);
+        Gauge.builder("messaging.cluster.nodes", remoteNodes, Map::size)
+                .description("Nodos remotos con presencia vigente")
+                .register(meterRegistry);
+        this.connects = Counter.builder("messaging.presence.connects")
+                .description("Sesiones STOMP autenticadas abiertas en este nodo")
+                .register(meterRegistry);
+        this.disconnects = Counter.builder("messaging.presence.disconnects")
+                .description("Sesiones STOMP autenticadas cerradas en este nodo")
+                .register(meterRegistry);
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @EventListener
+    public void onSessionConnected(SessionConnectedEvent event) {
+        Principal user = event.getUser();
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(event.getMessage().getHeaders());
+        if (user == null || sessionId == null) {
+            return;
+        }
+        sessionUsers.put(sessionId, user.getName());
+        connects.increment();
+        if (localUsers.merge(user.getName(), 1, Integer::sum) == 1) {
+            lastSeen.invalidate(user.getName());
+            eventPublisher.publishEvent(new PresenceChangedEvent(user.getName(), true));
+        }
+    }
+
+    @EventListener
+    public void onSessionDisconnect(SessionDisconnectEvent event) {
+        String user = sessionUsers.remove(event.getSessionId());
+        if (user == null) {
+            return;
+        }
+        disconnects.increment();
+        if (localUsers.computeIfPresent(user, (name, sessions) -> sessions > 1 ? sessions - 1 : null) == null) {
+            lastSeen.put(user, System.currentTimeMillis());
+            eventPublisher.publishEvent(new PresenceChangedEvent(user, false));
+        }
+    }
+
+    /**
+     * @return true si el usuario tiene al menos una sesión abierta en este nodo.
+     */
+    public boolean isLocal(String user) {
+        return localUsers.containsKey(user);
+    }
+
+    /**
+     * @return true si el usuario tiene sesión en este nodo o en otro nodo vigente del clúster.
+     */
+    public boolean isOnline(String user) {
+        return isLocal(user) || !getRemoteNodes(user).isEmpty();
+    }
+
+    /**
+     * Estado de conexión de varios usuarios, sin consultar a otros nodos.
+     *
+     * @param userIds Los IDs de usuario.
+     * @return Un estado por ID, en el mismo orden.
+     */
+    public List<PresenceDTO> getPresence(Collection<Long> userIds) {
+        List<PresenceDTO> presence = new ArrayList<>(userIds.size());
+        for (Long userId : userIds) {
+            String user = userId.toString();
+            boolean online = isOnline(user);
+            Long seen = online ? null : lastSeen.getIfPresent(user);
+            presence.add(PresenceDTO.builder()
+                    .userId(userId)
+                    .online(online)
+                    .sessions(localUsers.getOrDefault(user, 0))
+                    .lastSeen(seen != null
+                            ? LocalDateTime.ofInstant(Instant.ofEpochMilli(seen), ZoneId.systemDefault()) : null)
+                    .build());
+        }
+        return presence;
+    }
+
+    /**
+     * @return Los usuarios con sesión en este nodo.
+     */
+    public List<String> getLocalUsers() {
+        return new ArrayList<>(localUsers.keySet());
+    }
+
+    /**
+     * @return Los nodos remotos vigentes donde el usuario tiene sesión (vacío si no está conectado en otro nodo).
+     */
+    public List<String> getRemoteNodes(String user) {
+        Set<String> nodes = remoteUserNodes.get(user);
+        if (nodes == null) {
+            return List.of();
+        }
+        long threshold = System.currentTimeMillis() - remoteTtlMillis;
+        List<String> alive = new ArrayList<>(nodes.size());
+        for (String node : nodes) {
+            NodePresence presence = remoteNodes.get(node);
+            if (presence != null && presence.lastSeen >= threshold) {
+                alive.add(node);
+            }
+        }
+        return alive;
+    }
+
+    /**
+     * Aplica un anuncio de presencia recibido de otro nodo.
+     */
+    public synchronized void applyRemoteUpdate(PresenceUpdateDTO update) {
+        String node = update.getNodeId();
+        if (node == null || node.equals(nodeId)) {
+            return;
+        }
+        List<String> users = update.getUsers() != null ? update.getUsers() : List.of();
+        switch (update.getType()) {
+            case "HELLO", "SNAPSHOT" -> {
+                removeNode(node);
+                NodePresence presence = remoteNodes.computeIfAbsent(node, n -> new NodePresence());
+                addUsers(node, presence, users);
+            }
+            case "ONLINE" -> addUsers(node, remoteNodes.computeIfAbsent(node, n -> new NodePresence()), users);
+            case "OFFLINE" -> {
+                NodePresence presence = remoteNodes.get(node);
+                if (presence != null) {
+                    removeUsers(node, presence, users);
+                }
+                users.forEach(user -> lastSeen.put(user, update.getTimestamp()));
+            }
+            case "LEAVE" -> {
+                removeNode(node);
+                return;
+            }
+            default -> {
+                log.warn("Tipo de anuncio de presencia desconocido: {}", update.getType());
+                return;
+            }
+        }
+        NodePresence presence = remoteNodes.get(node);
+        if (presence != null) {
+            presence.lastSeen = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Descarta los nodos que no se han anunciado dentro del TTL de presencia.
+     *
+     * @return El número de nodos descartados.
+     */
+    public synchronized int evictStaleNodes() {
+        long threshold = System.currentTimeMillis() - remoteTtlMillis;
+        List<String> stale = remoteNodes.entrySet().stream()
+                .filter(entry -> entry.getValue().lastSeen < threshold)
+                .map(Map.Entry::getKey)
+                .toList();
+        stale.forEach(node -> {
+            log.warn("Nodo {} sin anuncios de presencia en {}; se descarta", node, Duration.ofMillis(remoteTtlMillis));
+            removeNode(node);
+        });
+        return stale.size();
+    }
+
+    private void addUsers(String node, NodePresence presence, Collection<String> users) {
+        for (String user : users) {
+            presence.users.add(user);
+            remoteUserNodes.computeIfAbsent(user, u -> ConcurrentHashMap.newKeySet()).add(node);
+        }
+    }
+
+    private void removeUsers(String node, NodePresence presence, Collection<String> users) {
+        for (String user : users) {
+            presence.users.remove(user);
+            remoteUserNodes.computeIfPresent(user, (u, nodes) -> {
+                nodes.remove(node);
+                return nodes.isEmpty() ? null : nodes;
+            });
+        }
+    }
+
+    private void removeNode(String node) {
+        NodePresence presence = remoteNodes.remove(node);
+        if (presence != null) {
+            List<String> users = new ArrayList<>(presence.users);
+            removeUsers(node, presence, users);
+            // Quien solo estaba en ese nodo pasa a desconectado desde su último anuncio
+            users.stream()
+                    .filter(user -> !isOnline(user))
+                    .forEach(user -> lastSeen.put(user, presence.lastSeen));
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.iwellness.messaging.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.iwellness.messaging.dto.ReadReceiptDTO;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Agrupa las confirmaciones de lectura dirigidas a un remitente. En lugar de un frame por
+ * mensaje leído, cada read-receipt-flush-interval se envía a /queue/read-receipts un único
+ * ReadReceiptDTO por conversación con los rangos leídos (disjuntos, sin rellenar los huecos
+ * entre lecturas separadas) y el total acumulado.
+ */
+@Slf4j
+@Service
+public class ReadReceiptAggregator {
+
+    private final UserMessageRouter userMessageRouter;
+
+    // "remitente:conversación" -> confirmación acumulada pendiente de enviar
+    private final Map<String, ReadReceiptDTO> pending = new ConcurrentHashMap<>();
+
+    private final Counter received;
+    private final Counter sent;
+
+    public ReadReceiptAggregator(UserMessageRouter userMessageRouter, MeterRegistry meterRegistry) {
+        this.userMessageRouter = userMessageRouter;
+        this.received = Counter.builder("messaging.signals.received")
+                .tag("type", "read-receipt")
+                .description("Señales recibidas de los clientes")
+                .register(meterRegistry);
+        this.sent = Counter.builder("messaging.signals.sent")
+                .tag("type", "read-receipt")
+                .description("Señales enviadas a los clientes tras la coalescencia")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Acumula una confirmación; se enviará al remitente en el siguiente ciclo.
+     */
+    public void add(ReadReceiptDTO receipt) {
+        received.increment();
+        pending.merge(receipt.getSenderId() + ":" + receipt.getConversationId(), copyOf(receipt),
+                ReadReceiptAggregator::merge);
+    }
+
+    @Scheduled(fixedDelayString = "#{@appProperties.websocket.signals.readReceiptFlushInterval.toMillis()}")
+    public void flush() {
+        for (String key : pending.keySet()) {
+            ReadReceiptDTO receipt = pending.remove(key);
+            if (receipt == null) {
+                continue;
+            }
+            try {
+                userMessageRouter.sendToUser(receipt.getSenderId().toString(), "/queue/read-receipts", receipt);
+                sent.increment();
+            } catch (Exception e) {
+                log.warn("No se pudo enviar la confirmación de lectura de la conversación {}: {}",
+                        receipt.getConversationId(), e.getMessage());
+            }
+        }
+    }
+
+    private static ReadReceiptDTO merge(ReadReceiptDTO current, ReadReceiptDTO next) {
+        current.setRanges(union(current.getRanges(), next.getRanges().get(0)));
+        current.setFirstMessageId(current.getRanges().get(0).getFirst());
+        current.setLastMessageId(current.getRanges().get(current.getRanges().size() - 1).getLast());
+        current.setCount(current.getCount() + next.getCount());
+        if (next.getReadAt() != null && (current.getReadAt() == null || next.getReadAt().isAfter(current.getReadAt()))) {
+            current.setReadAt(next.getReadAt());
+        }
+        return current;
+    }
+
+    /**
+     * Inserta un rango en una lista ordenada de rangos disjuntos, fusionando solo los que se solapan:
+     * leer 10 y 50 no confirma los mensajes intermedios.
+     */
+    private static List<ReadReceiptDTO.Range> union(List<ReadReceiptDTO.Range> ranges, ReadReceiptDTO.Range added) {
+        List<ReadReceiptDTO.Range> result = new ArrayList<>(ranges.size() + 1);
+        long first = added.getFirst();
+        long last = added.getLast();
+        boolean inserted = false;
+        for (ReadReceiptDTO.Range range : ranges) {
+            if (range.getLast() < first) {
+                result.add(range);
+            } else if (range.getFirst() > last) {
+                if (!inserted) {
+                    result.add(new ReadReceiptDTO.Range(first, last));
+                    inserted = true;
+                }
+                result.add(range);
+            } else {
+                first = Math.min(first, range.getFirst());
+                last = Math.max(last, range.getLast());
+            }
+        }
+        if (!inserted) {
+            result.add(new ReadReceiptDTO.Range(first, last));
+        }
+        return result;
+    }
+
+    // Las confirmaciones acumuladas se modifican: no se comparte la instancia del llamador
+    private static ReadReceiptDTO copyOf(ReadReceiptDTO receipt) {
+        return ReadReceiptDTO.builder()
+                .conversationId(receipt.getConversationId())
+                .readerId(receipt.getReaderId())
+                .senderId(receipt.getSenderId())
+                .firstMessageId(receipt.getFirstMessageId())
+                .lastMessageId(receipt.getLastMessageId())
+                .count(receipt.getCount())
+                .readAt(receipt.getReadAt())
+                .ranges(List.of(new ReadReceiptDTO.Range(receipt.getFirstMessageId(), receipt.getLastMessageId())))
+                .build();
+    }
+}
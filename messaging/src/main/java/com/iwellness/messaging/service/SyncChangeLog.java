@@ -0,0 +1,108 @@
+package com.iwellness.messaging.service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.iwellness.messaging.dto.ChatMessageDTO;
+import com.iwellness.messaging.dto.DeliveryReceiptDTO;
+import com.iwellness.messaging.dto.ReadReceiptDTO;
+import com.iwellness.messaging.entity.SyncChange;
+import com.iwellness.messaging.repository.SyncChangeRepository;
+
+/**
+ * Registra en sync_changes los cambios que la sincronización incremental debe devolver,
+ * una fila por participante, dentro de la transacción del cambio (como el outbox).
+ * Conviene llamarlo al final de la transacción: el ID se asigna al insertar y
+ * {@link DeltaSyncService} no lo entrega hasta que la transacción confirma.
+ */
+@Component
+public class SyncChangeLog {
+
+    private static final String INSERT_SQL = """
+            INSERT INTO sync_changes (user_id, conversation_id, change_type, message_id, actor_id, created_at)
+            VALUES (?, ?, ?, ?, ?, ?)
+            """;
+
+    private final SyncChangeRepository syncChangeRepository;
+    private final JdbcTemplate jdbcTemplate;
+
+    public SyncChangeLog(SyncChangeRepository syncChangeRepository, JdbcTemplate jdbcTemplate) {
+        this.syncChangeRepository = syncChangeRepository;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordMessageSent(ChatMessageDTO message) {
+        record(SyncChange.Type.MESSAGE, message.getConversationId(), message.getId(),
+                message.getSenderId(), message.getReceiverId());
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordMessagesRead(ReadReceiptDTO receipt) {
+        record(SyncChange.Type.READ, receipt.getConversationId(), receipt.getLastMessageId(),
+                receipt.getReaderId(), receipt.getSenderId());
+    }
+
+    /**
+     * Una fila por mensaje entregado y participante: la entrega no es una marca de agua.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordMessagesDelivered(DeliveryReceiptDTO receipt) {
+        Timestamp createdAt = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> rows = new ArrayList<>(receipt.getMessageIds().size() * 2);
+        for (Long messageId : receipt.getMessageIds()) {
+            for (Long userId : List.of(receipt.getRecipientId(), receipt.getSenderId())) {
+                rows.add(new Object[] {userId, receipt.getConversationId(), SyncChange.Type.DELIVERED.name(),
+                        messageId, receipt.getRecipientId(), createdAt});
+            }
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, rows);
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordConversationCreated(Long conversationId, Long createdBy, Long otherUserId) {
+        record(SyncChange.Type.CONVERSATION, conversationId, null, createdBy, otherUserId);
+    }
+
+    /**
+     * Registra un lote de mensajes nuevos con un único INSERT en batch (ingesta asíncrona).
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordMessagesSent(List<ChatMessageDTO> messages) {
+        Timestamp createdAt = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> rows = new ArrayList<>(messages.size() * 2);
+        for (ChatMessageDTO message : messages) {
+            for (Long userId : List.of(message.getSenderId(), message.getReceiverId())) {
+                rows.add(new Object[] {userId, message.getConversationId(), SyncChange.Type.MESSAGE.name(),
+                        message.getId(), message.getSenderId(), createdAt});
+            }
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, rows);
+    }
+
+    private void record(SyncChange.Type type, Long conversationId, Long messageId, Long actorId, Long otherUserId) {
+        LocalDateTime now = LocalDateTime.now();
+        syncChangeRepository.saveAll(List.of(
+                change(type, actorId, conversationId, messageId, actorId, now),
+                change(type, otherUserId, conversationId, messageId, actorId, now)));
+    }
+
+    private static SyncChange change(SyncChange.Type type, Long userId, Long conversationId, Long messageId,
+                                     Long actorId, LocalDateTime createdAt) {
+        return SyncChange.builder()
+                .userId(userId)
+                .conversationId(conversationId)
+                .type(type)
+                .messageId(messageId)
+                .actorId(actorId)
+                .createdAt(createdAt)
+                .build();
+    }
+}
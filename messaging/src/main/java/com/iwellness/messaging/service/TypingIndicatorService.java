@@ -0,0 +1,122 @@
+package com.iwellness.messaging.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.iwellness.messaging.config.AppProperties;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Limita los indicadores de "escribiendo". Los clientes envían un aviso por pulsación; aquí se
+ * reenvía al destinatario como máximo uno por pareja emisor/receptor cada typing-throttle, y
+ * cuando dejan de llegar avisos durante typing-timeout se envía un único "dejó de escribir"
+ * a /queue/typing-stopped. Enviar un mensaje cierra el estado sin aviso: el mensaje ya lo indica.
+ */
+@Slf4j
+@Service
+public class TypingIndicatorService {
+
+    private static final class TypingState {
+        private final Long receiverId;
+        private final String username;
+        private long lastForwarded;
+        private volatile long lastSeen;
+
+        private TypingState(Long receiverId, String username) {
+            this.receiverId = receiverId;
+            this.username = username;
+        }
+    }
+
+    private final UserMessageRouter userMessageRouter;
+    private final long throttleMillis;
+    private final long timeoutMillis;
+
+    // Pareja "emisor:receptor" -> estado del indicador
+    private final Map<String, TypingState> typing = new ConcurrentHashMap<>();
+
+    private final Counter received;
+    private final Counter forwarded;
+    private final Counter stopped;
+
+    public TypingIndicatorService(UserMessageRouter userMessageRouter, AppProperties appProperties,
+                                  MeterRegistry meterRegistry) {
+        this.userMessageRouter = userMessageRouter;
+        AppProperties.Signals signals = appProperties.getWebsocket().getSignals();
+        this.throttleMillis = signals.getTypingThrottle().toMillis();
+        this.timeoutMillis = signals.getTypingTimeout().toMillis();
+
+        this.received = Counter.builder("messaging.signals.received")
+                .tag("type", "typing")
+                .description("Señales recibidas de los clientes")
+                .register(meterRegistry);
+        this.forwarded = Counter.builder("messaging.signals.sent")
+                .tag("type", "typing")
+                .description("Señales enviadas a los clientes tras la coalescencia")
+                .register(meterRegistry);
+        this.stopped = Counter.builder("messaging.signals.sent")
+                .tag("type", "typing-stopped")
+                .description("Señales enviadas a los clientes tras la coalescencia")
+                .register(meterRegistry);
+        Gauge.builder("messaging.signals.typing.active", typing, Map::size)
+                .description("Parejas con un indicador de escritura activo")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Registra un aviso de escritura y lo reenvía al destinatario si no se envió uno recientemente.
+     */
+    public void onTyping(Long senderId, String username, Long receiverId) {
+        received.increment();
+        long now = System.currentTimeMillis();
+        boolean[] forward = {false};
+        typing.compute(pairKey(senderId, receiverId), (key, state) -> {
+            if (state == null) {
+                state = new TypingState(receiverId, username);
+            }
+            forward[0] = now - state.lastForwarded >= throttleMillis;
+            if (forward[0]) {
+                state.lastForwarded = now;
+            }
+            state.lastSeen = now;
+            return state;
+        });
+        if (forward[0]) {
+            userMessageRouter.sendToUser(receiverId.toString(), "/queue/typing", username);
+            forwarded.increment();
+        }
+    }
+
+    /**
+     * Cierra el indicador sin notificar, p. ej. porque el emisor acaba de enviar un mensaje.
+     */
+    public void clear(Long senderId, Long receiverId) {
+        typing.remove(pairKey(senderId, receiverId));
+    }
+
+    @Scheduled(fixedDelay = 500)
+    public void expireIdle() {
+        long threshold = System.currentTimeMillis() - timeoutMillis;
+        typing.forEach((key, state) -> {
+            if (state.lastSeen < threshold && typing.remove(key, state)) {
+                try {
+                    userMessageRouter.sendToUser(state.receiverId.toString(), "/queue/typing-stopped", state.username);
+                    stopped.increment();
+                } catch (Exception e) {
+                    log.warn("No se pudo notificar fin de escritura de {}: {}", state.username, e.getMessage());
+                }
+            }
+        });
+    }
+
+    private static String pairKey(Long senderId, Long receiverId) {
+        return senderId + ":" + receiverId;
+    }
+}
@@ -0,0 +1,80 @@
+package com.iwellness.messaging.service;
+
+import java.util.List;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import com.iwellness.messaging.config.AppProperties;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Punto único de envío a destinos de usuario (/user/...).
+ * Con el broker simple y sin clúster, los envíos a usuarios sin sesión en este nodo se descartan
+ * (el mensaje ya está persistido y se recupera con la sincronización de pendientes). En modo clúster
+ * entrega en el broker local solo si el usuario tiene sesión en este nodo y reenvía a los nodos
+ * donde está conectado. Con el relay STOMP la presencia la conoce el broker externo y siempre se envía.
+ */
+@Service
+public class UserMessageRouter {
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final PresenceRegistry presenceRegistry;
+    private final ClusterMessageBridge clusterBridge;
+    private final boolean relayBroker;
+    private final Counter skippedOffline;
+
+    public UserMessageRouter(SimpMessagingTemplate messagingTemplate, PresenceRegistry presenceRegistry,
+                             ObjectProvider<ClusterMessageBridge> clusterBridge, AppProperties appProperties,
+                             MeterRegistry meterRegistry) {
+        this.messagingTemplate = messagingTemplate;
+        this.presenceRegistry = presenceRegistry;
+        this.clusterBridge = clusterBridge.getIfAvailable();
+        this.relayBroker = appProperties.getWebsocket().getBroker().getMode() == AppProperties.BrokerMode.RELAY;
+        this.skippedOffline = Counter.builder("messaging.delivery.skipped")
+                .tag("reason", "offline")
+                .description("Envíos a destinos de usuario descartados por no haber sesión conectada")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Envía un payload al destino de usuario indicado, en el nodo que corresponda.
+     *
+     * @param user El nombre del usuario (su ID).
+     * @param destination El destino relativo, p. ej. /queue/messages.
+     * @param payload El cuerpo a enviar.
+     */
+    public void sendToUser(String user, String destination, Object payload) {
+        if (relayBroker) {
+            messagingTemplate.convertAndSendToUser(user, destination, payload);
+            return;
+        }
+        boolean local = presenceRegistry.isLocal(user);
+        if (local) {
+            messagingTemplate.convertAndSendToUser(user, destination, payload);
+        }
+        List<String> remoteNodes = clusterBridge != null ? presenceRegistry.getRemoteNodes(user) : List.of();
+        if (!remoteNodes.isEmpty()) {
+            clusterBridge.forward(remoteNodes, user, destination, payload);
+        } else if (!local) {
+            skippedOffline.increment();
+        }
+    }
+
+    /**
+     * Envía un payload a una sesión concreta de este nodo por su ID de sesión STOMP, para las
+     * sesiones sin ID de usuario (que no tienen destino /user/{id}). El cliente lo recibe en
+     * /user/queue/... igual que los envíos por usuario.
+     */
+    public void sendToSession(String sessionId, String destination, Object payload) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setSessionId(sessionId);
+        headers.setLeaveMutable(true);
+        messagingTemplate.convertAndSendToUser(sessionId, destination, payload, headers.getMessageHeaders());
+    }
+}
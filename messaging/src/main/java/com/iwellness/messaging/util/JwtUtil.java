@@ -1,38 +1,156 @@
 package com.iwellness.messaging.util;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.Date;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 import javax.crypto.SecretKey;
 
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.iwellness.messaging.config.AppProperties;
+
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * Validación de tokens JWT. La clave HMAC y el parser se construyen una sola vez, y los
+ * tokens ya verificados se guardan en una caché acotada (indexada por el SHA-256 del token)
+ * que expira junto con el propio token, para no repetir la verificación de la firma
+ * en cada reconexión.
+ */
 @Slf4j
 @Component
 public class JwtUtil {
 
-    @Value("${app.jwt.secret}")
-    private String secret;
+    private static final String CACHE_NAME = "jwt";
+
+    /**
+     * Claims que usa la aplicación, extraídos de un token ya verificado.
+     * userId es el ID con el que el usuario envía y recibe mensajes (nulo si el token no lo trae).
+     */
+    public record TokenClaims(String username, Long userId, Long providerId, Date expiration) {
+
+        boolean isExpired() {
+            return expiration != null && expiration.before(new Date());
+        }
+    }
+
+    private final JwtParser parser;
+    private final String userIdClaim;
+    private final Cache<String, TokenClaims> verifiedTokens;
 
-    private SecretKey getSigningKey() {
+    public JwtUtil(AppProperties appProperties, MeterRegistry meterRegistry) {
         // Use the secret directly as UTF-8 bytes (same as admin-users-api)
-        byte[] keyBytes = secret.getBytes(java.nio.charset.StandardCharsets.UTF_8);
-        return Keys.hmacShaKeyFor(keyBytes);
+        byte[] keyBytes = appProperties.getJwt().getSecret().getBytes(StandardCharsets.UTF_8);
+        SecretKey signingKey = Keys.hmacShaKeyFor(keyBytes);
+        this.parser = Jwts.parser().verifyWith(signingKey).build();
+        this.userIdClaim = appProperties.getJwt().getUserIdClaim();
+
+        long maxTtlNanos = TimeUnit.MILLISECONDS.toNanos(appProperties.getJwt().getExpiration());
+        this.verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(appProperties.getJwt().getCacheMaxSize())
+                .expireAfter(new Expiry<String, TokenClaims>() {
+                    @Override
+                    public long expireAfterCreate(String digest, TokenClaims claims, long currentTime) {
+                        if (claims.expiration() == null) {
+                            return maxTtlNanos;
+                        }
+                        long remainingMillis = claims.expiration().getTime() - System.currentTimeMillis();
+                        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, remainingMillis));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String digest, TokenClaims claims, long currentTime,
+                                                  long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String digest, TokenClaims claims, long currentTime,
+                                                long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, verifiedTokens, CACHE_NAME);
+    }
+
+    /**
+     * Verifica el token una sola vez y devuelve todos los claims que necesita la aplicación.
+     *
+     * @param token El token JWT.
+     * @return Los claims, o vacío si el token es inválido o ha expirado.
+     */
+    public Optional<TokenClaims> parseToken(String token) {
+        String digest = digest(token);
+        TokenClaims claims = verifiedTokens.getIfPresent(digest);
+        if (claims == null) {
+            try {
+                claims = toTokenClaims(extractAllClaims(token));
+            } catch (Exception e) {
+                log.error("Error al validar token: {}", e.getMessage());
+                return Optional.empty();
+            }
+            verifiedTokens.put(digest, claims);
+        }
+        return claims.isExpired() ? Optional.empty() : Optional.of(claims);
     }
 
     private Claims extractAllClaims(String token) {
-        return Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
+        return parser.parseSignedClaims(token).getPayload();
+    }
+
+    private TokenClaims toTokenClaims(Claims claims) {
+        return new TokenClaims(claims.getSubject(), resolveUserId(claims),
+                claims.get("idProveedor", Long.class), claims.getExpiration());
+    }
+
+    /**
+     * El ID de usuario sale del claim configurado (app.jwt.user-id-claim), numérico o como texto
+     * numérico, o, si no existe o no es válido, del subject cuando este es numérico.
+     */
+    private Long resolveUserId(Claims claims) {
+        Long userId = toUserId(claims.get(userIdClaim));
+        if (userId == null) {
+            userId = toUserId(claims.getSubject());
+        }
+        return userId;
+    }
+
+    static Long toUserId(Object value) {
+        if (value instanceof Number number) {
+            // Un valor con decimales no es un ID
+            return number.doubleValue() == Math.rint(number.doubleValue()) ? number.longValue() : null;
+        }
+        if (value instanceof String text && text.matches("\\d{1,18}")) {
+            return Long.valueOf(text);
+        }
+        return null;
+    }
+
+    private static String digest(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
     }
 
     public <T> T extractClaim(String token, Function<Claims, T> claimsResolver) {
@@ -41,27 +159,18 @@ public class JwtUtil {
     }
 
     public String extractUsername(String token) {
-        return extractClaim(token, Claims::getSubject);
+        return parseToken(token).map(TokenClaims::username).orElse(null);
     }
 
     public Long extractProviderId(String token) {
-        return extractClaim(token, claims -> claims.get("idProveedor", Long.class));
+        return parseToken(token).map(TokenClaims::providerId).orElse(null);
     }
 
     public Date extractExpiration(String token) {
         return extractClaim(token, Claims::getExpiration);
     }
 
-    private Boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
-    }
-
     public Boolean validateToken(String token) {
-        try {
-            return !isTokenExpired(token);
-        } catch (Exception e) {
-            log.error("Error al validar token: {}", e.getMessage());
-            return false;
-        }
+        return parseToken(token).isPresent();
     }
 }
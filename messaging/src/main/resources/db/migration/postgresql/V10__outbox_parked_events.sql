@@ -0,0 +1,9 @@
+-- Eventos del outbox aparcados: tras app.rabbitmq.outbox.max-attempts fallos propios (sin routing key,
+-- payload inválido, nack) el relay marca la fila como PARKED y deja de tomarla, para que un evento
+-- envenenado no se reintente en cada ciclo. Las filas aparcadas se revisan a mano y se devuelven a
+-- PENDING (o se borran).
+
+ALTER TABLE outbox_events ADD COLUMN IF NOT EXISTS status VARCHAR(16) NOT NULL DEFAULT 'PENDING';
+
+-- El relay lee los pendientes en orden de id; los aparcados quedan fuera del índice
+CREATE INDEX IF NOT EXISTS idx_outbox_events_pending ON outbox_events (id) WHERE status = 'PENDING';
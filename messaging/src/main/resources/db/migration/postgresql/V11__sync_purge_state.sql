@@ -0,0 +1,19 @@
+-- Marca explícita de la purga de sync_changes: el menor cursor (xid) todavía válido. La purga la
+-- adelanta en la misma transacción en que borra; un cursor anterior exige una recarga completa.
+-- Antes la sincronización la deducía del xid mínimo que quedaba en la tabla, lo que fallaba con
+-- la tabla vacía o cuando las filas más antiguas de un usuario no eran las más antiguas de todas.
+
+CREATE TABLE IF NOT EXISTS sync_purge_state (
+    id             INTEGER      PRIMARY KEY,
+    purged_before  BIGINT       NOT NULL,
+    purged_at      TIMESTAMP(6)
+);
+
+-- Punto de partida conservador: lo anterior al xid más antiguo que queda pudo haberse purgado
+-- (con la tabla vacía, todo lo anterior a las transacciones en curso)
+INSERT INTO sync_purge_state (id, purged_before, purged_at)
+SELECT 1,
+       COALESCE((SELECT xid::text::bigint FROM sync_changes ORDER BY xid LIMIT 1),
+                pg_snapshot_xmin(pg_current_snapshot())::text::bigint),
+       NULL
+WHERE NOT EXISTS (SELECT 1 FROM sync_purge_state WHERE id = 1);
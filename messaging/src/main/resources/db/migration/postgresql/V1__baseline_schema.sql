@@ -0,0 +1,21 @@
+-- Esquema inicial, equivalente al generado por Hibernate antes de usar migraciones.
+-- En bases existentes no se ejecuta: Flyway las toma como línea base (versión 1).
+
+CREATE TABLE IF NOT EXISTS conversations (
+    id          BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    user1_id    BIGINT       NOT NULL,
+    user2_id    BIGINT       NOT NULL,
+    created_at  TIMESTAMP(6) NOT NULL,
+    updated_at  TIMESTAMP(6)
+);
+
+CREATE TABLE IF NOT EXISTS messages (
+    id               BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    conversation_id  BIGINT       NOT NULL REFERENCES conversations (id),
+    sender_id        BIGINT       NOT NULL,
+    receiver_id      BIGINT       NOT NULL,
+    content          TEXT         NOT NULL,
+    is_read          BOOLEAN      NOT NULL,
+    read_at          TIMESTAMP(6),
+    sent_at          TIMESTAMP(6) NOT NULL
+);
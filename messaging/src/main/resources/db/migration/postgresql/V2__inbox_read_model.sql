@@ -0,0 +1,8 @@
+-- Modelo de lectura desnormalizado de la bandeja de entrada (último mensaje y no leídos)
+
+ALTER TABLE conversations ADD COLUMN IF NOT EXISTS last_message_id        BIGINT;
+ALTER TABLE conversations ADD COLUMN IF NOT EXISTS last_message_sender_id BIGINT;
+ALTER TABLE conversations ADD COLUMN IF NOT EXISTS last_message_preview   VARCHAR(255);
+ALTER TABLE conversations ADD COLUMN IF NOT EXISTS last_message_at        TIMESTAMP(6);
+ALTER TABLE conversations ADD COLUMN IF NOT EXISTS user1_unread_count     INTEGER DEFAULT 0 NOT NULL;
+ALTER TABLE conversations ADD COLUMN IF NOT EXISTS user2_unread_count     INTEGER DEFAULT 0 NOT NULL;
@@ -0,0 +1,60 @@
+-- Pareja de participantes canónica (user1_id <= user2_id) con restricción única,
+-- e índices para las consultas calientes de mensajes.
+
+-- 1. Ordenar las parejas existentes (intercambiando también sus contadores)
+UPDATE conversations
+SET user1_id = user2_id,
+    user2_id = user1_id,
+    user1_unread_count = user2_unread_count,
+    user2_unread_count = user1_unread_count
+WHERE user1_id > user2_id;
+
+-- 2. Fusionar conversaciones duplicadas en la más antigua de cada pareja
+CREATE TEMPORARY TABLE conversation_merge ON COMMIT DROP AS
+SELECT id, MIN(id) OVER (PARTITION BY user1_id, user2_id) AS keep_id
+FROM conversations;
+
+UPDATE messages m
+SET conversation_id = cm.keep_id
+FROM conversation_merge cm
+WHERE m.conversation_id = cm.id
+  AND cm.id <> cm.keep_id;
+
+DELETE FROM conversations c
+USING conversation_merge cm
+WHERE c.id = cm.id
+  AND cm.id <> cm.keep_id;
+
+-- 3. Reconstruir el modelo de lectura a partir de los mensajes
+UPDATE conversations c
+SET user1_unread_count = (SELECT COUNT(*) FROM messages m
+                          WHERE m.conversation_id = c.id AND m.receiver_id = c.user1_id AND NOT m.is_read),
+    user2_unread_count = CASE WHEN c.user2_id = c.user1_id THEN 0
+                              ELSE (SELECT COUNT(*) FROM messages m
+                                    WHERE m.conversation_id = c.id AND m.receiver_id = c.user2_id AND NOT m.is_read) END,
+    last_message_id = lm.id,
+    last_message_sender_id = lm.sender_id,
+    last_message_preview = LEFT(lm.content, 255),
+    last_message_at = lm.sent_at
+FROM conversations c2
+LEFT JOIN LATERAL (
+    SELECT m.id, m.sender_id, m.content, m.sent_at
+    FROM messages m
+    WHERE m.conversation_id = c2.id
+    ORDER BY m.id DESC
+    LIMIT 1
+) lm ON TRUE
+WHERE c2.id = c.id;
+
+-- 4. Restricciones de la pareja canónica
+ALTER TABLE conversations ADD CONSTRAINT uk_conversations_user_pair UNIQUE (user1_id, user2_id);
+ALTER TABLE conversations ADD CONSTRAINT ck_conversations_user_order CHECK (user1_id <= user2_id);
+
+-- 5. Índices
+CREATE INDEX IF NOT EXISTS idx_conversations_user1_updated ON conversations (user1_id, updated_at DESC);
+CREATE INDEX IF NOT EXISTS idx_conversations_user2_updated ON conversations (user2_id, updated_at DESC);
+
+CREATE INDEX IF NOT EXISTS idx_messages_conversation_sent_at ON messages (conversation_id, sent_at);
+CREATE INDEX IF NOT EXISTS idx_messages_conversation_id ON messages (conversation_id, id);
+-- Índice parcial: solo contiene los mensajes pendientes de leer
+CREATE INDEX IF NOT EXISTS idx_messages_unread ON messages (conversation_id, receiver_id) WHERE is_read = FALSE;
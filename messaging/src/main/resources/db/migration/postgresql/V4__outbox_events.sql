@@ -0,0 +1,12 @@
+-- Outbox transaccional: eventos de dominio pendientes de publicar en RabbitMQ.
+-- Las filas se eliminan cuando el broker confirma la publicación, así que la tabla se mantiene pequeña.
+
+CREATE TABLE IF NOT EXISTS outbox_events (
+    id            BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    event_type    VARCHAR(64)  NOT NULL,
+    aggregate_id  BIGINT,
+    payload       TEXT         NOT NULL,
+    created_at    TIMESTAMP(6) NOT NULL,
+    attempts      INTEGER      NOT NULL DEFAULT 0,
+    last_error    VARCHAR(500)
+);
@@ -0,0 +1,9 @@
+-- Estado de entrega por mensaje: nulo hasta que el dispositivo del destinatario lo confirma.
+
+ALTER TABLE messages ADD COLUMN IF NOT EXISTS delivered_at TIMESTAMP(6);
+
+-- El historial previo se da por entregado: los clientes ya lo obtenían con el detalle completo
+UPDATE messages SET delivered_at = COALESCE(read_at, sent_at) WHERE delivered_at IS NULL;
+
+-- Índice parcial: solo contiene las entregas pendientes, que se consultan por destinatario
+CREATE INDEX IF NOT EXISTS idx_messages_undelivered ON messages (receiver_id, id) WHERE delivered_at IS NULL;
@@ -0,0 +1,17 @@
+-- Búsqueda de texto completo sobre el contenido de los mensajes.
+-- Columna generada: PostgreSQL la calcula en el mismo INSERT/UPDATE del mensaje, así que el
+-- índice se mantiene al día sin procesos aparte (también con la ingesta por lotes).
+-- Configuración 'simple': sin stemming ni stopwords, válida para contenido en cualquier idioma.
+-- Añadir una columna STORED reescribe la tabla: en tablas grandes, aplicar en ventana de mantenimiento.
+
+ALTER TABLE messages ADD COLUMN IF NOT EXISTS content_tsv tsvector
+    GENERATED ALWAYS AS (to_tsvector('simple', coalesce(content, ''))) STORED;
+
+-- Índices por usuario: con btree_gin la columna del usuario forma parte de la clave, así que cada
+-- rama de la búsqueda (como receptor y como emisor) solo visita las entradas de ese usuario en
+-- lugar de filtrar después los mensajes de todos.
+-- btree_gin es una extensión contrib; crearla requiere privilegios (o tenerla ya instalada).
+CREATE EXTENSION IF NOT EXISTS btree_gin;
+
+CREATE INDEX IF NOT EXISTS idx_messages_receiver_content_tsv ON messages USING GIN (receiver_id, content_tsv);
+CREATE INDEX IF NOT EXISTS idx_messages_sender_content_tsv ON messages USING GIN (sender_id, content_tsv);
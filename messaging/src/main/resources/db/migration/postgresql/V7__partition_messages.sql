@@ -0,0 +1,65 @@
+-- Particionado mensual de messages por sent_at (rango [mes, mes siguiente)).
+-- PostgreSQL exige que la clave primaria incluya la columna de partición: pasa a ser (id, sent_at);
+-- la unicidad del ID la garantiza la secuencia. Las particiones futuras las crea la aplicación
+-- (app.messaging.partitions.months-ahead) y la partición DEFAULT recoge cualquier fila fuera de rango.
+-- La migración copia la tabla a la nueva estructura: en tablas grandes, aplicar en ventana de mantenimiento.
+
+ALTER TABLE messages RENAME TO messages_unpartitioned;
+
+DROP INDEX IF EXISTS idx_messages_conversation_sent_at;
+DROP INDEX IF EXISTS idx_messages_conversation_id;
+DROP INDEX IF EXISTS idx_messages_unread;
+DROP INDEX IF EXISTS idx_messages_undelivered;
+DROP INDEX IF EXISTS idx_messages_receiver_content_tsv;
+DROP INDEX IF EXISTS idx_messages_sender_content_tsv;
+
+CREATE TABLE messages (
+    id               BIGINT       NOT NULL,
+    conversation_id  BIGINT       NOT NULL REFERENCES conversations (id),
+    sender_id        BIGINT       NOT NULL,
+    receiver_id      BIGINT       NOT NULL,
+    content          TEXT         NOT NULL,
+    is_read          BOOLEAN      NOT NULL,
+    read_at          TIMESTAMP(6),
+    delivered_at     TIMESTAMP(6),
+    sent_at          TIMESTAMP(6) NOT NULL,
+    content_tsv      tsvector GENERATED ALWAYS AS (to_tsvector('simple', coalesce(content, ''))) STORED,
+    CONSTRAINT pk_messages PRIMARY KEY (id, sent_at)
+) PARTITION BY RANGE (sent_at);
+
+CREATE TABLE messages_default PARTITION OF messages DEFAULT;
+
+-- Una partición por mes, desde el mensaje más antiguo hasta dos meses después del actual
+DO $$
+DECLARE
+    partition_start DATE := date_trunc('month', COALESCE((SELECT MIN(sent_at) FROM messages_unpartitioned), now()));
+    last_start DATE := date_trunc('month', now()) + INTERVAL '2 months';
+BEGIN
+    WHILE partition_start <= last_start LOOP
+        EXECUTE format('CREATE TABLE %I PARTITION OF messages FOR VALUES FROM (%L) TO (%L)',
+                       'messages_p' || to_char(partition_start, 'YYYYMM'),
+                       partition_start, (partition_start + INTERVAL '1 month')::DATE);
+        partition_start := partition_start + INTERVAL '1 month';
+    END LOOP;
+END $$;
+
+INSERT INTO messages (id, conversation_id, sender_id, receiver_id, content, is_read, read_at, delivered_at, sent_at)
+SELECT id, conversation_id, sender_id, receiver_id, content, is_read, read_at, delivered_at, sent_at
+FROM messages_unpartitioned;
+
+DROP TABLE messages_unpartitioned;
+
+-- Secuencia propia (las columnas identity no se admiten en tablas particionadas antes de PostgreSQL 17);
+-- OWNED BY mantiene pg_get_serial_sequence('messages', 'id'), que usa la ingesta por lotes
+CREATE SEQUENCE IF NOT EXISTS messages_id_seq;
+ALTER SEQUENCE messages_id_seq OWNED BY messages.id;
+SELECT setval('messages_id_seq', COALESCE((SELECT MAX(id) FROM messages), 0) + 1, false);
+ALTER TABLE messages ALTER COLUMN id SET DEFAULT nextval('messages_id_seq');
+
+-- Índices particionados: se crean en cada partición, también en las futuras
+CREATE INDEX idx_messages_conversation_sent_at ON messages (conversation_id, sent_at);
+CREATE INDEX idx_messages_conversation_id ON messages (conversation_id, id);
+CREATE INDEX idx_messages_unread ON messages (conversation_id, receiver_id) WHERE is_read = FALSE;
+CREATE INDEX idx_messages_undelivered ON messages (receiver_id, id) WHERE delivered_at IS NULL;
+CREATE INDEX idx_messages_receiver_content_tsv ON messages USING GIN (receiver_id, content_tsv);
+CREATE INDEX idx_messages_sender_content_tsv ON messages USING GIN (sender_id, content_tsv);
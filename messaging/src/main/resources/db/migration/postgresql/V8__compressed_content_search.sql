@@ -0,0 +1,17 @@
+-- Búsqueda compatible con el contenido comprimido (app.messaging.compression).
+-- Un contenido comprimido no se puede analizar en SQL, así que content_tsv deja de ser una
+-- columna generada: la aplicación solo la rellena (sin posiciones, strip) para los mensajes
+-- guardados codificados (empiezan por chr(1)) y el resto se indexa directamente desde content.
+-- Las filas existentes no se reescriben.
+
+DROP INDEX IF EXISTS idx_messages_receiver_content_tsv;
+DROP INDEX IF EXISTS idx_messages_sender_content_tsv;
+ALTER TABLE messages DROP COLUMN IF EXISTS content_tsv;
+ALTER TABLE messages ADD COLUMN content_tsv tsvector;
+
+-- La búsqueda debe usar exactamente esta expresión para aprovechar los índices por usuario (V6)
+CREATE INDEX idx_messages_receiver_content_tsv ON messages
+    USING GIN (receiver_id, COALESCE(content_tsv, to_tsvector('simple', CASE WHEN left(content, 1) <> chr(1) THEN content END)));
+
+CREATE INDEX idx_messages_sender_content_tsv ON messages
+    USING GIN (sender_id, COALESCE(content_tsv, to_tsvector('simple', CASE WHEN left(content, 1) <> chr(1) THEN content END)));
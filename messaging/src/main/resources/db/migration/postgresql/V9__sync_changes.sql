@@ -0,0 +1,21 @@
+-- Registro de cambios por usuario para la sincronización incremental (GET /api/users/{id}/sync).
+-- Cada envío, lectura, entrega o conversación nueva inserta una fila por participante en la misma
+-- transacción. Las filas se purgan tras app.messaging.sync.retention.
+-- Cada fila guarda el xid de la transacción que la insertó (requiere PostgreSQL 13+): el servicio
+-- solo entrega filas con xid < pg_snapshot_xmin(pg_current_snapshot()), es decir, de transacciones
+-- ya terminadas, y el xid es el cursor de los clientes. La columna no se mapea en la entidad.
+
+CREATE TABLE IF NOT EXISTS sync_changes (
+    id               BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    user_id          BIGINT       NOT NULL,
+    conversation_id  BIGINT       NOT NULL,
+    change_type      VARCHAR(16)  NOT NULL,
+    message_id       BIGINT,
+    actor_id         BIGINT       NOT NULL,
+    created_at       TIMESTAMP(6) NOT NULL,
+    xid              xid8         NOT NULL DEFAULT pg_current_xact_id()
+);
+
+CREATE INDEX IF NOT EXISTS idx_sync_changes_user_xid ON sync_changes (user_id, xid, id);
+CREATE INDEX IF NOT EXISTS idx_sync_changes_xid ON sync_changes (xid);
+CREATE INDEX IF NOT EXISTS idx_sync_changes_created_at ON sync_changes (created_at);
@@ -0,0 +1,177 @@
+package com.iwellness.messaging.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.converter.StringMessageConverter;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.testcontainers.containers.RabbitMQContainer;
+import org.testcontainers.images.builder.Transferable;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import com.iwellness.messaging.MessagingApiApplication;
+import com.iwellness.messaging.service.UserMessageRouter;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+
+/**
+ * Dos nodos de la aplicación con app.websocket.broker.mode=relay contra un RabbitMQ real con el
+ * plugin STOMP: lo que publica un nodo debe llegar a un cliente conectado al otro, tanto en un
+ * topic como en un destino /user/... Requiere Docker; sin él el test se omite.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class BrokerRelayMultiNodeTest {
+
+    private static final int STOMP_PORT = 61613;
+    private static final String JWT_SECRET = "claveDeFirmaDelTestDelRelayConAlMenos256Bits!!";
+    private static final Duration TIMEOUT = Duration.ofSeconds(20);
+
+    @Container
+    private static final RabbitMQContainer RABBIT = rabbitWithStomp();
+
+    private static ConfigurableApplicationContext nodeA;
+    private static ConfigurableApplicationContext nodeB;
+
+    private static RabbitMQContainer rabbitWithStomp() {
+        RabbitMQContainer container = new RabbitMQContainer(DockerImageName.parse("rabbitmq:3.12-management"))
+                .withCopyToContainer(Transferable.of("[rabbitmq_management,rabbitmq_stomp]."),
+                        "/etc/rabbitmq/enabled_plugins");
+        container.addExposedPort(STOMP_PORT);
+        return container;
+    }
+
+    @BeforeAll
+    static void startNodes() {
+        nodeA = startNode("a");
+        nodeB = startNode("b");
+    }
+
+    @AfterAll
+    static void stopNodes() {
+        if (nodeA != null) {
+            nodeA.close();
+        }
+        if (nodeB != null) {
+            nodeB.close();
+        }
+    }
+
+    private static ConfigurableApplicationContext startNode(String name) {
+        return new SpringApplicationBuilder(MessagingApiApplication.class).run(
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:relay-node-" + name + ";DB_CLOSE_DELAY=-1",
+                "--spring.rabbitmq.host=" + RABBIT.getHost(),
+                "--spring.rabbitmq.port=" + RABBIT.getAmqpPort(),
+                "--app.rabbitmq.outbox.enabled=false",
+                "--app.jwt.secret=" + JWT_SECRET,
+                "--app.websocket.broker.mode=relay",
+                "--app.websocket.broker.relay-host=" + RABBIT.getHost(),
+                "--app.websocket.broker.relay-port=" + RABBIT.getMappedPort(STOMP_PORT),
+                "--app.websocket.broker.client-login=" + RABBIT.getAdminUsername(),
+                "--app.websocket.broker.client-passcode=" + RABBIT.getAdminPassword(),
+                "--app.websocket.broker.system-login=" + RABBIT.getAdminUsername(),
+                "--app.websocket.broker.system-passcode=" + RABBIT.getAdminPassword());
+    }
+
+    @Test
+    void topicMessagePublishedOnOneNodeReachesClientOnTheOther() throws Exception {
+        String topic = "/topic/relay-test-" + UUID.randomUUID();
+        StompSession session = connect(nodeA, 101L);
+        try {
+            BlockingQueue<String> received = subscribe(session, topic);
+
+            String payload = awaitDelivery(received,
+                    () -> nodeB.getBean(SimpMessagingTemplate.class).convertAndSend(topic, "hola desde B"));
+
+            assertThat(payload).isEqualTo("hola desde B");
+        } finally {
+            session.disconnect();
+        }
+    }
+
+    @Test
+    void userMessageSentFromOneNodeReachesUserConnectedToTheOther() throws Exception {
+        StompSession session = connect(nodeA, 202L);
+        try {
+            BlockingQueue<String> received = subscribe(session, "/user/queue/messages");
+
+            String payload = awaitDelivery(received,
+                    () -> nodeB.getBean(UserMessageRouter.class).sendToUser("202", "/queue/messages", "para 202"));
+
+            assertThat(payload).isEqualTo("para 202");
+        } finally {
+            session.disconnect();
+        }
+    }
+
+    /**
+     * La suscripción llega al broker de forma asíncrona: se reenvía hasta que el cliente recibe algo.
+     */
+    private static String awaitDelivery(BlockingQueue<String> received, Runnable send) throws InterruptedException {
+        long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        while (System.nanoTime() < deadline) {
+            send.run();
+            String payload = received.poll(500, TimeUnit.MILLISECONDS);
+            if (payload != null) {
+                return payload;
+            }
+        }
+        throw new AssertionError("El mensaje no llegó al cliente del otro nodo en " + TIMEOUT);
+    }
+
+    private static StompSession connect(ConfigurableApplicationContext node, Long userId) throws Exception {
+        WebSocketStompClient client = new WebSocketStompClient(new StandardWebSocketClient());
+        client.setMessageConverter(new StringMessageConverter());
+        String port = node.getEnvironment().getProperty("local.server.port");
+        return client.connectAsync("ws://localhost:" + port + "/ws?token=" + token(userId),
+                        new StompSessionHandlerAdapter() { })
+                .get(TIMEOUT.toSeconds(), TimeUnit.SECONDS);
+    }
+
+    private static BlockingQueue<String> subscribe(StompSession session, String destination) {
+        BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        session.subscribe(destination, new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return String.class;
+            }
+
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                received.add((String) payload);
+            }
+        });
+        return received;
+    }
+
+    private static String token(Long userId) {
+        return Jwts.builder()
+                .subject("usuario" + userId)
+                .claim("userId", userId)
+                .expiration(new Date(System.currentTimeMillis() + TIMEOUT.toMillis() * 10))
+                .signWith(Keys.hmacShaKeyFor(JWT_SECRET.getBytes(StandardCharsets.UTF_8)))
+                .compact();
+    }
+}
@@ -0,0 +1,101 @@
+package com.iwellness.messaging.entity;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import com.iwellness.messaging.config.AppProperties;
+
+/**
+ * Formato almacenado del contenido: compresión, paso directo, escape y filas antiguas.
+ */
+class MessageContentConverterTest {
+
+    private static final String LONG_TEXT = "Hola, ¿qué tal la sesión de hoy? ".repeat(40);
+
+    @Test
+    void longContentIsStoredCompressedAndRoundTrips() {
+        String stored = MessageContentConverter.encode(LONG_TEXT, compression(true, 512));
+
+        assertThat(MessageContentConverter.isEncoded(stored)).isTrue();
+        assertThat(stored.charAt(1)).isEqualTo('D');
+        assertThat(stored.length()).isLessThan(LONG_TEXT.getBytes(StandardCharsets.UTF_8).length);
+        assertThat(MessageContentConverter.decode(stored)).isEqualTo(LONG_TEXT);
+    }
+
+    @Test
+    void shortContentIsStoredAsIs() {
+        String content = "Hola";
+
+        String stored = MessageContentConverter.encode(content, compression(true, 512));
+
+        assertThat(stored).isEqualTo(content);
+        assertThat(MessageContentConverter.decode(stored)).isEqualTo(content);
+    }
+
+    @Test
+    void disabledCompressionStoresContentAsIs() {
+        assertThat(MessageContentConverter.encode(LONG_TEXT, compression(false, 512))).isEqualTo(LONG_TEXT);
+    }
+
+    @Test
+    void incompressibleContentIsStoredAsIs() {
+        // Sin repeticiones, Deflate + Base64 ocupa más que el original
+        String content = "k3J9qZ-x0Vb7LmT2wQe8RnY5uHc1GpA4sDf6jKo0";
+
+        assertThat(MessageContentConverter.encode(content, compression(true, 10))).isEqualTo(content);
+    }
+
+    @Test
+    void contentStartingWithMarkerIsEscapedAndRoundTrips() {
+        String content = MessageContentConverter.MARKER + "Dno es comprimido";
+
+        String stored = MessageContentConverter.encode(content, compression(false, 512));
+
+        assertThat(stored).isEqualTo(MessageContentConverter.MARKER + "R" + content);
+        assertThat(MessageContentConverter.decode(stored)).isEqualTo(content);
+    }
+
+    @Test
+    void legacyPlaintextRowsDecodeUnchanged() {
+        // Filas guardadas antes de la compresión, con la configuración que sea
+        assertThat(MessageContentConverter.decode("Mensaje antiguo")).isEqualTo("Mensaje antiguo");
+        assertThat(MessageContentConverter.decode(LONG_TEXT)).isEqualTo(LONG_TEXT);
+        assertThat(MessageContentConverter.decode("")).isEmpty();
+        assertThat(MessageContentConverter.decode(null)).isNull();
+    }
+
+    @Test
+    void nullContentStaysNull() {
+        assertThat(MessageContentConverter.encode(null, compression(true, 1))).isNull();
+    }
+
+    @Test
+    void corruptCompressedContentFails() {
+        String stored = MessageContentConverter.MARKER + "D" + "AAAA";
+
+        assertThatThrownBy(() -> MessageContentConverter.decode(stored)).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void converterUsesConfiguredCompression() {
+        AppProperties appProperties = new AppProperties();
+        appProperties.getMessaging().setCompression(compression(true, 512));
+        MessageContentConverter converter = new MessageContentConverter(appProperties);
+
+        String stored = converter.convertToDatabaseColumn(LONG_TEXT);
+
+        assertThat(MessageContentConverter.isEncoded(stored)).isTrue();
+        assertThat(converter.convertToEntityAttribute(stored)).isEqualTo(LONG_TEXT);
+    }
+
+    private static AppProperties.Compression compression(boolean enabled, int minLength) {
+        AppProperties.Compression compression = new AppProperties.Compression();
+        compression.setEnabled(enabled);
+        compression.setMinLength(minLength);
+        return compression;
+    }
+}
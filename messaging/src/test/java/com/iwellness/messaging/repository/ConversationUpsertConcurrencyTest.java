@@ -0,0 +1,85 @@
+package com.iwellness.messaging.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.iwellness.messaging.repository.ConversationRepositoryCustom.UpsertResult;
+
+/**
+ * Get-or-create concurrente de la misma pareja: cada hilo confirma su propia transacción
+ * y todos deben acabar en la única fila protegida por uk_conversations_user_pair.
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ConversationUpsertConcurrencyTest {
+
+    private static final int THREADS = 8;
+    private static final long USER_A = 4242L;
+    private static final long USER_B = 17L;
+
+    @Autowired
+    private ConversationRepository conversationRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void cleanUp() {
+        jdbcTemplate.update("DELETE FROM conversations WHERE user1_id = ? AND user2_id = ?", USER_B, USER_A);
+    }
+
+    @Test
+    void concurrentUpsertsOfTheSamePairCreateOneConversation() throws Exception {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<UpsertResult>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < THREADS; i++) {
+                // La mitad de los hilos pasa la pareja en el orden inverso, como el otro participante
+                boolean reversed = i % 2 == 1;
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return transaction.execute(status -> reversed
+                            ? conversationRepository.upsertConversation(USER_B, USER_A, LocalDateTime.now())
+                            : conversationRepository.upsertConversation(USER_A, USER_B, LocalDateTime.now()));
+                }));
+            }
+            start.countDown();
+
+            List<Long> ids = new ArrayList<>();
+            for (Future<UpsertResult> result : results) {
+                ids.add(result.get(30, TimeUnit.SECONDS).id());
+            }
+
+            assertThat(ids).containsOnly(ids.get(0));
+            Integer rows = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM conversations WHERE user1_id = ? AND user2_id = ?",
+                    Integer.class, USER_B, USER_A);
+            assertThat(rows).isEqualTo(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
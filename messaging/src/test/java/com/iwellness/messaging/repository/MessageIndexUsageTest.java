@@ -0,0 +1,114 @@
+package com.iwellness.messaging.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Comprueba con EXPLAIN (H2) que las consultas calientes usan los índices declarados en las
+ * entidades. Las sentencias reproducen las de MessageRepository y ConversationRepository.
+ * En PostgreSQL los índices equivalentes los crean las migraciones V3/V5/V7.
+ */
+@DataJpaTest
+class MessageIndexUsageTest {
+
+    private static final int CONVERSATIONS = 50;
+    private static final int MESSAGES_PER_CONVERSATION = 40;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void seed() {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> conversations = new ArrayList<>();
+        for (long i = 1; i <= CONVERSATIONS; i++) {
+            conversations.add(new Object[]{i, i, i + 1000, now, now});
+        }
+        jdbcTemplate.batchUpdate("""
+                INSERT INTO conversations (id, user1_id, user2_id, created_at, updated_at, user1_unread_count, user2_unread_count)
+                VALUES (?, ?, ?, ?, ?, 0, 0)
+                """, conversations);
+
+        List<Object[]> messages = new ArrayList<>();
+        for (long c = 1; c <= CONVERSATIONS; c++) {
+            for (int m = 0; m < MESSAGES_PER_CONVERSATION; m++) {
+                boolean fromFirst = m % 2 == 0;
+                // La mitad de los mensajes leídos y entregados, como en una conversación real
+                boolean read = m < MESSAGES_PER_CONVERSATION / 2;
+                messages.add(new Object[]{c, fromFirst ? c : c + 1000, fromFirst ? c + 1000 : c,
+                        "mensaje " + m, read, read ? now : null, now});
+            }
+        }
+        jdbcTemplate.batchUpdate("""
+                INSERT INTO messages (conversation_id, sender_id, receiver_id, content, is_read, delivered_at, sent_at)
+                VALUES (?, ?, ?, ?, ?, ?, ?)
+                """, messages);
+        jdbcTemplate.execute("ANALYZE");
+    }
+
+    @Test
+    void historyPageUsesConversationIdIndex() {
+        String plan = explain("""
+                SELECT * FROM messages
+                WHERE conversation_id = 7 AND id < 1000000
+                ORDER BY id DESC LIMIT 51
+                """);
+
+        assertThat(plan).containsIgnoringCase("idx_messages_conversation_id");
+    }
+
+    @Test
+    void unreadCountUsesUnreadIndex() {
+        String plan = explain("""
+                SELECT COUNT(*) FROM messages
+                WHERE conversation_id = 7 AND receiver_id = 1007 AND is_read = FALSE
+                """);
+
+        assertThat(plan).containsIgnoringCase("idx_messages_unread");
+    }
+
+    @Test
+    void pendingDeliveriesUseUndeliveredIndex() {
+        String plan = explain("""
+                SELECT * FROM messages
+                WHERE receiver_id = 1007 AND delivered_at IS NULL AND id > 0
+                ORDER BY id LIMIT 51
+                """);
+
+        assertThat(plan).containsIgnoringCase("idx_messages_undelivered");
+    }
+
+    @Test
+    void pairLookupUsesUniquePairConstraint() {
+        String plan = explain("SELECT * FROM conversations WHERE user1_id = 7 AND user2_id = 1007");
+
+        assertThat(plan).containsIgnoringCase("uk_conversations_user_pair");
+    }
+
+    @Test
+    void inboxUsesParticipantIndexes() {
+        // H2 no combina índices para un OR entre columnas distintas (PostgreSQL usa un BitmapOr):
+        // se comprueba cada lado de la bandeja de entrada por separado. Para user1_id también
+        // sirve el índice único de la pareja, que empieza por la misma columna.
+        String asFirst = explain("SELECT * FROM conversations WHERE user1_id = 7 ORDER BY updated_at DESC");
+        String asSecond = explain("SELECT * FROM conversations WHERE user2_id = 1007 ORDER BY updated_at DESC");
+
+        assertThat(asFirst).doesNotContainIgnoringCase("tableScan")
+                .containsAnyOf("IDX_CONVERSATIONS_USER1_UPDATED", "UK_CONVERSATIONS_USER_PAIR");
+        assertThat(asSecond).containsIgnoringCase("idx_conversations_user2_updated");
+    }
+
+    private String explain(String sql) {
+        return jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class);
+    }
+}
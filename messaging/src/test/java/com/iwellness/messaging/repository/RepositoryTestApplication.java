@@ -0,0 +1,20 @@
+package com.iwellness.messaging.repository;
+
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.AutoConfigurationPackage;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+
+import com.iwellness.messaging.MessagingApiApplication;
+import com.iwellness.messaging.config.AppProperties;
+
+/**
+ * Configuración de arranque de los tests de repositorio (@DataJpaTest).
+ * Sustituye a {@link MessagingApiApplication}, cuyo @EnableFeignClients necesita el contexto
+ * completo; las entidades y repositorios se siguen buscando en todo el paquete de la aplicación.
+ * AppProperties hace falta para el conversor de contenido de Message.
+ */
+@SpringBootConfiguration
+@AutoConfigurationPackage(basePackageClasses = MessagingApiApplication.class)
+@EnableConfigurationProperties(AppProperties.class)
+class RepositoryTestApplication {
+}
@@ -0,0 +1,160 @@
+package com.iwellness.messaging.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.iwellness.messaging.entity.Conversation;
+import com.iwellness.messaging.entity.Message;
+import com.iwellness.messaging.repository.ConversationRepository;
+import com.iwellness.messaging.repository.MessageArchiveRepository;
+import com.iwellness.messaging.repository.MessageRepository;
+
+import jakarta.persistence.EntityManager;
+
+/**
+ * Formato de salida de la exportación: NDJSON sin separadores extra y CSV escapado y sin fórmulas.
+ */
+class ConversationExportServiceTest {
+
+    private static final long CONVERSATION_ID = 5L;
+    private static final long USER_ID = 1L;
+    private static final LocalDateTime SENT_AT = LocalDateTime.of(2024, 3, 1, 10, 30);
+
+    private final ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+
+    private MessageRepository messageRepository;
+    private ConversationExportService service;
+
+    @BeforeEach
+    void setUp() {
+        ConversationRepository conversationRepository = mock(ConversationRepository.class);
+        messageRepository = mock(MessageRepository.class);
+        MessageArchiveRepository messageArchive = mock(MessageArchiveRepository.class);
+
+        Conversation conversation = Conversation.builder().id(CONVERSATION_ID).user1Id(USER_ID).user2Id(2L).build();
+        when(conversationRepository.findById(CONVERSATION_ID)).thenReturn(Optional.of(conversation));
+        when(messageArchive.readAfter(anyLong(), anyLong(), anyLong(), anyInt())).thenReturn(List.of());
+
+        service = new ConversationExportService(conversationRepository, messageRepository, messageArchive,
+                mock(EntityManager.class), objectMapper, mock(PlatformTransactionManager.class));
+    }
+
+    @Test
+    void ndjsonWritesOneObjectPerLineWithoutSeparators() throws Exception {
+        givenMessages(message(10L, "hola"), message(11L, "qué tal"), message(12L, "adiós"));
+
+        String output = export(ConversationExportService.Format.NDJSON);
+
+        assertThat(output).endsWith("\n");
+        String[] lines = output.split("\n");
+        assertThat(lines).hasSize(3);
+        for (String line : lines) {
+            assertThat(line).startsWith("{").endsWith("}");
+        }
+        assertThat(objectMapper.readTree(lines[1]).get("id").asLong()).isEqualTo(11L);
+        assertThat(objectMapper.readTree(lines[1]).get("content").asText()).isEqualTo("qué tal");
+    }
+
+    @Test
+    void csvQuotesOnlyFieldsThatNeedIt() throws Exception {
+        givenMessages(
+                message(10L, "sin comillas"),
+                message(11L, "uno, dos"),
+                message(12L, "dice \"hola\""),
+                message(13L, "línea 1\nlínea 2"));
+
+        List<String> contents = csvContents(export(ConversationExportService.Format.CSV));
+
+        assertThat(contents).containsExactly(
+                "sin comillas",
+                "\"uno, dos\"",
+                "\"dice \"\"hola\"\"\"",
+                "\"línea 1\nlínea 2\"");
+    }
+
+    @Test
+    void csvNeutralisesFormulaPrefixes() throws Exception {
+        givenMessages(
+                message(10L, "=HYPERLINK(\"http://x\")"),
+                message(11L, "+1"),
+                message(12L, "-2"),
+                message(13L, "@SUM(A1)"),
+                message(14L, "\tcmd"),
+                message(15L, "precio = 3"));
+
+        List<String> contents = csvContents(export(ConversationExportService.Format.CSV));
+
+        assertThat(contents).containsExactly(
+                "\"'=HYPERLINK(\"\"http://x\"\")\"",
+                "'+1",
+                "'-2",
+                "'@SUM(A1)",
+                "'\tcmd",
+                "precio = 3");
+    }
+
+    @Test
+    void csvStartsWithHeaderAndUsesCrlf() throws Exception {
+        givenMessages(message(10L, "hola"));
+
+        String output = export(ConversationExportService.Format.CSV);
+
+        assertThat(output).startsWith("id,conversation_id,sender_id,receiver_id,sent_at,delivered_at,read_at,is_read,content\r\n");
+        assertThat(output).endsWith("10,5,1,2," + SENT_AT + ",,,false,hola\r\n");
+    }
+
+    private void givenMessages(Message... messages) {
+        when(messageRepository.streamByConversationIdOrderByIdAsc(CONVERSATION_ID)).thenReturn(Stream.of(messages));
+    }
+
+    private String export(ConversationExportService.Format format) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.export(CONVERSATION_ID, USER_ID, format).writeTo(out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Último campo (content) de cada registro, tal cual se escribió; los registros terminan en CRLF
+     * y el contenido puede llevar saltos de línea entre comillas.
+     */
+    private static List<String> csvContents(String output) {
+        String body = output.substring(output.indexOf("\r\n") + 2);
+        return Stream.of(body.split("\r\n"))
+                .map(record -> record.substring(nthComma(record, 8) + 1))
+                .toList();
+    }
+
+    private static int nthComma(String record, int n) {
+        int index = -1;
+        for (int i = 0; i < n; i++) {
+            index = record.indexOf(',', index + 1);
+        }
+        return index;
+    }
+
+    private static Message message(Long id, String content) {
+        return Message.builder()
+                .id(id)
+                .senderId(USER_ID)
+                .receiverId(2L)
+                .content(content)
+                .sentAt(SENT_AT)
+                .build();
+    }
+}
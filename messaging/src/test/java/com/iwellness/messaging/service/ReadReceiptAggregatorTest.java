@@ -0,0 +1,140 @@
+package com.iwellness.messaging.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.iwellness.messaging.dto.ReadReceiptDTO;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Coalescencia de confirmaciones de lectura: unión de rangos por conversación y envío en flush.
+ */
+class ReadReceiptAggregatorTest {
+
+    private static final long SENDER = 7L;
+    private static final long READER = 9L;
+    private static final LocalDateTime T0 = LocalDateTime.of(2024, 5, 1, 12, 0);
+
+    private UserMessageRouter router;
+    private ReadReceiptAggregator aggregator;
+
+    @BeforeEach
+    void setUp() {
+        router = mock(UserMessageRouter.class);
+        aggregator = new ReadReceiptAggregator(router, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void mergesOverlappingReadsIntoOneRange() {
+        aggregator.add(receipt(100L, 10, 15, 6, T0));
+        aggregator.add(receipt(100L, 12, 20, 5, T0.plusSeconds(1)));
+
+        ReadReceiptDTO sent = flushSingle();
+
+        assertThat(sent.getRanges()).containsExactly(new ReadReceiptDTO.Range(10L, 20L));
+        assertThat(sent.getFirstMessageId()).isEqualTo(10L);
+        assertThat(sent.getLastMessageId()).isEqualTo(20L);
+        assertThat(sent.getCount()).isEqualTo(11);
+        assertThat(sent.getReadAt()).isEqualTo(T0.plusSeconds(1));
+    }
+
+    @Test
+    void keepsGapsBetweenSeparateReads() {
+        aggregator.add(receipt(100L, 50, 50, 1, T0));
+        aggregator.add(receipt(100L, 10, 10, 1, T0));
+        aggregator.add(receipt(100L, 30, 35, 2, T0));
+
+        ReadReceiptDTO sent = flushSingle();
+
+        // Leer 10 y 50 no confirma los mensajes intermedios
+        assertThat(sent.getRanges()).containsExactly(
+                new ReadReceiptDTO.Range(10L, 10L),
+                new ReadReceiptDTO.Range(30L, 35L),
+                new ReadReceiptDTO.Range(50L, 50L));
+        assertThat(sent.getFirstMessageId()).isEqualTo(10L);
+        assertThat(sent.getLastMessageId()).isEqualTo(50L);
+        assertThat(sent.getCount()).isEqualTo(4);
+    }
+
+    @Test
+    void rangeSpanningSeveralPendingRangesCollapsesThem() {
+        aggregator.add(receipt(100L, 10, 12, 3, T0));
+        aggregator.add(receipt(100L, 20, 22, 3, T0));
+        aggregator.add(receipt(100L, 30, 32, 3, T0));
+        aggregator.add(receipt(100L, 11, 31, 4, T0));
+
+        assertThat(flushSingle().getRanges()).containsExactly(new ReadReceiptDTO.Range(10L, 32L));
+    }
+
+    @Test
+    void sendsOneReceiptPerConversationAndClearsPending() {
+        aggregator.add(receipt(100L, 1, 1, 1, T0));
+        aggregator.add(receipt(200L, 5, 5, 1, T0));
+
+        aggregator.flush();
+
+        ArgumentCaptor<Object> payloads = ArgumentCaptor.forClass(Object.class);
+        verify(router, times(2)).sendToUser(eq(String.valueOf(SENDER)), eq("/queue/read-receipts"), payloads.capture());
+        assertThat(payloads.getAllValues())
+                .extracting(payload -> ((ReadReceiptDTO) payload).getConversationId())
+                .containsExactlyInAnyOrder(100L, 200L);
+
+        // Un segundo flush sin lecturas nuevas no envía nada
+        aggregator.flush();
+        verify(router, times(2)).sendToUser(any(), any(), any());
+    }
+
+    @Test
+    void doesNotMutateCallerReceipt() {
+        ReadReceiptDTO first = receipt(100L, 10, 10, 1, T0);
+        aggregator.add(first);
+        aggregator.add(receipt(100L, 11, 11, 1, T0));
+
+        flushSingle();
+
+        assertThat(first.getLastMessageId()).isEqualTo(10L);
+        assertThat(first.getCount()).isEqualTo(1);
+        assertThat(first.getRanges()).isNull();
+    }
+
+    @Test
+    void flushWithoutReadsSendsNothing() {
+        aggregator.flush();
+
+        verify(router, never()).sendToUser(any(), any(), any());
+    }
+
+    private ReadReceiptDTO flushSingle() {
+        aggregator.flush();
+        ArgumentCaptor<Object> payload = ArgumentCaptor.forClass(Object.class);
+        verify(router).sendToUser(eq(String.valueOf(SENDER)), eq("/queue/read-receipts"), payload.capture());
+        List<Object> values = payload.getAllValues();
+        assertThat(values).hasSize(1);
+        return (ReadReceiptDTO) values.get(0);
+    }
+
+    private static ReadReceiptDTO receipt(Long conversationId, long first, long last, int count, LocalDateTime readAt) {
+        return ReadReceiptDTO.builder()
+                .conversationId(conversationId)
+                .readerId(READER)
+                .senderId(SENDER)
+                .firstMessageId(first)
+                .lastMessageId(last)
+                .count(count)
+                .readAt(readAt)
+                .build();
+    }
+}
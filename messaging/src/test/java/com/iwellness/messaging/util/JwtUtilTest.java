@@ -0,0 +1,72 @@
+package com.iwellness.messaging.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.iwellness.messaging.config.AppProperties;
+
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Resolución del ID de usuario a partir de los claims del token.
+ */
+class JwtUtilTest {
+
+    private static final String SECRET = "claveDePruebaSuficientementeLargaParaHmacSha256!!";
+
+    private JwtUtil jwtUtil;
+
+    @BeforeEach
+    void setUp() {
+        AppProperties appProperties = new AppProperties();
+        AppProperties.Jwt jwt = new AppProperties.Jwt();
+        jwt.setSecret(SECRET);
+        jwt.setExpiration(60_000);
+        appProperties.setJwt(jwt);
+        jwtUtil = new JwtUtil(appProperties, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void readsNumericUserIdClaim() {
+        assertThat(userIdOf(token("ana").claim("userId", 42))).isEqualTo(42L);
+        assertThat(userIdOf(token("ana").claim("userId", 9_000_000_000L))).isEqualTo(9_000_000_000L);
+    }
+
+    @Test
+    void readsUserIdClaimSentAsNumericString() {
+        assertThat(userIdOf(token("ana").claim("userId", "42"))).isEqualTo(42L);
+    }
+
+    @Test
+    void invalidUserIdClaimFallsBackToNumericSubject() {
+        assertThat(userIdOf(token("17").claim("userId", "abc"))).isEqualTo(17L);
+        assertThat(userIdOf(token("17").claim("userId", 4.5))).isEqualTo(17L);
+    }
+
+    @Test
+    void missingClaimUsesNumericSubjectOnly() {
+        assertThat(userIdOf(token("17"))).isEqualTo(17L);
+        assertThat(userIdOf(token("ana"))).isNull();
+    }
+
+    private Long userIdOf(JwtBuilder builder) {
+        return jwtUtil.parseToken(builder.compact())
+                .map(JwtUtil.TokenClaims::userId)
+                .orElseThrow();
+    }
+
+    private static JwtBuilder token(String subject) {
+        return Jwts.builder()
+                .subject(subject)
+                .expiration(new Date(System.currentTimeMillis() + 60_000))
+                .signWith(Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8)));
+    }
+}